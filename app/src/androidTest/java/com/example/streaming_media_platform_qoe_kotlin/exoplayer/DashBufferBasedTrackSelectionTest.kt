@@ -0,0 +1,115 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.net.Uri
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory
+import com.google.android.exoplayer2.source.TrackGroup
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter
+import com.google.android.exoplayer2.upstream.ParsingLoadable
+import com.google.android.exoplayer2.util.Util
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Loads a DASH manifest from a [LocalHttpServer] and drives a [BufferBasedTrackSelection] over its
+ * video representations.
+ */
+@RunWith(AndroidJUnit4::class)
+class DashBufferBasedTrackSelectionTest {
+
+    companion object {
+        private const val MANIFEST_PATH = "/fixture.mpd"
+        private const val MIN_BUFFER_MS = 15_000
+        private const val MAX_BUFFER_MS = 50_000
+        private val BITRATES = intArrayOf(500_000, 1_000_000, 2_000_000, 4_000_000)
+
+        /** Returns a static manifest with one video representation per bitrate in [BITRATES]. */
+        private fun createFixtureMpd(): String {
+            val representations = BITRATES.joinToString("\n") {
+                "      <Representation id=\"$it\" bandwidth=\"$it\" codecs=\"avc1.42c01e\"" +
+                    " width=\"1280\" height=\"720\"/>"
+            }
+            return """
+                |<?xml version="1.0" encoding="UTF-8"?>
+                |<MPD xmlns="urn:mpeg:dash:schema:mpd:2011" type="static"
+                |    mediaPresentationDuration="PT60S" minBufferTime="PT2S"
+                |    profiles="urn:mpeg:dash:profile:isoff-live:2011">
+                |  <Period id="0" start="PT0S">
+                |    <AdaptationSet id="0" contentType="video" mimeType="video/mp4">
+                |      <SegmentTemplate timescale="1000" duration="4000" startNumber="1"
+                |          initialization="${'$'}RepresentationID${'$'}/init.mp4"
+                |          media="${'$'}RepresentationID${'$'}/${'$'}Number${'$'}.m4s"/>
+                |$representations
+                |    </AdaptationSet>
+                |  </Period>
+                |</MPD>
+                """.trimMargin()
+        }
+    }
+
+    private lateinit var server: LocalHttpServer
+
+    @Before
+    fun setUp() {
+        server = LocalHttpServer()
+        server.setBody(MANIFEST_PATH, Util.getUtf8Bytes(createFixtureMpd()))
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+    }
+
+    @Test
+    fun rampingBuffer_walksUpTheRepresentations() {
+        val manifest: DashManifest = ParsingLoadable.load(
+            OkHttpDataSourceFactory(OkHttpClient(), null).createDataSource(),
+            DashManifestParser(),
+            Uri.parse(server.url(MANIFEST_PATH)),
+            C.DATA_TYPE_MANIFEST
+        )
+        val representations = manifest.getPeriod(0).adaptationSets[0].representations
+        assertEquals(BITRATES.size, representations.size)
+
+        val loadControl = CustomLoadControl.Builder()
+            .setBufferDurationsMs(MIN_BUFFER_MS, MAX_BUFFER_MS, 2_500, 5_000)
+            .build()
+        loadControl.onPrepared()
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val bandwidthMeter =
+            DefaultBandwidthMeter.Builder(context).setInitialBitrateEstimate(10_000_000).build()
+        val abrStats = BufferBasedTrackSelection.AbrStats()
+        val selection = BufferBasedTrackSelection(
+            TrackGroup(*representations.map { it.format }.toTypedArray()),
+            representations.indices.toList().toIntArray(),
+            bandwidthMeter,
+            loadControl,
+            BufferBasedTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+            abrStats
+        )
+
+        val selectedBitrates = ArrayList<Int>()
+        for (bufferedDurationMs in MIN_BUFFER_MS..MAX_BUFFER_MS step 1_000) {
+            selection.updateSelectedTrack(
+                0, bufferedDurationMs * 1000L, C.TIME_UNSET, emptyList(),
+                arrayOf<MediaChunkIterator>()
+            )
+            selectedBitrates.add(selection.selectedFormat.bitrate)
+        }
+
+        assertEquals(BITRATES.first(), selectedBitrates.first())
+        assertEquals(BITRATES.last(), selectedBitrates.last())
+        assertTrue(selectedBitrates.zipWithNext().all { (a, b) -> a <= b })
+        assertEquals(BITRATES.size - 1, abrStats.getUpSwitchCount())
+    }
+}
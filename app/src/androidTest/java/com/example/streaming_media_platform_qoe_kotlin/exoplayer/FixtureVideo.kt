@@ -0,0 +1,130 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.media.MediaCodec
+import android.media.MediaCodecInfo
+import android.media.MediaFormat
+import android.media.MediaMuxer
+import com.google.android.exoplayer2.util.MimeTypes
+import java.io.File
+
+/**
+ * Encodes a decodable H.264 MP4 on the device under test, so that playback tests exercise the
+ * real decoders without shipping media in the repository.
+ *
+ * Each frame is a diagonal gradient shifted by the frame number, which gives the encoder some
+ * motion to spend its bitrate on.
+ */
+object FixtureVideo {
+
+    private const val TIMEOUT_US = 10_000L
+
+    /**
+     * Returns the bytes of an MP4 file with a single H.264 track.
+     *
+     * @param directory A directory for the intermediate file.
+     * @param durationSeconds The duration of the video, in seconds.
+     * @param bitrate The target bitrate of the encoder, in bits per second.
+     */
+    fun createMp4(
+        directory: File,
+        durationSeconds: Int,
+        bitrate: Int,
+        width: Int = 320,
+        height: Int = 240,
+        frameRate: Int = 30
+    ): ByteArray {
+        val file = File.createTempFile("fixture", ".mp4", directory)
+        try {
+            encode(file, durationSeconds * frameRate, bitrate, width, height, frameRate)
+            return file.readBytes()
+        } finally {
+            file.delete()
+        }
+    }
+
+    private fun encode(
+        file: File,
+        frameCount: Int,
+        bitrate: Int,
+        width: Int,
+        height: Int,
+        frameRate: Int
+    ) {
+        val format = MediaFormat.createVideoFormat(MimeTypes.VIDEO_H264, width, height)
+        format.setInteger(
+            MediaFormat.KEY_COLOR_FORMAT,
+            MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible
+        )
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate)
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate)
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1)
+        val encoder = MediaCodec.createEncoderByType(MimeTypes.VIDEO_H264)
+        val muxer = MediaMuxer(file.path, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4)
+        try {
+            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE)
+            encoder.start()
+            val info = MediaCodec.BufferInfo()
+            var trackIndex = -1
+            var queuedFrames = 0
+            var inputDone = false
+            while (true) {
+                if (!inputDone) {
+                    val inputIndex = encoder.dequeueInputBuffer(TIMEOUT_US)
+                    if (inputIndex >= 0) {
+                        val timeUs = queuedFrames * 1_000_000L / frameRate
+                        if (queuedFrames == frameCount) {
+                            encoder.queueInputBuffer(
+                                inputIndex, 0, 0, timeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM
+                            )
+                            inputDone = true
+                        } else {
+                            fillFrame(encoder, inputIndex, queuedFrames)
+                            encoder.queueInputBuffer(
+                                inputIndex, 0, width * height * 3 / 2, timeUs, 0
+                            )
+                            queuedFrames++
+                        }
+                    }
+                }
+                val outputIndex = encoder.dequeueOutputBuffer(info, TIMEOUT_US)
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    trackIndex = muxer.addTrack(encoder.outputFormat)
+                    muxer.start()
+                } else if (outputIndex >= 0) {
+                    val isCodecConfig = info.flags and MediaCodec.BUFFER_FLAG_CODEC_CONFIG != 0
+                    if (!isCodecConfig && info.size > 0) {
+                        // The codec config is in the output format the muxer got.
+                        muxer.writeSampleData(trackIndex, encoder.getOutputBuffer(outputIndex)!!, info)
+                    }
+                    encoder.releaseOutputBuffer(outputIndex, false)
+                    if (info.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM != 0) {
+                        break
+                    }
+                }
+            }
+            muxer.stop()
+        } finally {
+            encoder.release()
+            muxer.release()
+        }
+    }
+
+    private fun fillFrame(encoder: MediaCodec, inputIndex: Int, frame: Int) {
+        val image = encoder.getInputImage(inputIndex)!!
+        val planes = image.planes
+        for (planeIndex in planes.indices) {
+            val plane = planes[planeIndex]
+            val buffer = plane.buffer
+            // The chroma planes are subsampled by two in both directions.
+            val planeWidth = if (planeIndex == 0) image.width else image.width / 2
+            val planeHeight = if (planeIndex == 0) image.height else image.height / 2
+            for (y in 0 until planeHeight) {
+                val rowStart = y * plane.rowStride
+                for (x in 0 until planeWidth) {
+                    val value = if (planeIndex == 0) (x + y + frame * 4) and 0xFF else 128
+                    buffer.put(rowStart + x * plane.pixelStride, value.toByte())
+                }
+            }
+        }
+    }
+}
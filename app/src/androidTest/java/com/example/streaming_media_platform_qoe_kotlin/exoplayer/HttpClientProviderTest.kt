@@ -0,0 +1,48 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import okhttp3.Request
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** Checks that the shared client keeps connections to a [LocalHttpServer] alive. */
+@RunWith(AndroidJUnit4::class)
+class HttpClientProviderTest {
+
+    companion object {
+        private const val PATH = "/fixture.mp4"
+    }
+
+    private lateinit var server: LocalHttpServer
+
+    @Before
+    fun setUp() {
+        server = LocalHttpServer()
+        server.setBody(PATH, LocalHttpServer.createFixtureMp4(64 * 1024))
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+    }
+
+    @Test
+    fun sequentialRequests_reuseTheConnection() {
+        val client = HttpClientProvider.getClient(2_000, 2_000)
+        val stats = HttpClientProvider.getConnectionStats()
+        val openedBefore = stats.connectionOpenedCount
+        val acquiredBefore = stats.connectionAcquiredCount
+
+        repeat(3) {
+            client.newCall(Request.Builder().url(server.url(PATH)).build()).execute().use {
+                it.body()!!.bytes()
+            }
+        }
+
+        assertEquals(1L, stats.connectionOpenedCount - openedBefore)
+        assertEquals(3L, stats.connectionAcquiredCount - acquiredBefore)
+    }
+}
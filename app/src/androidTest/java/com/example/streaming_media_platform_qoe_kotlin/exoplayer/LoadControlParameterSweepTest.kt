@@ -0,0 +1,256 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.streaming_media_platform_qoe_kotlin.Constants
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ExoPlaybackException
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.Player
+import com.google.android.exoplayer2.SimpleExoPlayer
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory
+import com.google.android.exoplayer2.source.ProgressiveMediaSource
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.util.Locale
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Plays a fixture video through [CustomLoadControl] and [SimpleExoPlayer] once per load-control
+ * configuration of a grid, and writes a table of the QoE of each run.
+ *
+ * The grid is keyed by the [Constants] extras [PlayerActivity] reads. Each key can be overridden
+ * with an instrumentation argument named `sweep.` followed by the key with spaces replaced by
+ * underscores, holding comma-separated values:
+ *
+ * ```
+ * adb shell am instrument -w -e class <this class> -e sweep.min_buffer 1000,2500,15000 <runner>
+ * ```
+ *
+ * The table is logged and written as tab-separated values to [TABLE_FILE_NAME] in the external
+ * files directory of the app.
+ */
+@RunWith(AndroidJUnit4::class)
+class LoadControlParameterSweepTest {
+
+    companion object {
+        private const val TAG = "LoadControlSweep"
+        private const val FIXTURE_PATH = "/fixture.mp4"
+        private const val FIXTURE_DURATION_S = 8
+        private const val FIXTURE_BITRATE = 1_000_000
+        private const val TABLE_FILE_NAME = "load_control_sweep.tsv"
+        private const val ARGUMENT_PREFIX = "sweep."
+        private const val PLAYBACK_TIMEOUT_S = FIXTURE_DURATION_S + 60L
+
+        // The server sends at 1.5 times the bitrate of the fixture, like a network with little
+        // headroom, so that the buffer thresholds make a difference.
+        private const val THROTTLE_BYTES_PER_SECOND = FIXTURE_BITRATE / 8 * 3 / 2L
+
+        private val DEFAULT_GRID: Map<String, List<Int>> = linkedMapOf(
+            Constants.DEFAULT_BUFFER_SEGMENT_SIZE_KEY to
+                listOf(16 * 1024, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            Constants.MIN_BUFFER_MS_KEY to listOf(2_500, 15_000),
+            Constants.MAX_BUFFER_MS_KEY to listOf(30_000),
+            Constants.BUFFER_FOR_PLAYBACK_MS to listOf(500, 2_500),
+            Constants.BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_KEY to listOf(2_500)
+        )
+    }
+
+    /** The QoE of one run. */
+    private class SweepResult(
+        val config: Map<String, Int>,
+        val initialLatencyMs: Long,
+        val rebufferCount: Int,
+        val rebufferTimeMs: Long,
+        val continuityRate: Float,
+        val peakBufferBytes: Int
+    )
+
+    private lateinit var server: LocalHttpServer
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        server = LocalHttpServer()
+        server.setBody(
+            FIXTURE_PATH,
+            FixtureVideo.createMp4(context.cacheDir, FIXTURE_DURATION_S, FIXTURE_BITRATE)
+        )
+        server.setThrottleBytesPerSecond(THROTTLE_BYTES_PER_SECOND)
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+    }
+
+    @Test
+    fun sweepGrid_writesTable() {
+        val configs = createConfigs(readGrid())
+        assertTrue("no valid configuration in the grid", configs.isNotEmpty())
+
+        val results = configs.map { runConfig(it) }
+
+        val table = formatTable(results)
+        Log.i(TAG, "\n" + table)
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val directory = context.getExternalFilesDir(null) ?: context.filesDir
+        File(directory, TABLE_FILE_NAME).writeText(table)
+        for (result in results) {
+            assertTrue(result.initialLatencyMs > 0)
+            assertTrue(result.continuityRate > 0 && result.continuityRate <= 1)
+            assertTrue(result.peakBufferBytes > 0)
+        }
+        assertEquals(configs.size + 1, table.lines().filter { it.isNotEmpty() }.size)
+    }
+
+    /** Returns the default grid, with the keys given as instrumentation arguments replaced. */
+    private fun readGrid(): Map<String, List<Int>> {
+        val arguments = InstrumentationRegistry.getArguments()
+        return DEFAULT_GRID.mapValues { (key, values) ->
+            arguments.getString(ARGUMENT_PREFIX + key.replace(' ', '_'))
+                ?.split(',')
+                ?.map { it.trim().toInt() }
+                ?: values
+        }
+    }
+
+    /**
+     * Returns every combination of the values of the grid that [CustomLoadControl] accepts, which
+     * requires the minimum buffer to cover the playback thresholds and not exceed the maximum.
+     */
+    private fun createConfigs(grid: Map<String, List<Int>>): List<Map<String, Int>> {
+        var configs = listOf<Map<String, Int>>(linkedMapOf())
+        for ((key, values) in grid) {
+            configs = configs.flatMap { config -> values.map { config + (key to it) } }
+        }
+        return configs.filter {
+            val minBufferMs = it.getValue(Constants.MIN_BUFFER_MS_KEY)
+            minBufferMs <= it.getValue(Constants.MAX_BUFFER_MS_KEY) &&
+                it.getValue(Constants.BUFFER_FOR_PLAYBACK_MS) <= minBufferMs &&
+                it.getValue(Constants.BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_KEY) <= minBufferMs
+        }
+    }
+
+    private fun runConfig(config: Map<String, Int>): SweepResult {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        // A pool of its own, so that the high-water mark is that of this run.
+        val pool = SegmentPool(
+            config.getValue(Constants.DEFAULT_BUFFER_SEGMENT_SIZE_KEY), /* maxPooledBytes= */ 0
+        )
+        val loadControl = CustomLoadControl.Builder()
+            .setAllocator(PooledAllocator(pool))
+            .setBufferDurationsMs(
+                config.getValue(Constants.MIN_BUFFER_MS_KEY),
+                config.getValue(Constants.MAX_BUFFER_MS_KEY),
+                config.getValue(Constants.BUFFER_FOR_PLAYBACK_MS),
+                config.getValue(Constants.BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_KEY)
+            )
+            .build()
+        val metrics = QoeMetricsEngine()
+        val playbackThread = HandlerThread("SweepPlayer")
+        playbackThread.start()
+        val handler = Handler(playbackThread.looper)
+        val ended = CountDownLatch(1)
+        // Written on the playback thread and read after the latch.
+        var player: SimpleExoPlayer? = null
+        var startTimeMs = 0L
+        var firstReadyTimeMs = C.TIME_UNSET
+        var continuityRate = 0f
+        var error: ExoPlaybackException? = null
+
+        handler.post {
+            val newPlayer = SimpleExoPlayer.Builder(context)
+                .setLooper(playbackThread.looper)
+                .setLoadControl(loadControl)
+                .build()
+            newPlayer.addListener(object : Player.EventListener {
+                override fun onPlaybackStateChanged(state: Int) {
+                    val nowMs = SystemClock.elapsedRealtime()
+                    metrics.onPlayerStateChanged(nowMs, state, newPlayer.playWhenReady)
+                    if (state == Player.STATE_READY && firstReadyTimeMs == C.TIME_UNSET) {
+                        firstReadyTimeMs = nowMs
+                    }
+                    if (state == Player.STATE_ENDED) {
+                        newPlayer.videoDecoderCounters?.let {
+                            it.ensureUpdated()
+                            val outputBuffers =
+                                it.renderedOutputBufferCount + it.skippedOutputBufferCount
+                            continuityRate = outputBuffers.toFloat() / it.inputBufferCount
+                        }
+                        ended.countDown()
+                    }
+                }
+
+                override fun onPlayerError(e: ExoPlaybackException) {
+                    error = e
+                    ended.countDown()
+                }
+            })
+            newPlayer.setMediaSource(
+                ProgressiveMediaSource.Factory(OkHttpDataSourceFactory(OkHttpClient(), null))
+                    .createMediaSource(MediaItem.fromUri(server.url(FIXTURE_PATH)))
+            )
+            newPlayer.playWhenReady = true
+            startTimeMs = SystemClock.elapsedRealtime()
+            metrics.update(startTimeMs)
+            newPlayer.prepare()
+            player = newPlayer
+        }
+        val completed = ended.await(PLAYBACK_TIMEOUT_S, TimeUnit.SECONDS)
+
+        val released = CountDownLatch(1)
+        handler.post {
+            player?.release()
+            released.countDown()
+        }
+        released.await(PLAYBACK_TIMEOUT_S, TimeUnit.SECONDS)
+        playbackThread.quitSafely()
+
+        assertNull("$config", error)
+        assertTrue("$config timed out", completed)
+        val session = metrics.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+        return SweepResult(
+            config,
+            firstReadyTimeMs - startTimeMs,
+            session.rebufferCount,
+            session.rebufferTimeMs,
+            continuityRate,
+            pool.highWaterBytes
+        )
+    }
+
+    private fun formatTable(results: List<SweepResult>): String {
+        val table = StringBuilder()
+        val keys = results.first().config.keys
+        table.append(keys.joinToString("\t") { it.replace(' ', '_') })
+            .append("\tinitial_latency_ms\trebuffers\trebuffer_ms\tcontinuity\tpeak_buffer_kb\n")
+        for (result in results) {
+            table.append(keys.joinToString("\t") { result.config.getValue(it).toString() })
+                .append(
+                    String.format(
+                        Locale.US,
+                        "\t%d\t%d\t%d\t%.4f\t%d\n",
+                        result.initialLatencyMs,
+                        result.rebufferCount,
+                        result.rebufferTimeMs,
+                        result.continuityRate,
+                        result.peakBufferBytes / 1024
+                    )
+                )
+        }
+        return table.toString()
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import java.io.BufferedInputStream
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface, standing in for a media server in tests.
+ *
+ * It serves fixed bodies by path, honours single `Range: bytes=` requests and keeps connections
+ * alive, and counts the requests and body bytes it serves. Each connection can be throttled to a
+ * fixed rate, like a server limiting the bandwidth per stream. Live bodies are served like a live
+ * radio stream: without a length, ignoring ranges, and closing the connection at the end.
+ */
+class LocalHttpServer : Closeable {
+
+    private val serverSocket = ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+    private val executor: ExecutorService = Executors.newCachedThreadPool()
+    private val bodies = ConcurrentHashMap<String, ByteArray>()
+    private val livePaths = ConcurrentHashMap.newKeySet<String>()
+    private val requestCount = AtomicInteger()
+    private val servedBytes = AtomicLong()
+    @Volatile private var throttleBytesPerSecond = 0L
+
+    init {
+        executor.execute { acceptLoop() }
+    }
+
+    /** Serves [body] at [path]. */
+    fun setBody(path: String, body: ByteArray) {
+        bodies[path] = body
+        livePaths.remove(path)
+    }
+
+    /** Serves [body] at [path] as a live stream, without Content-Length and ignoring ranges. */
+    fun setLiveBody(path: String, body: ByteArray) {
+        bodies[path] = body
+        livePaths.add(path)
+    }
+
+    /** Limits each connection to [bytesPerSecond] body bytes per second, or lifts the limit if 0. */
+    fun setThrottleBytesPerSecond(bytesPerSecond: Long) {
+        throttleBytesPerSecond = bytesPerSecond
+    }
+
+    /** Returns the URL of [path] on this server. */
+    fun url(path: String): String = "http://127.0.0.1:${serverSocket.localPort}$path"
+
+    /** Returns the number of requests served. */
+    fun getRequestCount(): Int = requestCount.get()
+
+    /** Returns the number of body bytes served. */
+    fun getServedBytes(): Long = servedBytes.get()
+
+    override fun close() {
+        serverSocket.close()
+        executor.shutdownNow()
+    }
+
+    private fun acceptLoop() {
+        while (!serverSocket.isClosed) {
+            val socket = try {
+                serverSocket.accept()
+            } catch (e: IOException) {
+                return
+            }
+            executor.execute { serve(socket) }
+        }
+    }
+
+    private fun serve(socket: Socket) {
+        socket.use {
+            val input = BufferedInputStream(it.getInputStream())
+            val output = it.getOutputStream()
+            try {
+                while (true) {
+                    val requestLine = readLine(input) ?: return
+                    val headers = HashMap<String, String>()
+                    while (true) {
+                        val line = readLine(input) ?: return
+                        if (line.isEmpty()) break
+                        val separator = line.indexOf(':')
+                        if (separator > 0) {
+                            headers[line.substring(0, separator).trim().lowercase()] =
+                                line.substring(separator + 1).trim()
+                        }
+                    }
+                    requestCount.incrementAndGet()
+                    val keepAlive = respond(requestLine, headers, output)
+                    if (!keepAlive || headers["connection"].equals("close", ignoreCase = true)) {
+                        return
+                    }
+                }
+            } catch (e: IOException) {
+                // The client went away.
+            }
+        }
+    }
+
+    /** Writes the response, and returns whether the connection can be kept alive. */
+    private fun respond(
+        requestLine: String,
+        headers: Map<String, String>,
+        output: OutputStream
+    ): Boolean {
+        val parts = requestLine.split(' ')
+        val body = if (parts.size >= 2) bodies[parts[1]] else null
+        if (body == null) {
+            writeResponse(output, "404 Not Found", emptyList(), ByteArray(0), 0, 0)
+            return true
+        }
+        if (parts[1] in livePaths) {
+            // The end of the body is only marked by closing the connection.
+            val head = "HTTP/1.1 200 OK\r\nContent-Type: audio/mpeg\r\nConnection: close\r\n\r\n"
+            output.write(head.toByteArray(Charsets.US_ASCII))
+            writeBody(output, body, 0, body.size)
+            output.flush()
+            servedBytes.addAndGet(body.size.toLong())
+            return false
+        }
+        val range = headers["range"]?.let { parseRange(it, body.size) }
+        if (range == null) {
+            writeResponse(
+                output, "200 OK", listOf("Accept-Ranges: bytes"), body, 0, body.size
+            )
+        } else if (range.first >= body.size || range.isEmpty()) {
+            // Past the end of the body, or inverted like bytes=5-3.
+            writeResponse(
+                output,
+                "416 Range Not Satisfiable",
+                listOf("Content-Range: bytes */${body.size}"),
+                body,
+                0,
+                0
+            )
+        } else {
+            writeResponse(
+                output,
+                "206 Partial Content",
+                listOf(
+                    "Accept-Ranges: bytes",
+                    "Content-Range: bytes ${range.first}-${range.last}/${body.size}"
+                ),
+                body,
+                range.first,
+                range.last - range.first + 1
+            )
+        }
+        return true
+    }
+
+    private fun writeResponse(
+        output: OutputStream,
+        status: String,
+        extraHeaders: List<String>,
+        body: ByteArray,
+        offset: Int,
+        length: Int
+    ) {
+        val head = StringBuilder()
+            .append("HTTP/1.1 ").append(status).append("\r\n")
+            .append("Content-Type: video/mp4\r\n")
+            .append("Content-Length: ").append(length).append("\r\n")
+        for (header in extraHeaders) {
+            head.append(header).append("\r\n")
+        }
+        head.append("\r\n")
+        output.write(head.toString().toByteArray(Charsets.US_ASCII))
+        writeBody(output, body, offset, length)
+        output.flush()
+        servedBytes.addAndGet(length.toLong())
+    }
+
+    private fun writeBody(output: OutputStream, body: ByteArray, offset: Int, length: Int) {
+        val bytesPerSecond = throttleBytesPerSecond
+        if (bytesPerSecond <= 0) {
+            output.write(body, offset, length)
+            return
+        }
+        val startTimeNs = System.nanoTime()
+        var written = 0
+        while (written < length) {
+            val count = minOf(THROTTLE_WRITE_SIZE, length - written)
+            output.write(body, offset + written, count)
+            output.flush()
+            written += count
+            val dueTimeNs = startTimeNs + written * 1_000_000_000L / bytesPerSecond
+            val sleepMs = (dueTimeNs - System.nanoTime()) / 1_000_000
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs)
+                } catch (e: InterruptedException) {
+                    throw IOException(e)
+                }
+            }
+        }
+    }
+
+    private fun parseRange(value: String, bodyLength: Int): IntRange? {
+        if (!value.startsWith("bytes=") || value.contains(',')) return null
+        val bounds = value.substring("bytes=".length).split('-')
+        if (bounds.size != 2 || bounds[0].isEmpty()) return null
+        val start = bounds[0].toIntOrNull() ?: return null
+        val end = if (bounds[1].isEmpty()) bodyLength - 1 else bounds[1].toIntOrNull() ?: return null
+        return start..minOf(end, bodyLength - 1)
+    }
+
+    private fun readLine(input: InputStream): String? {
+        val line = StringBuilder()
+        while (true) {
+            val byte = input.read()
+            if (byte == -1) return if (line.isEmpty()) null else line.toString()
+            if (byte == '\n'.code) return line.toString().trimEnd('\r')
+            line.append(byte.toChar())
+        }
+    }
+
+    companion object {
+
+        private const val THROTTLE_WRITE_SIZE = 8 * 1024
+
+        /**
+         * Returns [length] bytes laid out like an MP4 file: an `ftyp` box followed by an `mdat` box
+         * of deterministic filler. The content is not meant to be decoded.
+         */
+        fun createFixtureMp4(length: Int): ByteArray {
+            val fixture = ByteArray(length)
+            val ftyp = byteArrayOf(
+                0, 0, 0, 24, 'f'.code.toByte(), 't'.code.toByte(), 'y'.code.toByte(),
+                'p'.code.toByte(), 'i'.code.toByte(), 's'.code.toByte(), 'o'.code.toByte(),
+                'm'.code.toByte(), 0, 0, 2, 0, 'i'.code.toByte(), 's'.code.toByte(),
+                'o'.code.toByte(), 'm'.code.toByte(), 'm'.code.toByte(), 'p'.code.toByte(),
+                '4'.code.toByte(), '1'.code.toByte()
+            )
+            System.arraycopy(ftyp, 0, fixture, 0, ftyp.size)
+            val mdatSize = length - ftyp.size
+            fixture[24] = (mdatSize ushr 24).toByte()
+            fixture[25] = (mdatSize ushr 16).toByte()
+            fixture[26] = (mdatSize ushr 8).toByte()
+            fixture[27] = mdatSize.toByte()
+            "mdat".forEachIndexed { i, c -> fixture[28 + i] = c.code.toByte() }
+            for (i in 32 until length) {
+                fixture[i] = (i * 31).toByte()
+            }
+            return fixture
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.net.Uri
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+import java.io.File
+
+/** Replays a fixture MP4 from a [LocalHttpServer] through a [MediaCache]. */
+@RunWith(AndroidJUnit4::class)
+class MediaCacheTest {
+
+    companion object {
+        private const val FIXTURE_PATH = "/fixture.mp4"
+        private const val FIXTURE_LENGTH = 512 * 1024
+        private const val LIVE_PATH = "/live.mp3"
+        private const val TIMEOUT_MS = 10_000L
+    }
+
+    private lateinit var server: LocalHttpServer
+    private lateinit var cacheDirectory: File
+    private lateinit var mediaCache: MediaCache
+    private val fixture = LocalHttpServer.createFixtureMp4(FIXTURE_LENGTH)
+
+    @Before
+    fun setUp() {
+        server = LocalHttpServer()
+        server.setBody(FIXTURE_PATH, fixture)
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        cacheDirectory = File(context.cacheDir, "media_cache_test")
+        cacheDirectory.deleteRecursively()
+        mediaCache = MediaCache(cacheDirectory, MediaCache.DEFAULT_MAX_CACHE_BYTES, null)
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+        mediaCache.cache.release()
+        cacheDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun replay_isServedFromCacheWithoutNetwork() {
+        val dataSourceFactory =
+            mediaCache.createDataSourceFactory(OkHttpDataSourceFactory(OkHttpClient(), null))
+
+        assertArrayEquals(fixture, readFully(dataSourceFactory.createDataSource(), 0))
+        val requestsAfterFirstPlay = server.getRequestCount()
+        assertArrayEquals(fixture, readFully(dataSourceFactory.createDataSource(), 0))
+
+        assertEquals(requestsAfterFirstPlay, server.getRequestCount())
+        assertEquals(FIXTURE_LENGTH.toLong(), mediaCache.networkBytesRead)
+        assertEquals(FIXTURE_LENGTH.toLong(), mediaCache.cachedBytesRead)
+        assertEquals(1L, mediaCache.hitCount)
+    }
+
+    @Test
+    fun seekBack_isServedFromCache() {
+        val dataSourceFactory =
+            mediaCache.createDataSourceFactory(OkHttpDataSourceFactory(OkHttpClient(), null))
+        readFully(dataSourceFactory.createDataSource(), 0)
+        val networkBytesAfterFirstPlay = mediaCache.networkBytesRead
+
+        val position = FIXTURE_LENGTH / 2
+        val tail = readFully(dataSourceFactory.createDataSource(), position.toLong())
+
+        assertArrayEquals(fixture.copyOfRange(position, FIXTURE_LENGTH), tail)
+        assertEquals(networkBytesAfterFirstPlay, mediaCache.networkBytesRead)
+    }
+
+    @Test
+    fun unsetLengthRequest_bypassesCacheWhenIgnored() {
+        val dataSourceFactory = mediaCache.createDataSourceFactory(
+            OkHttpDataSourceFactory(OkHttpClient(), null),
+            /* ignoreCacheForUnsetLengthRequests= */ true
+        )
+
+        assertArrayEquals(fixture, readFully(dataSourceFactory.createDataSource(), 0))
+        assertArrayEquals(fixture, readFully(dataSourceFactory.createDataSource(), 0))
+
+        assertEquals(2L * FIXTURE_LENGTH, mediaCache.networkBytesRead)
+        assertEquals(0L, mediaCache.cachedBytesRead)
+        assertEquals(0L, mediaCache.cacheSpace)
+    }
+
+    @Test
+    fun boundedRequest_isCachedWhenUnsetLengthRequestsAreIgnored() {
+        val dataSourceFactory = mediaCache.createDataSourceFactory(
+            OkHttpDataSourceFactory(OkHttpClient(), null),
+            /* ignoreCacheForUnsetLengthRequests= */ true
+        )
+        val length = FIXTURE_LENGTH.toLong()
+
+        readFully(dataSourceFactory.createDataSource(), 0, length)
+        val requestsAfterFirstPlay = server.getRequestCount()
+        assertArrayEquals(fixture, readFully(dataSourceFactory.createDataSource(), 0, length))
+
+        assertEquals(requestsAfterFirstPlay, server.getRequestCount())
+        assertEquals(length, mediaCache.cachedBytesRead)
+    }
+
+    @Test
+    fun liveStream_isNotCached() {
+        server.setLiveBody(LIVE_PATH, fixture)
+        val dataSourceFactory =
+            mediaCache.createDataSourceFactory(OkHttpDataSourceFactory(OkHttpClient(), null))
+
+        // The player sets FLAG_DONT_CACHE_IF_LENGTH_UNKNOWN on progressive requests.
+        repeat(2) {
+            val bytes = readFully(
+                dataSourceFactory.createDataSource(),
+                0,
+                path = LIVE_PATH,
+                flags = DataSpec.FLAG_DONT_CACHE_IF_LENGTH_UNKNOWN
+            )
+            assertArrayEquals(fixture, bytes)
+        }
+
+        assertEquals(2, server.getRequestCount())
+        assertEquals(0L, mediaCache.cacheSpace)
+        assertEquals(0L, mediaCache.cachedBytesRead)
+    }
+
+    @Test
+    fun prefetch_cachesHeadOfStream() {
+        val prefetchBytes = FIXTURE_LENGTH / 4
+        val prefetcher = StreamPrefetcher(
+            mediaCache, OkHttpDataSourceFactory(OkHttpClient(), null), prefetchBytes
+        )
+
+        prefetcher.prefetch(server.url(FIXTURE_PATH))
+        waitUntil { mediaCache.cacheSpace >= prefetchBytes }
+        prefetcher.release()
+        assertTrue(prefetcher.awaitTermination(TIMEOUT_MS))
+
+        assertEquals(prefetchBytes.toLong(), mediaCache.cacheSpace)
+        val dataSourceFactory =
+            mediaCache.createDataSourceFactory(OkHttpDataSourceFactory(OkHttpClient(), null))
+        assertArrayEquals(fixture, readFully(dataSourceFactory.createDataSource(), 0))
+        assertEquals(prefetchBytes.toLong(), mediaCache.cachedBytesRead)
+    }
+
+    @Test
+    fun prefetch_liveStream_cachesNothing() {
+        server.setLiveBody(LIVE_PATH, fixture)
+        val prefetcher = StreamPrefetcher(
+            mediaCache, OkHttpDataSourceFactory(OkHttpClient(), null), FIXTURE_LENGTH / 4
+        )
+
+        prefetcher.prefetch(server.url(LIVE_PATH))
+        waitUntil { server.getRequestCount() > 0 }
+        prefetcher.release()
+        assertTrue(prefetcher.awaitTermination(TIMEOUT_MS))
+
+        assertEquals(0L, mediaCache.cacheSpace)
+        // The player then reads the stream from its live position, not from a stale cached head.
+        val dataSourceFactory =
+            mediaCache.createDataSourceFactory(OkHttpDataSourceFactory(OkHttpClient(), null))
+        readFully(
+            dataSourceFactory.createDataSource(),
+            0,
+            path = LIVE_PATH,
+            flags = DataSpec.FLAG_DONT_CACHE_IF_LENGTH_UNKNOWN
+        )
+        assertEquals(0L, mediaCache.cachedBytesRead)
+    }
+
+    private fun waitUntil(condition: () -> Boolean) {
+        val deadlineMs = System.currentTimeMillis() + TIMEOUT_MS
+        while (!condition()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadlineMs)
+            Thread.sleep(10)
+        }
+    }
+
+    private fun readFully(
+        dataSource: DataSource,
+        position: Long,
+        length: Long = C.LENGTH_UNSET.toLong(),
+        path: String = FIXTURE_PATH,
+        flags: Int = 0
+    ): ByteArray {
+        val output = ByteArrayOutputStream()
+        val buffer = ByteArray(16 * 1024)
+        try {
+            dataSource.open(DataSpec.Builder()
+                .setUri(Uri.parse(server.url(path)))
+                .setPosition(position)
+                .setLength(length)
+                .setFlags(flags)
+                .build())
+            while (true) {
+                val bytesRead = dataSource.read(buffer, 0, buffer.size)
+                if (bytesRead == C.RESULT_END_OF_INPUT) break
+                output.write(buffer, 0, bytesRead)
+            }
+        } finally {
+            dataSource.close()
+        }
+        return output.toByteArray()
+    }
+}
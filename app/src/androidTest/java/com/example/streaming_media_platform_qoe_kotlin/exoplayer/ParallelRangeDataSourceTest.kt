@@ -0,0 +1,132 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.net.Uri
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+
+/** Reads a fixture MP4 from a throttled [LocalHttpServer] through a [ParallelRangeDataSource]. */
+@RunWith(AndroidJUnit4::class)
+class ParallelRangeDataSourceTest {
+
+    companion object {
+        private const val TAG = "ParallelRangeTest"
+        private const val FIXTURE_PATH = "/fixture.mp4"
+        private const val FIXTURE_LENGTH = 1024 * 1024
+        private const val CHUNK_SIZE = 128 * 1024
+        private const val CONNECTION_COUNT = 4
+        private const val THROTTLE_BYTES_PER_SECOND = 1024 * 1024L
+    }
+
+    private lateinit var server: LocalHttpServer
+    private val fixture = LocalHttpServer.createFixtureMp4(FIXTURE_LENGTH)
+    private val upstreamFactory = OkHttpDataSourceFactory(
+        OkHttpClient.Builder().protocols(listOf(Protocol.HTTP_1_1)).build(), null
+    )
+
+    @Before
+    fun setUp() {
+        server = LocalHttpServer()
+        server.setBody(FIXTURE_PATH, fixture)
+        server.setThrottleBytesPerSecond(THROTTLE_BYTES_PER_SECOND)
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+    }
+
+    @Test
+    fun read_returnsTheBytesInOrder() {
+        val factory = ParallelRangeDataSource.Factory(upstreamFactory, CONNECTION_COUNT, CHUNK_SIZE)
+
+        assertArrayEquals(fixture, readFully(factory.createDataSource(), 0))
+        assertEquals(FIXTURE_LENGTH / CHUNK_SIZE, server.getRequestCount())
+        factory.release()
+    }
+
+    @Test
+    fun readFromPosition_returnsTheTail() {
+        val factory = ParallelRangeDataSource.Factory(upstreamFactory, CONNECTION_COUNT, CHUNK_SIZE)
+        val position = CHUNK_SIZE + 1234
+
+        val tail = readFully(factory.createDataSource(), position.toLong())
+
+        assertArrayEquals(fixture.copyOfRange(position, FIXTURE_LENGTH), tail)
+        factory.release()
+    }
+
+    @Test
+    fun reopenWhileChunksLoad_returnsTheNewBytes() {
+        val factory = ParallelRangeDataSource.Factory(upstreamFactory, CONNECTION_COUNT, CHUNK_SIZE)
+        val dataSource = factory.createDataSource()
+        // Read a little, so that the chunks of the first open are still loading when it closes.
+        dataSource.open(DataSpec(Uri.parse(server.url(FIXTURE_PATH))))
+        val buffer = ByteArray(1024)
+        assertTrue(dataSource.read(buffer, 0, buffer.size) > 0)
+        dataSource.close()
+        val position = 3 * CHUNK_SIZE + 567
+
+        val tail = readFully(dataSource, position.toLong())
+
+        assertArrayEquals(fixture.copyOfRange(position, FIXTURE_LENGTH), tail)
+        factory.release()
+    }
+
+    @Test
+    fun throttledServer_parallelReadIsFaster() {
+        val startTimeMs = SystemClock.elapsedRealtime()
+        readFully(upstreamFactory.createDataSource(), 0)
+        val sequentialTimeMs = SystemClock.elapsedRealtime() - startTimeMs
+
+        val factory = ParallelRangeDataSource.Factory(upstreamFactory, CONNECTION_COUNT, CHUNK_SIZE)
+        val parallelStartTimeMs = SystemClock.elapsedRealtime()
+        readFully(factory.createDataSource(), 0)
+        val parallelTimeMs = SystemClock.elapsedRealtime() - parallelStartTimeMs
+        factory.release()
+
+        val stats = factory.getConnectionStats()
+        Log.i(
+            TAG,
+            "sequential:${sequentialTimeMs}ms parallel:${parallelTimeMs}ms ${stats.statsString}"
+        )
+        for (connection in 0 until CONNECTION_COUNT) {
+            assertTrue(stats.getBytesTransferred(connection) > 0)
+        }
+        // Each connection is throttled, so four of them should take well under the time of one.
+        assertTrue(parallelTimeMs * 2 < sequentialTimeMs)
+    }
+
+    private fun readFully(dataSource: DataSource, position: Long): ByteArray {
+        val output = ByteArrayOutputStream()
+        val buffer = ByteArray(16 * 1024)
+        try {
+            dataSource.open(DataSpec.Builder()
+                .setUri(Uri.parse(server.url(FIXTURE_PATH)))
+                .setPosition(position)
+                .build())
+            while (true) {
+                val bytesRead = dataSource.read(buffer, 0, buffer.size)
+                if (bytesRead == C.RESULT_END_OF_INPUT) break
+                output.write(buffer, 0, bytesRead)
+            }
+        } finally {
+            dataSource.close()
+        }
+        return output.toByteArray()
+    }
+}
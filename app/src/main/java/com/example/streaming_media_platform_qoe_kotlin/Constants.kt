@@ -6,6 +6,8 @@ object Constants {
     val STREAM_URL_KEY = "stream url"
     val CONNECT_TIMEOUT_KEY = "connect timeout"
     val READ_TIMEOUT_KEY = "read timeout"
+    val PARALLEL_CONNECTIONS_KEY = "parallel connections"
+    val RANGE_CHUNK_SIZE_KEY = "range chunk size"
     val DEFAULT_BUFFER_SEGMENT_SIZE_KEY = "buffer segment size"
     val MIN_BUFFER_MS_KEY = "min buffer"
     val MAX_BUFFER_MS_KEY = "max buffer"
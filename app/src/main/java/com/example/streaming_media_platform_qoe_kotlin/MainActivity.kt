@@ -3,22 +3,42 @@ package com.example.streaming_media_platform_qoe_kotlin
 import android.content.Intent
 import androidx.appcompat.app.AppCompatActivity
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import androidx.core.widget.doAfterTextChanged
 import com.example.streaming_media_platform_qoe_kotlin.Constants.BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.BUFFER_FOR_PLAYBACK_MS
 import com.example.streaming_media_platform_qoe_kotlin.Constants.CONNECT_TIMEOUT_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.DEFAULT_BUFFER_SEGMENT_SIZE_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.MAX_BUFFER_MS_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.MIN_BUFFER_MS_KEY
+import com.example.streaming_media_platform_qoe_kotlin.Constants.PARALLEL_CONNECTIONS_KEY
+import com.example.streaming_media_platform_qoe_kotlin.Constants.RANGE_CHUNK_SIZE_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.READ_TIMEOUT_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.RTL_STREAM_URL
 import com.example.streaming_media_platform_qoe_kotlin.Constants.STREAM_URL_KEY
 import com.example.streaming_media_platform_qoe_kotlin.databinding.ActivityMainBinding
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.HttpClientProvider
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.MediaCache
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.StreamPrefetcher
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory
+import com.google.android.exoplayer2.util.Util
 
 //import kotlinx.android.synthetic.main.activity_main.*
 
 class MainActivity : AppCompatActivity() {
 
+    companion object {
+        // The time the URL must stay unchanged before it is prefetched.
+        private const val PREFETCH_DEBOUNCE_MS = 1_000L
+    }
+
     private lateinit var binding: ActivityMainBinding
+    private lateinit var streamPrefetcher: StreamPrefetcher
+    private val handler = Handler(Looper.getMainLooper())
+    private val prefetchRunnable = Runnable {
+        streamPrefetcher.prefetch(binding.streamUrlEdittext.text.toString())
+    }
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -29,11 +49,32 @@ class MainActivity : AppCompatActivity() {
 
         setInitialValues()
 
+        // Fetch the head of the stream into the media cache while the user is still on this
+        // screen, once the URL stops changing. This also opens the connection to the stream host.
+        streamPrefetcher = StreamPrefetcher(
+            MediaCache.getSingletonInstance(this),
+            OkHttpDataSourceFactory(
+                HttpClientProvider.getSharedClient(),
+                Util.getUserAgent(this, getString(R.string.app_name))
+            ),
+            StreamPrefetcher.DEFAULT_PREFETCH_BYTES
+        )
+        streamPrefetcher.prefetch(binding.streamUrlEdittext.text.toString())
+        binding.streamUrlEdittext.doAfterTextChanged {
+            handler.removeCallbacks(prefetchRunnable)
+            handler.postDelayed(prefetchRunnable, PREFETCH_DEBOUNCE_MS)
+        }
+
         binding.startStreamingButton.setOnClickListener {
             val intent = Intent(this, PlayerActivity::class.java)
+            // Keep what was prefetched so far, and let the player load the rest.
+            handler.removeCallbacks(prefetchRunnable)
+            streamPrefetcher.cancel()
             intent.putExtra(STREAM_URL_KEY, binding.streamUrlEdittext.text.toString())
             intent.putExtra(CONNECT_TIMEOUT_KEY, binding.connectTimeoutMillisEditTextNumber.text.toString().toInt())
             intent.putExtra(READ_TIMEOUT_KEY, binding.readTimeoutMillisEditTextNumber.text.toString().toInt())
+            intent.putExtra(PARALLEL_CONNECTIONS_KEY, binding.parallelConnectionsEditTextNumber.text.toString().toInt())
+            intent.putExtra(RANGE_CHUNK_SIZE_KEY, binding.rangeChunkSizeBytesEditTextNumber.text.toString().toInt())
 
             intent.putExtra(DEFAULT_BUFFER_SEGMENT_SIZE_KEY, binding.defaultBufferSegmentSizeEditTextNumber.text.toString().toInt())
             intent.putExtra(MIN_BUFFER_MS_KEY, binding.minBufferMsEditTextNumber.text.toString().toInt())
@@ -45,6 +86,12 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    override fun onDestroy() {
+        super.onDestroy()
+        handler.removeCallbacks(prefetchRunnable)
+        streamPrefetcher.release()
+    }
+
     fun setInitialValues(){
         binding.streamUrlEdittext.setText(RTL_STREAM_URL)
         binding.streamUrlEdittext.setSelection(0)
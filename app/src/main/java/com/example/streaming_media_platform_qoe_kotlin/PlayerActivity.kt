@@ -15,10 +15,12 @@
  */
 package com.example.streaming_media_platform_qoe_kotlin
 
+import android.content.ComponentCallbacks2
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.net.Uri
 import android.os.Bundle
+import android.os.SystemClock
 import android.util.Log
 import android.util.Pair
 import android.view.KeyEvent
@@ -31,12 +33,28 @@ import com.example.streaming_media_platform_qoe_kotlin.Constants.CONNECT_TIMEOUT
 import com.example.streaming_media_platform_qoe_kotlin.Constants.DEFAULT_BUFFER_SEGMENT_SIZE_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.MAX_BUFFER_MS_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.MIN_BUFFER_MS_KEY
+import com.example.streaming_media_platform_qoe_kotlin.Constants.PARALLEL_CONNECTIONS_KEY
+import com.example.streaming_media_platform_qoe_kotlin.Constants.RANGE_CHUNK_SIZE_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.READ_TIMEOUT_KEY
 import com.example.streaming_media_platform_qoe_kotlin.Constants.STREAM_URL_KEY
 import com.example.streaming_media_platform_qoe_kotlin.databinding.ActivityPlayerBinding
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.BufferBasedTrackSelection
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.BufferMemoryBudget
 import com.example.streaming_media_platform_qoe_kotlin.exoplayer.CustomLoadControl
-//import com.example.streaming_media_platform_qoe_kotlin.exoplayer.PlayerEventLogger
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.CustomLoadErrorHandlingPolicy
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.DecoderCountersSampler
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.HttpClientProvider
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.MediaCache
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.ParallelRangeDataSource
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.PlayerEventLogger
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.PooledAllocator
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.QoeMetricsEngine
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.QoeDebugTextViewHelper
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.SegmentPool
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.SessionTraceRecorder
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.StartupTimeline
 import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
+import com.example.streaming_media_platform_qoe_kotlin.data_models.QoeScore
 import com.example.streaming_media_platform_qoe_kotlin.data_models.Utils
 import com.google.android.exoplayer2.*
 import com.google.android.exoplayer2.audio.AudioAttributes
@@ -51,6 +69,8 @@ import com.google.android.exoplayer2.source.TrackGroupArray
 import com.google.android.exoplayer2.source.ads.AdsLoader
 import com.google.android.exoplayer2.source.dash.DashMediaSource
 import com.google.android.exoplayer2.source.dash.DefaultDashChunkSource
+import com.google.android.exoplayer2.source.smoothstreaming.DefaultSsChunkSource
+import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.ParametersBuilder
 import com.google.android.exoplayer2.trackselection.MappingTrackSelector.MappedTrackInfo
@@ -58,20 +78,19 @@ import com.google.android.exoplayer2.trackselection.TrackSelectionArray
 import com.google.android.exoplayer2.ui.DebugTextViewHelper
 import com.google.android.exoplayer2.ui.StyledPlayerControlView
 import com.google.android.exoplayer2.upstream.DataSource
-import com.google.android.exoplayer2.upstream.DefaultAllocator
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory
 import com.google.android.exoplayer2.util.ErrorMessageProvider
 import com.google.android.exoplayer2.util.EventLogger
+import com.google.android.exoplayer2.util.PriorityTaskManager
 import com.google.android.exoplayer2.util.Util
 //import kotlinx.android.synthetic.main.activity_player.*
-import okhttp3.ConnectionPool
-import okhttp3.OkHttpClient
-import okhttp3.Protocol
+import java.io.File
+import java.io.IOException
 import java.net.CookieHandler
 import java.net.CookieManager
 import java.net.CookiePolicy
 import java.util.*
-import java.util.concurrent.TimeUnit
+import okhttp3.Protocol
 
 /** An activity that plays media using [SimpleExoPlayer].  */
 class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerControlView.VisibilityListener {
@@ -82,7 +101,12 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
         private const val KEY_WINDOW = "window"
         private const val KEY_POSITION = "position"
         private const val KEY_AUTO_PLAY = "auto_play"
+        // The directory, within the app files, of the session logs.
+        private const val SESSION_LOG_DIRECTORY = "session_logs"
         private var DEFAULT_COOKIE_MANAGER: CookieManager? = null
+        // Shared by the load controls of all players in the process, so that the foreground player's
+        // loads go before any background preloading.
+        private val PRIORITY_TASK_MANAGER = PriorityTaskManager()
         private fun isBehindLiveWindow(e: ExoPlaybackException): Boolean {
             if (e.type != ExoPlaybackException.TYPE_SOURCE) {
                 return false
@@ -111,11 +135,17 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
     private var isShowingTrackSelectionDialog = false
 
     private var dataSourceFactory: DataSource.Factory? = null
+    private var manifestDataSourceFactory: DataSource.Factory? = null
     private lateinit var streamUrl: String
     private var trackSelector: DefaultTrackSelector? = null
     private var trackSelectorParameters: DefaultTrackSelector.Parameters? = null
     private var customLoadControl: CustomLoadControl? = null
+    private var loadErrorHandlingPolicy: CustomLoadErrorHandlingPolicy? = null
+    private var trackSelectionFactory: BufferBasedTrackSelection.Factory? = null
     private var debugViewHelper: DebugTextViewHelper? = null
+    private lateinit var mediaCache: MediaCache
+    private var parallelRangeDataSourceFactory: ParallelRangeDataSource.Factory? = null
+    private lateinit var startupTimeline: StartupTimeline
 
     private var lastSeenTrackGroupArray: TrackGroupArray? = null
     private var startAutoPlay = false
@@ -123,8 +153,12 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
     private var startPosition: Long = 0
 
     private var lastPlaybackState: Int = Player.STATE_BUFFERING
-//    private var playerEventLogger: PlayerEventLogger? = null
-//    private var readyForLog: Boolean = false
+    private var playerEventLogger: PlayerEventLogger? = null
+    private var sessionTraceRecorder: SessionTraceRecorder? = null
+    private val decoderCountersSampler = DecoderCountersSampler()
+    private val qoeMetricsEngine = QoeMetricsEngine()
+    private val qoeScore = QoeScore()
+    private var readyForLog: Boolean = false
     private var firstReadyPlaybackState: Boolean = false
     private var videoStartTime: Long = 0
 
@@ -133,6 +167,8 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
     private var loadedAdTagUri: Uri? = null
     private var connectTimeOut: Int = 0
     private var readTimeOut: Int = 0
+    private var parallelConnections: Int = 1
+    private var rangeChunkSize: Int = ParallelRangeDataSource.DEFAULT_CHUNK_SIZE
     private var bufferSegmentSize: Int = 0
     private var minBufferMs: Int = 0
     private var maxBufferMs: Int = 0
@@ -146,7 +182,28 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
         val view = binding.root
         setContentView(view)
 
-//        playerEventLogger = PlayerEventLogger()
+        val sessionLogDirectory = File(filesDir, SESSION_LOG_DIRECTORY)
+        val sessionName = "session_${System.currentTimeMillis()}"
+        playerEventLogger = PlayerEventLogger(
+            sessionLogDirectory, sessionName, PlayerEventLogger.PLAYER_STATE_COLUMNS
+        )
+        decoderCountersSampler.setListener { durationMs, videoDeltas, _ ->
+            qoeMetricsEngine.onDecoderCounters(SystemClock.elapsedRealtime(), videoDeltas)
+            updateQoeScore(durationMs, videoDeltas)
+            // Only intervals with drops are logged, which keeps the log small while playback is
+            // smooth.
+            if (videoDeltas.droppedBufferCount > 0) {
+                player?.let {
+                    playerEventLogger?.logPlayerState(it, "dropped_frames", durationMs, videoDeltas)
+                }
+            }
+        }
+        try {
+            sessionTraceRecorder =
+                SessionTraceRecorder(File(sessionLogDirectory, "$sessionName.trace"))
+        } catch (e: IOException) {
+            Log.e("EventLogger", "Creating the session trace failed", e)
+        }
 
         val userAgent = Util.getUserAgent(this, getString(R.string.app_name))
 
@@ -154,6 +211,9 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
 
         connectTimeOut = intent?.extras?.getInt(CONNECT_TIMEOUT_KEY)!!
         readTimeOut = intent?.extras?.getInt(READ_TIMEOUT_KEY)!!
+        parallelConnections = intent?.extras?.getInt(PARALLEL_CONNECTIONS_KEY, 1)!!
+        rangeChunkSize = intent?.extras?.getInt(
+            RANGE_CHUNK_SIZE_KEY, ParallelRangeDataSource.DEFAULT_CHUNK_SIZE)!!
 
         bufferSegmentSize = intent?.extras?.getInt(DEFAULT_BUFFER_SEGMENT_SIZE_KEY)!!
 
@@ -167,6 +227,8 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
             STREAM_URL_KEY + ": " + streamUrl + ", \n" +
                     CONNECT_TIMEOUT_KEY + ": " + connectTimeOut.toString() + ", " +
                     READ_TIMEOUT_KEY + ": " + readTimeOut.toString() + ", \n" +
+                    PARALLEL_CONNECTIONS_KEY + ": " + parallelConnections.toString() + ", " +
+                    RANGE_CHUNK_SIZE_KEY + ": " + rangeChunkSize.toString() + ", \n" +
                     DEFAULT_BUFFER_SEGMENT_SIZE_KEY + ": " + bufferSegmentSize.toString() + ", " +
                     MIN_BUFFER_MS_KEY + ": " + minBufferMs.toString() + ", " +
                     MAX_BUFFER_MS_KEY + ": " + maxBufferMs.toString() + ", \n" +
@@ -180,17 +242,32 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
             connectTimeOut, readTimeOut,
             true)
 
-        dataSourceFactory = OkHttpDataSourceFactory(
-            OkHttpClient.Builder()
-                .readTimeout(0, TimeUnit.MILLISECONDS)
-                .connectTimeout(0, TimeUnit.MILLISECONDS)
-                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
-//                .retryOnConnectionFailure(true)
-//                .connectionPool(ConnectionPool(0, 5, TimeUnit.MINUTES))
-                .connectionPool(ConnectionPool(0, 1, TimeUnit.NANOSECONDS))
-                .build(),
-            userAgent
-        )
+        mediaCache = MediaCache.getSingletonInstance(this)
+        // Replays, seeks back and restarts read the bytes already downloaded from disk.
+        // The shared client keeps connections alive across loads and players, including the one
+        // MainActivity opened ahead of playback.
+        startupTimeline = StartupTimeline { timeline ->
+            Log.d("EventLogger", timeline.summaryString)
+            qoeScore.setStartupDelay(timeline.totalDurationMs)
+            showToast(timeline.summaryString.replace(", ", "\n"))
+        }
+        val httpClient = HttpClientProvider.getClient(
+            connectTimeOut, readTimeOut, startupTimeline.networkEventListener)
+        var upstreamFactory: DataSource.Factory = OkHttpDataSourceFactory(httpClient, userAgent)
+        if (parallelConnections > 1) {
+            // Each range needs a connection of its own, which HTTP/2 would multiplex onto one.
+            val http1Client = httpClient.newBuilder().protocols(listOf(Protocol.HTTP_1_1)).build()
+            parallelRangeDataSourceFactory = ParallelRangeDataSource.Factory(
+                OkHttpDataSourceFactory(http1Client, userAgent),
+                parallelConnections,
+                rangeChunkSize
+            )
+            upstreamFactory = parallelRangeDataSourceFactory!!
+        }
+        dataSourceFactory = mediaCache.createDataSourceFactory(upstreamFactory)
+        // Live manifests are refreshed from the same URL, so they must not be served from the cache.
+        manifestDataSourceFactory = mediaCache.createDataSourceFactory(
+            upstreamFactory, /* ignoreCacheForUnsetLengthRequests= */ true)
 
         if (CookieHandler.getDefault() !== DEFAULT_COOKIE_MANAGER) {
             CookieHandler.setDefault(DEFAULT_COOKIE_MANAGER)
@@ -267,6 +344,25 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
     public override fun onDestroy() {
         super.onDestroy()
         releaseAdsLoader()
+        parallelRangeDataSourceFactory?.release()
+        // The writer thread writes the records still queued in the background.
+        playerEventLogger?.close()
+        sessionTraceRecorder?.close()
+    }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        customLoadControl?.onMemoryPressure(CustomLoadControl.getMemoryPressureForTrimLevel(level))
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // The app is likely to be killed, so don't hold on to segments for the next player.
+            SegmentPool.trimSharedInstances()
+        }
+    }
+
+    override fun onLowMemory() {
+        super.onLowMemory()
+        customLoadControl?.onMemoryPressure(CustomLoadControl.MEMORY_PRESSURE_CRITICAL)
+        SegmentPool.trimSharedInstances()
     }
 
     override fun onRequestPermissionsResult(
@@ -339,7 +435,8 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
 //            }
             val renderersFactory: RenderersFactory = DefaultRenderersFactory(this)
 
-            val mediaSourceFactory = prepareAudioSourceForUrl(streamUrl)
+            startupTimeline.start()
+            val mediaSourceFactory = prepareMediaSourceForUrl(streamUrl)
 //            val videMediaSourceFactory = prepareVideoSourceForUrl(streamUrl)
 
 //                DefaultMediaSourceFactory(dataSourceFactory!!)
@@ -350,13 +447,9 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
 //                    }
 //                    .setAdViewProvider(player_view)
 
-            trackSelector = DefaultTrackSelector( /* context= */this)
-            trackSelector!!.parameters = trackSelectorParameters!!
-            lastSeenTrackGroupArray = null
-
             customLoadControl = CustomLoadControl.Builder()
-                .setAllocator(DefaultAllocator(true,
-                    bufferSegmentSize))
+                // Segments outlive the player, so restarting playback reuses them.
+                .setAllocator(PooledAllocator(SegmentPool.getSharedInstance(bufferSegmentSize)))
 //                          C.DEFAULT_BUFFER_SEGMENT_SIZE))
                 .setBufferDurationsMs(
                     minBufferMs,
@@ -366,8 +459,16 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
                 )
 //                      .setTargetBufferBytes(DefaultLoadControl.DEFAULT_TARGET_BUFFER_BYTES)
                 .setPrioritizeTimeOverSizeThresholds(DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS)
+                .setPriorityTaskManager(PRIORITY_TASK_MANAGER, CustomLoadControl.PRIORITY_FOREGROUND_PLAYBACK)
+                .setMemoryBudget(BufferMemoryBudget.getSingletonInstance(this))
                 .build()
 
+            // Adaptive DASH and SmoothStreaming tracks switch on the buffer the load control keeps.
+            trackSelectionFactory = BufferBasedTrackSelection.Factory(customLoadControl!!)
+            trackSelector = DefaultTrackSelector( /* context= */this, trackSelectionFactory!!)
+            trackSelector!!.parameters = trackSelectorParameters!!
+            lastSeenTrackGroupArray = null
+
             player = SimpleExoPlayer.Builder( /* context= */this, renderersFactory)
                 .setTrackSelector(trackSelector!!)
                 .setLoadControl(customLoadControl!!)
@@ -376,6 +477,9 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
 //            player!!.setMediaSource(videMediaSourceFactory)
             player!!.addListener(PlayerEventListener())
             player!!.addAnalyticsListener(EventLogger(trackSelector))
+            player!!.addAnalyticsListener(startupTimeline)
+            sessionTraceRecorder?.start(player!!)
+            decoderCountersSampler.start(player!!)
             player!!.setAudioAttributes(
                 AudioAttributes.DEFAULT,  /* handleAudioFocus= */
                 true
@@ -383,7 +487,18 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
             player!!.playWhenReady = startAutoPlay
             binding.playerView.player = player
             binding.playerView.setPlaybackPreparer(this)
-            debugViewHelper = DebugTextViewHelper(player!!, binding.debugTextView!!)
+            val statsSources = listOfNotNull(
+                mediaCache,
+                HttpClientProvider.getConnectionStats(),
+                parallelRangeDataSourceFactory?.getConnectionStats(),
+                loadErrorHandlingPolicy,
+                trackSelectionFactory?.abrStats,
+                decoderCountersSampler,
+                qoeMetricsEngine,
+                QoeDebugTextViewHelper.StatsSource { "score $qoeScore" }
+            )
+            debugViewHelper = QoeDebugTextViewHelper(
+                player!!, binding.debugTextView!!, *statsSources.toTypedArray())
             debugViewHelper!!.start()
 
 //            videoStartTime = System.currentTimeMillis()
@@ -396,16 +511,34 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
 //        player!!.setMediaItems(mediaItems!!,  /* resetPosition= */!haveStartPosition)
         player!!.prepare()
 //        updateButtonVisibility()
-//        readyForLog = true
+        readyForLog = true
         return true
     }
 
-    private fun prepareAudioSourceForUrl(url: String): MediaSource {
+    private fun prepareMediaSourceForUrl(url: String): MediaSource {
         val mediaItem: MediaItem = MediaItem.fromUri(url)
-
-        return ProgressiveMediaSource.Factory(dataSourceFactory!!)
-//            .setLoadErrorHandlingPolicy(CustomLoadErrorHandlingPolicy())
-            .createMediaSource(mediaItem)
+        // A new policy per player, so that the retry budget and counters cover a single session.
+        loadErrorHandlingPolicy = CustomLoadErrorHandlingPolicy({
+            customLoadControl?.bufferedDurationUs ?: C.TIME_UNSET
+        })
+
+        return when (Util.inferContentType(Uri.parse(url))) {
+            C.TYPE_DASH -> DashMediaSource.Factory(
+                DefaultDashChunkSource.Factory(dataSourceFactory!!),
+                manifestDataSourceFactory
+            )
+                .setLoadErrorHandlingPolicy(loadErrorHandlingPolicy)
+                .createMediaSource(mediaItem)
+            C.TYPE_SS -> SsMediaSource.Factory(
+                DefaultSsChunkSource.Factory(dataSourceFactory!!),
+                manifestDataSourceFactory
+            )
+                .setLoadErrorHandlingPolicy(loadErrorHandlingPolicy)
+                .createMediaSource(mediaItem)
+            else -> ProgressiveMediaSource.Factory(dataSourceFactory!!)
+                .setLoadErrorHandlingPolicy(loadErrorHandlingPolicy)
+                .createMediaSource(mediaItem)
+        }
     }
 
     protected fun releasePlayer() {
@@ -414,6 +547,15 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
             updateStartPosition()
             debugViewHelper!!.stop()
             debugViewHelper = null
+            loadErrorHandlingPolicy?.let { Log.i("EventLogger", "load errors: ${it.statsString}") }
+            sessionTraceRecorder?.stop()
+            decoderCountersSampler.stop()
+            // The released player reports no more state changes, so the time until the next one
+            // is created doesn't count as playing.
+            qoeMetricsEngine.onPlayerStateChanged(
+                SystemClock.elapsedRealtime(), Player.STATE_IDLE, /* playWhenReady= */ false
+            )
+            Log.i("EventLogger", "session qoe: ${qoeMetricsEngine.statsString}, $qoeScore")
             player!!.release()
             player = null
 //            mediaItems = emptyList()
@@ -484,6 +626,21 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
         Log.d("EventLogger", "trackRecordsOnStartPlaying type: inputBufferCount = ${decoderCountersData.inputBufferCount}")
     }
 
+    /** Adds an interval of playback to the score, with the stalls of the session so far. */
+    private fun updateQoeScore(durationMs: Long, videoDeltas: DecoderCountersData) {
+        val session = qoeMetricsEngine.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+        qoeScore.setStalls(session.rebufferCount, session.rebufferTimeMs)
+        val frames = videoDeltas.renderedOutputBufferCount + videoDeltas.droppedBufferCount
+        if (frames == 0) {
+            // Paused, stalled or without video: there is no quality to score.
+            return
+        }
+        val bitrate = player?.videoFormat?.bitrate ?: Format.NO_VALUE
+        qoeScore.onMediaInterval(
+            durationMs, bitrate, videoDeltas.renderedOutputBufferCount, videoDeltas.droppedBufferCount
+        )
+    }
+
     private fun printPlayWhenReady(value: Boolean): String {
         return when (value) {
             true -> "PLAY_WHEN_READY_TRUE"
@@ -494,6 +651,11 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
     private inner class PlayerEventListener : Player.EventListener {
         override fun onPlaybackStateChanged(@Player.State playbackState: Int) {
             val currentTime = System.currentTimeMillis()
+            player?.let {
+                qoeMetricsEngine.onPlayerStateChanged(
+                    SystemClock.elapsedRealtime(), playbackState, it.playWhenReady
+                )
+            }
             Log.d("EventLogger", "onPlaybackStateChanged type ${printPlaybackState(playbackState)}");
             when(playbackState){
                 Player.STATE_BUFFERING -> {
@@ -509,7 +671,10 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
                     val outBufStr: String = "Output Buffer Count = ${outBufCntTotal}"
                     val continuityRate: Float = outBufCntTotal.toFloat() / inpBufCntTotal.toFloat()
                     val continuityRateStr: String = "Continuity Rate = ${continuityRate}"
-                    showToast(inpBufStr + "\n" + outBufStr + "\n" + continuityRateStr)
+                    val sessionMetrics = qoeMetricsEngine.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+                    val rebufferStr: String = "Rebuffer Ratio = ${sessionMetrics.rebufferRatio} (${sessionMetrics.rebufferCount} rebuffers)"
+                    val scoreStr: String = "QoE Score = ${"%.2f".format(Locale.US, qoeScore.getScore())}"
+                    showToast(inpBufStr + "\n" + outBufStr + "\n" + continuityRateStr + "\n" + rebufferStr + "\n" + scoreStr)
                 }
                 Player.STATE_IDLE -> {
                     binding.debugTextView.append("/n STATE_IDLE /n")
@@ -529,19 +694,24 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
                 // track initial playing latency
                 Log.d("EventLogger", "start_time=${videoStartTime}, current_time=${currentTime}, initial_latency=${currentTime - videoStartTime}")
                 firstReadyPlaybackState = true
-                showToast("Initial Latency = ${currentTime - videoStartTime}ms")
+                // The phases of the startup are shown once the first frame is rendered.
             }
 
             lastPlaybackState = playbackState
-//            if (readyForLog && playerEventLogger != null && player != null) {
-//                playerEventLogger!!.createNewLog(player!!, applicationContext)
-//            }
+            if (readyForLog && player != null) {
+                playerEventLogger?.logPlayerState(player!!, "playback_state")
+            }
 
 //            updateButtonVisibility()
         }
 
         override fun onPlayWhenReadyChanged(playWhenReady: Boolean, @Player.PlayWhenReadyChangeReason reason: Int) {
 //            super.onPlayWhenReadyChanged(playWhenReady, reason)
+            player?.let {
+                qoeMetricsEngine.onPlayerStateChanged(
+                    SystemClock.elapsedRealtime(), it.playbackState, playWhenReady
+                )
+            }
             Log.d("EventLogger", "onPlayWhenReadyChanged type ${printPlayWhenReady(playWhenReady)}");
             when (playWhenReady) {
                 true -> {
@@ -551,9 +721,9 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
                     binding.debugTextView.append("/n PLAY_WHEN_READY_FALSE")
                 }
             }
-//            if (readyForLog && playerEventLogger != null && player != null) {
-//                playerEventLogger!!.createNewLog(player!!, applicationContext)
-//            }
+            if (readyForLog && player != null) {
+                playerEventLogger?.logPlayerState(player!!, "play_when_ready")
+            }
         }
 
         override fun onPlayerError(e: ExoPlaybackException) {
@@ -635,6 +805,7 @@ class PlayerActivity : AppCompatActivity(), PlaybackPreparer, StyledPlayerContro
                 }
                 Player.DISCONTINUITY_REASON_SEEK -> {
                     binding.debugTextView.append("/n onPositionDiscontinuity DISCONTINUITY_REASON_SEEK /n")
+                    qoeMetricsEngine.onSeek(SystemClock.elapsedRealtime())
                 }
                 Player.DISCONTINUITY_REASON_SEEK_ADJUSTMENT -> {
                     binding.debugTextView.append("/n onPositionDiscontinuity DISCONTINUITY_REASON_SEEK_ADJUSTMENT /n")
@@ -1,5 +1,7 @@
 package com.example.streaming_media_platform_qoe_kotlin.data_models
 
+import com.google.android.exoplayer2.decoder.DecoderCounters
+
 enum class DecoderCountersDataStrId {
     DECODER_INIT_COUNT {
         override fun getStr() = "decInitCnt"
@@ -39,6 +41,9 @@ enum class DecoderCountersDataStrId {
 }
 public class DecoderCountersData {
 
+    /** Creates a snapshot with all counters at zero, to be filled in with [set]. */
+    constructor()
+
     constructor(decoderInitCount: Int, decoderReleaseCount: Int, inputBufferCount: Int, skippedInputBufferCount: Int, renderedOutputBufferCount: Int,
                 skippedOutputBufferCount: Int, droppedBufferCount: Int, maxConsecutiveDroppedBufferCount: Int, droppedToKeyframeCount:Int,
                 totalVideoFrameProcessingOffsetUs: Long, videoFrameProcessingOffsetCount: Int) {
@@ -55,6 +60,88 @@ public class DecoderCountersData {
         this.videoFrameProcessingOffsetCount = videoFrameProcessingOffsetCount
     }
 
+    /** Copies the counters of [counters] into this snapshot. */
+    fun set(counters: DecoderCounters) {
+        counters.ensureUpdated()
+        decoderInitCount = counters.decoderInitCount
+        decoderReleaseCount = counters.decoderReleaseCount
+        inputBufferCount = counters.inputBufferCount
+        skippedInputBufferCount = counters.skippedInputBufferCount
+        renderedOutputBufferCount = counters.renderedOutputBufferCount
+        skippedOutputBufferCount = counters.skippedOutputBufferCount
+        droppedBufferCount = counters.droppedBufferCount
+        maxConsecutiveDroppedBufferCount = counters.maxConsecutiveDroppedBufferCount
+        droppedToKeyframeCount = counters.droppedToKeyframeCount
+        totalVideoFrameProcessingOffsetUs = counters.totalVideoFrameProcessingOffsetUs
+        videoFrameProcessingOffsetCount = counters.videoFrameProcessingOffsetCount
+    }
+
+    /** Copies the counters of [other] into this snapshot. */
+    fun set(other: DecoderCountersData) {
+        decoderInitCount = other.decoderInitCount
+        decoderReleaseCount = other.decoderReleaseCount
+        inputBufferCount = other.inputBufferCount
+        skippedInputBufferCount = other.skippedInputBufferCount
+        renderedOutputBufferCount = other.renderedOutputBufferCount
+        skippedOutputBufferCount = other.skippedOutputBufferCount
+        droppedBufferCount = other.droppedBufferCount
+        maxConsecutiveDroppedBufferCount = other.maxConsecutiveDroppedBufferCount
+        droppedToKeyframeCount = other.droppedToKeyframeCount
+        totalVideoFrameProcessingOffsetUs = other.totalVideoFrameProcessingOffsetUs
+        videoFrameProcessingOffsetCount = other.videoFrameProcessingOffsetCount
+    }
+
+    /** Sets all counters to zero. */
+    fun reset() {
+        decoderInitCount = 0
+        decoderReleaseCount = 0
+        inputBufferCount = 0
+        skippedInputBufferCount = 0
+        renderedOutputBufferCount = 0
+        skippedOutputBufferCount = 0
+        droppedBufferCount = 0
+        maxConsecutiveDroppedBufferCount = 0
+        droppedToKeyframeCount = 0
+        totalVideoFrameProcessingOffsetUs = 0
+        videoFrameProcessingOffsetCount = 0
+    }
+
+    /**
+     * Sets each counter to its increase from [previous] to [current].
+     *
+     * A counter lower in [current] than in [previous] was reset along with its decoder, so its
+     * increase is its value in [current]. [maxConsecutiveDroppedBufferCount] is a maximum rather
+     * than a count, so it is copied from [current].
+     */
+    fun setDelta(current: DecoderCountersData, previous: DecoderCountersData) {
+        decoderInitCount = delta(current.decoderInitCount, previous.decoderInitCount)
+        decoderReleaseCount = delta(current.decoderReleaseCount, previous.decoderReleaseCount)
+        inputBufferCount = delta(current.inputBufferCount, previous.inputBufferCount)
+        skippedInputBufferCount =
+            delta(current.skippedInputBufferCount, previous.skippedInputBufferCount)
+        renderedOutputBufferCount =
+            delta(current.renderedOutputBufferCount, previous.renderedOutputBufferCount)
+        skippedOutputBufferCount =
+            delta(current.skippedOutputBufferCount, previous.skippedOutputBufferCount)
+        droppedBufferCount = delta(current.droppedBufferCount, previous.droppedBufferCount)
+        maxConsecutiveDroppedBufferCount = current.maxConsecutiveDroppedBufferCount
+        droppedToKeyframeCount =
+            delta(current.droppedToKeyframeCount, previous.droppedToKeyframeCount)
+        // A sum of signed offsets may decrease, so its reset is told by the offset count.
+        if (current.videoFrameProcessingOffsetCount >= previous.videoFrameProcessingOffsetCount) {
+            totalVideoFrameProcessingOffsetUs =
+                current.totalVideoFrameProcessingOffsetUs - previous.totalVideoFrameProcessingOffsetUs
+            videoFrameProcessingOffsetCount =
+                current.videoFrameProcessingOffsetCount - previous.videoFrameProcessingOffsetCount
+        } else {
+            totalVideoFrameProcessingOffsetUs = current.totalVideoFrameProcessingOffsetUs
+            videoFrameProcessingOffsetCount = current.videoFrameProcessingOffsetCount
+        }
+    }
+
+    private fun delta(current: Int, previous: Int) =
+        if (current >= previous) current - previous else current
+
     public override fun toString(): String {
         val decInitCntStr: String =
             "${DecoderCountersDataStrId.DECODER_INIT_COUNT.getStr()}=${decoderInitCount}"
@@ -0,0 +1,159 @@
+package com.example.streaming_media_platform_qoe_kotlin.data_models
+
+import java.util.Locale
+import kotlin.math.exp
+import kotlin.math.ln
+
+/**
+ * A mean opinion score of a session, from 1 (bad) to 5 (excellent), in the spirit of ITU-T P.1203.
+ *
+ * As in P.1203, the score combines a media quality with a degradation for the initial loading and
+ * the stalls:
+ *
+ * - Every interval of playback gets a video quality from its bitrate, on a log scale between
+ *   [Weights.minQualityBitrate] and [Weights.maxQualityBitrate], lowered by the fraction of frames
+ *   dropped. The intervals are averaged by duration, with bad intervals weighing more, since users
+ *   remember them more.
+ * - The startup delay, the number of stalls and their total duration each add a penalty that
+ *   grows with the log of their value. The quality above 1 is scaled by `exp(-penalties)`.
+ *
+ * Each update costs O(1), so the score can be read at any time during playback. The [Weights] are
+ * meant to be calibrated against user studies; the defaults give about 4.6 for a clean session
+ * at the highest quality with a 2 s startup, and about 3.3 once a 5 s stall is added.
+ *
+ * @param weights The parameters of the model.
+ */
+class QoeScore @JvmOverloads constructor(val weights: Weights = Weights()) {
+
+    /**
+     * The parameters of the model.
+     *
+     * @param minQualityBitrate The bitrate from which the video quality is above 1, in bits per
+     *     second.
+     * @param maxQualityBitrate The bitrate from which the video quality is 5, in bits per second.
+     * @param unknownBitrateQuality The video quality of an interval whose bitrate is unknown.
+     * @param droppedFrameWeight The quality lost per fraction of frames dropped.
+     * @param negativityBias How much more an interval at quality 1 weighs than one at quality 5.
+     * @param startupDelayWeight The penalty per log second of startup delay.
+     * @param stallCountWeight The penalty per log stall.
+     * @param stallDurationWeight The penalty per log second of stalling.
+     */
+    data class Weights @JvmOverloads constructor(
+        val minQualityBitrate: Int = 300_000,
+        val maxQualityBitrate: Int = 8_000_000,
+        val unknownBitrateQuality: Double = 4.0,
+        val droppedFrameWeight: Double = 8.0,
+        val negativityBias: Double = 1.0,
+        val startupDelayWeight: Double = 0.1,
+        val stallCountWeight: Double = 0.25,
+        val stallDurationWeight: Double = 0.15
+    ) {
+        init {
+            require(minQualityBitrate in 1 until maxQualityBitrate) {
+                "minQualityBitrate must be positive and below maxQualityBitrate"
+            }
+        }
+    }
+
+    private var weightedQualitySum = 0.0
+    private var weightSum = 0.0
+
+    /** The startup delay, in milliseconds, or 0 if not known yet. */
+    var startupDelayMs: Long = 0
+        private set
+
+    /** The number of stalls. */
+    var stallCount: Int = 0
+        private set
+
+    /** The total duration of the stalls, in milliseconds. */
+    var totalStallMs: Long = 0
+        private set
+
+    /** The duration of the playback added with [onMediaInterval], in milliseconds. */
+    var mediaDurationMs: Long = 0
+        private set
+
+    /** Sets the startup delay of the session, in milliseconds. */
+    fun setStartupDelay(startupDelayMs: Long) {
+        this.startupDelayMs = startupDelayMs.coerceAtLeast(0)
+    }
+
+    /**
+     * Sets the stalls of the session so far.
+     *
+     * @param stallCount The number of stalls.
+     * @param totalStallMs The total duration of the stalls, in milliseconds.
+     */
+    fun setStalls(stallCount: Int, totalStallMs: Long) {
+        this.stallCount = stallCount.coerceAtLeast(0)
+        this.totalStallMs = totalStallMs.coerceAtLeast(0)
+    }
+
+    /**
+     * Adds an interval of playback.
+     *
+     * @param durationMs The duration of the interval, in milliseconds.
+     * @param bitrate The bitrate of the video played, in bits per second, or a value of 0 or less
+     *     if unknown.
+     * @param renderedFrames The number of frames rendered in the interval.
+     * @param droppedFrames The number of frames dropped in the interval.
+     */
+    fun onMediaInterval(durationMs: Long, bitrate: Int, renderedFrames: Int, droppedFrames: Int) {
+        if (durationMs <= 0) {
+            return
+        }
+        val frames = renderedFrames + droppedFrames
+        val droppedFraction = if (frames > 0) droppedFrames.toDouble() / frames else 0.0
+        val quality =
+            (getBitrateQuality(bitrate) - weights.droppedFrameWeight * droppedFraction)
+                .coerceIn(MIN_SCORE, MAX_SCORE)
+        val weight = durationMs *
+            (1 + weights.negativityBias * (MAX_SCORE - quality) / (MAX_SCORE - MIN_SCORE))
+        weightedQualitySum += weight * quality
+        weightSum += weight
+        mediaDurationMs += durationMs
+    }
+
+    /** Returns the average video quality, from 1 to 5, or 5 if no interval was added. */
+    fun getVideoQuality(): Double = if (weightSum > 0) weightedQualitySum / weightSum else MAX_SCORE
+
+    /** Returns the penalty of the startup delay and the stalls. */
+    fun getStallPenalty(): Double {
+        return weights.startupDelayWeight * ln(1 + startupDelayMs / 1000.0) +
+            weights.stallCountWeight * ln(1 + stallCount.toDouble()) +
+            weights.stallDurationWeight * ln(1 + totalStallMs / 1000.0)
+    }
+
+    /** Returns the score, from 1 to 5. */
+    fun getScore(): Double =
+        MIN_SCORE + (getVideoQuality() - MIN_SCORE) * exp(-getStallPenalty())
+
+    private fun getBitrateQuality(bitrate: Int): Double {
+        if (bitrate <= 0) {
+            return weights.unknownBitrateQuality
+        }
+        val position = ln(bitrate.toDouble() / weights.minQualityBitrate) /
+            ln(weights.maxQualityBitrate.toDouble() / weights.minQualityBitrate)
+        return MIN_SCORE + (MAX_SCORE - MIN_SCORE) * position.coerceIn(0.0, 1.0)
+    }
+
+    public override fun toString(): String {
+        return listOf(
+            "mos=${"%.2f".format(Locale.US, getScore())}",
+            "quality=${"%.2f".format(Locale.US, getVideoQuality())}",
+            "penalty=${"%.2f".format(Locale.US, getStallPenalty())}",
+            "startupMs=$startupDelayMs",
+            "stalls=$stallCount",
+            "stallMs=$totalStallMs"
+        ).joinToString(separator = ",")
+    }
+
+    companion object {
+        /** The lowest score. */
+        const val MIN_SCORE = 1.0
+
+        /** The highest score. */
+        const val MAX_SCORE = 5.0
+    }
+}
@@ -26,6 +26,20 @@ public class Utils {
                 videoFrameProcessingOffsetCount = decoderCounters.videoFrameProcessingOffsetCount
             )
         }
+
+        /**
+         * Copies the video decoder counters of [player] into [snapshot] without allocating.
+         *
+         * @return Whether the player has video decoder counters. If not, [snapshot] is unchanged.
+         */
+        public fun getGeneralDecoderCountersBufferCountData(
+            player: SimpleExoPlayer,
+            snapshot: DecoderCountersData
+        ): Boolean {
+            val decoderCounters: DecoderCounters = player.videoDecoderCounters ?: return false
+            snapshot.set(decoderCounters)
+            return true
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionUtil;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive {@link ExoTrackSelection} that selects the bitrate from the buffer level, after
+ * BOLA.
+ *
+ * <p>Each track gets a utility, the log of its bitrate relative to the lowest one. At a buffer
+ * level {@code B}, the track maximising {@code (V * (utility + gamma) - B) / bitrate} is selected.
+ * {@code V} and {@code gamma} are chosen so that the lowest track is selected at the low watermark
+ * of the {@link CustomLoadControl} and the highest one at its high watermark, so the selection
+ * follows the buffer the load control keeps.
+ *
+ * <p>Below the low watermark, at startup and after a rebuffer, the buffer says little about the
+ * network, so the highest track the measured throughput sustains is selected instead. Above it,
+ * the buffer rule may not switch up beyond both the current track and the throughput-sustainable
+ * one, which keeps it from oscillating around the watermarks.
+ */
+public final class BufferBasedTrackSelection extends BaseTrackSelection {
+
+    /** The default fraction of the measured throughput considered available. */
+    public static final float DEFAULT_BANDWIDTH_FRACTION = 0.75f;
+
+    /** Factory for {@link BufferBasedTrackSelection} instances. */
+    public static final class Factory implements ExoTrackSelection.Factory {
+
+        private final CustomLoadControl loadControl;
+        private final float bandwidthFraction;
+        private final AbrStats abrStats;
+
+        /**
+         * @param loadControl The load control of the player, whose watermarks bound the buffer.
+         */
+        public Factory(CustomLoadControl loadControl) {
+            this(loadControl, DEFAULT_BANDWIDTH_FRACTION);
+        }
+
+        /**
+         * @param loadControl The load control of the player, whose watermarks bound the buffer.
+         * @param bandwidthFraction The fraction of the measured throughput considered available.
+         */
+        public Factory(CustomLoadControl loadControl, float bandwidthFraction) {
+            this.loadControl = loadControl;
+            this.bandwidthFraction = bandwidthFraction;
+            this.abrStats = new AbrStats();
+        }
+
+        /** Returns the switch counters of the selections created by this factory. */
+        public AbrStats getAbrStats() {
+            return abrStats;
+        }
+
+        @Override
+        public ExoTrackSelection[] createTrackSelections(
+                ExoTrackSelection.Definition[] definitions,
+                BandwidthMeter bandwidthMeter,
+                MediaPeriodId mediaPeriodId,
+                Timeline timeline) {
+            return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+                    definitions,
+                    definition ->
+                            new BufferBasedTrackSelection(
+                                    definition.group,
+                                    definition.tracks,
+                                    bandwidthMeter,
+                                    loadControl,
+                                    bandwidthFraction,
+                                    abrStats));
+        }
+    }
+
+    /** Counts the switches of a set of selections. */
+    public static final class AbrStats implements QoeDebugTextViewHelper.StatsSource {
+
+        private final AtomicInteger upSwitchCount;
+        private final AtomicInteger downSwitchCount;
+        private volatile int selectedBitrate;
+
+        public AbrStats() {
+            upSwitchCount = new AtomicInteger();
+            downSwitchCount = new AtomicInteger();
+            selectedBitrate = Format.NO_VALUE;
+        }
+
+        /** Returns the number of switches to a higher bitrate. */
+        public int getUpSwitchCount() {
+            return upSwitchCount.get();
+        }
+
+        /** Returns the number of switches to a lower bitrate. */
+        public int getDownSwitchCount() {
+            return downSwitchCount.get();
+        }
+
+        /** Returns the bitrate of the latest selected track, or {@link Format#NO_VALUE}. */
+        public int getSelectedBitrate() {
+            return selectedBitrate;
+        }
+
+        @Override
+        public String getStatsString() {
+            return String.format(
+                    Locale.US,
+                    "abr up:%d down:%d bitrate:%dkbps",
+                    getUpSwitchCount(),
+                    getDownSwitchCount(),
+                    max(selectedBitrate, 0) / 1000);
+        }
+
+        private void onTrackSelected(int previousBitrate, int bitrate) {
+            if (previousBitrate != Format.NO_VALUE && bitrate > previousBitrate) {
+                upSwitchCount.incrementAndGet();
+            } else if (previousBitrate != Format.NO_VALUE && bitrate < previousBitrate) {
+                downSwitchCount.incrementAndGet();
+            }
+            selectedBitrate = bitrate;
+        }
+    }
+
+    /** The smallest low watermark used, so that a zero minimum buffer does not disable the rule. */
+    private static final long MIN_LOW_WATERMARK_US = 1_000_000;
+
+    private final BandwidthMeter bandwidthMeter;
+    private final CustomLoadControl loadControl;
+    private final float bandwidthFraction;
+    private final AbrStats abrStats;
+    private final Clock clock;
+    private final boolean hasBitrates;
+    private final double[] utilities;
+
+    private float playbackSpeed;
+    private int selectedIndex;
+    private int reason;
+
+    /**
+     * @param group The {@link TrackGroup}.
+     * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+     *     empty. May be in any order.
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     * @param loadControl The load control of the player, whose watermarks bound the buffer.
+     * @param bandwidthFraction The fraction of the measured throughput considered available.
+     * @param abrStats Counts the switches of the selection.
+     */
+    public BufferBasedTrackSelection(
+            TrackGroup group,
+            int[] tracks,
+            BandwidthMeter bandwidthMeter,
+            CustomLoadControl loadControl,
+            float bandwidthFraction,
+            AbrStats abrStats) {
+        super(group, tracks);
+        Assertions.checkArgument(bandwidthFraction > 0, "bandwidthFraction must be positive");
+        this.bandwidthMeter = bandwidthMeter;
+        this.loadControl = loadControl;
+        this.bandwidthFraction = bandwidthFraction;
+        this.abrStats = abrStats;
+        this.clock = Clock.DEFAULT;
+        this.playbackSpeed = 1f;
+
+        // The formats are sorted by decreasing bitrate, so the last track has the lowest one.
+        boolean hasBitrates = true;
+        for (int i = 0; i < length; i++) {
+            hasBitrates &= getFormat(i).bitrate > 0;
+        }
+        this.hasBitrates = hasBitrates;
+        this.utilities = new double[length];
+        if (hasBitrates) {
+            double lowestBitrate = getFormat(length - 1).bitrate;
+            for (int i = 0; i < length; i++) {
+                utilities[i] = Math.log(getFormat(i).bitrate / lowestBitrate) + 1;
+            }
+        }
+        selectedIndex = getThroughputIndex(clock.elapsedRealtime());
+        reason = C.SELECTION_REASON_INITIAL;
+        abrStats.onTrackSelected(Format.NO_VALUE, getFormat(selectedIndex).bitrate);
+    }
+
+    @Override
+    public void onPlaybackSpeed(float playbackSpeed) {
+        this.playbackSpeed = playbackSpeed;
+    }
+
+    @Override
+    public void updateSelectedTrack(
+            long playbackPositionUs,
+            long bufferedDurationUs,
+            long availableDurationUs,
+            List<? extends MediaChunk> queue,
+            MediaChunkIterator[] mediaChunkIterators) {
+        long nowMs = clock.elapsedRealtime();
+        long lowWatermarkUs = max(loadControl.getLowWatermarkUs(), MIN_LOW_WATERMARK_US);
+        long highWatermarkUs = loadControl.getHighWatermarkUs();
+        int throughputIndex = getThroughputIndex(nowMs);
+
+        int newIndex;
+        if (!hasBitrates || bufferedDurationUs < lowWatermarkUs
+                || highWatermarkUs <= lowWatermarkUs) {
+            newIndex = throughputIndex;
+        } else {
+            int bufferIndex =
+                    getBufferIndex(bufferedDurationUs, lowWatermarkUs, highWatermarkUs, nowMs);
+            newIndex = bufferIndex;
+            if (bufferIndex < selectedIndex && bufferIndex < throughputIndex) {
+                // A lower index is a higher bitrate. Switch up no further than the higher of the
+                // current and the throughput-sustainable track.
+                int cappedIndex = min(selectedIndex, throughputIndex);
+                if (!isBlacklisted(cappedIndex, nowMs)) {
+                    newIndex = cappedIndex;
+                }
+            }
+        }
+        if (newIndex != selectedIndex) {
+            abrStats.onTrackSelected(getFormat(selectedIndex).bitrate, getFormat(newIndex).bitrate);
+            selectedIndex = newIndex;
+            reason = C.SELECTION_REASON_ADAPTIVE;
+        }
+    }
+
+    @Override
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    @Override
+    public int getSelectionReason() {
+        return reason;
+    }
+
+    @Nullable
+    @Override
+    public Object getSelectionData() {
+        return null;
+    }
+
+    private int getBufferIndex(
+            long bufferedDurationUs, long lowWatermarkUs, long highWatermarkUs, long nowMs) {
+        double gamma = (utilities[0] - 1) / ((double) highWatermarkUs / lowWatermarkUs - 1);
+        if (gamma <= 0) {
+            // All tracks have the same bitrate.
+            return getThroughputIndex(nowMs);
+        }
+        double v = lowWatermarkUs / gamma;
+        int bestIndex = C.INDEX_UNSET;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            if (isBlacklisted(i, nowMs)) {
+                continue;
+            }
+            double score = (v * (utilities[i] + gamma) - bufferedDurationUs) / getFormat(i).bitrate;
+            if (score > bestScore) {
+                bestScore = score;
+                bestIndex = i;
+            }
+        }
+        return bestIndex != C.INDEX_UNSET ? bestIndex : selectedIndex;
+    }
+
+    private int getThroughputIndex(long nowMs) {
+        long availableBitrate =
+                (long) (bandwidthMeter.getBitrateEstimate() * bandwidthFraction / playbackSpeed);
+        int lowestAllowedIndex = 0;
+        for (int i = 0; i < length; i++) {
+            if (!isBlacklisted(i, nowMs)) {
+                if (getFormat(i).bitrate <= availableBitrate) {
+                    return i;
+                }
+                lowestAllowedIndex = i;
+            }
+        }
+        return lowestAllowedIndex;
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A process-wide budget of buffer memory shared by several {@link CustomLoadControl} instances.
+ *
+ * <p>Each load control registers with its loading priority and requests the target buffer size it
+ * would use on its own. The budget first grants every registration a floor of {@link
+ * #DEFAULT_FLOOR_BYTES} (or its request, if smaller), then hands out the rest in descending priority
+ * order, registrations of equal priority being served in registration order. The grants are
+ * rebalanced whenever a registration is added, removed, or changes its request.
+ *
+ * <p>Listeners are notified after the budget is unlocked, so that a listener may call into another
+ * load control, or back into the budget, without holding the lock of the budget.
+ */
+public final class BufferMemoryBudget {
+
+    /** Receives the number of bytes granted to a registration. */
+    public interface Listener {
+
+        /**
+         * Called when the number of bytes granted to the registration changes. May be called on any
+         * thread that registers, unregisters or updates a request, and more than once with the same
+         * value. The last call always has the current grant.
+         *
+         * @param grantedBytes The number of bytes granted.
+         */
+        void onGrantChanged(int grantedBytes);
+    }
+
+    /** A registration with the budget. */
+    public static final class Registration {
+
+        private final int priority;
+        private final Listener listener;
+        private int requestedBytes;
+        private int grantedBytes;
+
+        private Registration(int priority, Listener listener) {
+            this.priority = priority;
+            this.listener = listener;
+            // Guarantees that the listener is notified of the initial grant, even if it is 0.
+            this.grantedBytes = -1;
+        }
+    }
+
+    /** The number of bytes granted to every registration before the rest is split by priority. */
+    public static final int DEFAULT_FLOOR_BYTES = CustomLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+
+    /** The fraction of the app's heap limit used as the default budget. */
+    private static final int HEAP_FRACTION_DIVISOR = 4;
+
+    @Nullable private static BufferMemoryBudget singletonInstance;
+
+    private final int totalBytes;
+    private final int floorBytes;
+    private final ArrayList<Registration> registrations;
+
+    /**
+     * Returns a process-wide budget sized to a quarter of the app's heap limit.
+     *
+     * @param context A {@link Context}.
+     * @return The budget.
+     */
+    public static synchronized BufferMemoryBudget getSingletonInstance(Context context) {
+        if (singletonInstance == null) {
+            ActivityManager activityManager =
+                    (ActivityManager) context.getApplicationContext()
+                            .getSystemService(Context.ACTIVITY_SERVICE);
+            long heapLimitBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+            singletonInstance =
+                    new BufferMemoryBudget(
+                            (int) min(heapLimitBytes / HEAP_FRACTION_DIVISOR, Integer.MAX_VALUE),
+                            DEFAULT_FLOOR_BYTES);
+        }
+        return singletonInstance;
+    }
+
+    /**
+     * @param totalBytes The number of bytes shared by all registrations.
+     * @param floorBytes The number of bytes granted to every registration before the rest is split
+     *     by priority.
+     */
+    public BufferMemoryBudget(int totalBytes, int floorBytes) {
+        Assertions.checkArgument(totalBytes > 0, "totalBytes must be positive");
+        Assertions.checkArgument(floorBytes >= 0, "floorBytes cannot be negative");
+        this.totalBytes = totalBytes;
+        this.floorBytes = floorBytes;
+        this.registrations = new ArrayList<>();
+    }
+
+    /** Returns the number of bytes shared by all registrations. */
+    public int getTotalBytes() {
+        return totalBytes;
+    }
+
+    /** Returns the sum of the bytes currently granted. */
+    public synchronized int getGrantedBytes() {
+        int grantedBytes = 0;
+        for (int i = 0; i < registrations.size(); i++) {
+            grantedBytes += registrations.get(i).grantedBytes;
+        }
+        return grantedBytes;
+    }
+
+    /** Returns the number of registrations. */
+    public synchronized int getRegistrationCount() {
+        return registrations.size();
+    }
+
+    /**
+     * Registers a new participant requesting {@code requestedBytes}.
+     *
+     * @param priority The loading priority of the participant. Higher values are served first.
+     * @param requestedBytes The number of bytes requested.
+     * @param listener The listener notified of the grant, including the initial one.
+     * @return The registration, to be passed to {@link #updateRequest} and {@link #unregister}.
+     */
+    public Registration register(int priority, int requestedBytes, Listener listener) {
+        Registration registration = new Registration(priority, listener);
+        List<Registration> changedRegistrations;
+        synchronized (this) {
+            registration.requestedBytes = requestedBytes;
+            // Keep the list sorted by descending priority, appending after registrations of equal
+            // priority.
+            int index = 0;
+            while (index < registrations.size() && registrations.get(index).priority >= priority) {
+                index++;
+            }
+            registrations.add(index, registration);
+            changedRegistrations = rebalance();
+        }
+        notifyListeners(changedRegistrations);
+        return registration;
+    }
+
+    /** Returns the number of bytes currently granted to a registration. */
+    public synchronized int getGrantedBytes(Registration registration) {
+        return max(registration.grantedBytes, 0);
+    }
+
+    /**
+     * Updates the number of bytes requested by a registration.
+     *
+     * @param registration The registration.
+     * @param requestedBytes The number of bytes requested.
+     */
+    public void updateRequest(Registration registration, int requestedBytes) {
+        List<Registration> changedRegistrations;
+        synchronized (this) {
+            if (registration.requestedBytes == requestedBytes
+                    || !registrations.contains(registration)) {
+                return;
+            }
+            registration.requestedBytes = requestedBytes;
+            changedRegistrations = rebalance();
+        }
+        notifyListeners(changedRegistrations);
+    }
+
+    /**
+     * Removes a registration and hands its bytes to the remaining ones.
+     *
+     * @param registration The registration.
+     */
+    public void unregister(Registration registration) {
+        List<Registration> changedRegistrations;
+        synchronized (this) {
+            if (!registrations.remove(registration)) {
+                return;
+            }
+            changedRegistrations = rebalance();
+        }
+        notifyListeners(changedRegistrations);
+    }
+
+    /**
+     * Notifies the listeners of registrations whose grant changed. Each gets the grant current at
+     * the time of the call rather than the one computed by the rebalance, so that a notification
+     * delayed behind a later rebalance on another thread cannot leave a listener with a stale
+     * grant.
+     */
+    private void notifyListeners(List<Registration> changedRegistrations) {
+        for (int i = 0; i < changedRegistrations.size(); i++) {
+            Registration registration = changedRegistrations.get(i);
+            registration.listener.onGrantChanged(getGrantedBytes(registration));
+        }
+    }
+
+    /** Recomputes the grants, and returns the registrations whose grant changed. */
+    private List<Registration> rebalance() {
+        int size = registrations.size();
+        int[] grants = new int[size];
+        int remainingBytes = totalBytes;
+        for (int i = 0; i < size && remainingBytes > 0; i++) {
+            grants[i] = min(min(registrations.get(i).requestedBytes, floorBytes), remainingBytes);
+            remainingBytes -= grants[i];
+        }
+        for (int i = 0; i < size && remainingBytes > 0; i++) {
+            int extraBytes = min(registrations.get(i).requestedBytes - grants[i], remainingBytes);
+            grants[i] += extraBytes;
+            remainingBytes -= extraBytes;
+        }
+        List<Registration> changedRegistrations = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Registration registration = registrations.get(i);
+            if (registration.grantedBytes != grants[i]) {
+                registration.grantedBytes = grants[i];
+                changedRegistrations.add(registration);
+            }
+        }
+        return changedRegistrations;
+    }
+}
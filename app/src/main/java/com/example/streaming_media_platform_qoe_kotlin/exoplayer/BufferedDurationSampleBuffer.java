@@ -0,0 +1,106 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single-producer, single-consumer ring buffer of buffered duration samples.
+ *
+ * <p>Samples are kept in primitive arrays, so adding a sample on the playback thread does not
+ * allocate or box. When the buffer is full, new samples are dropped and counted rather than
+ * overwriting samples the consumer has not read yet.
+ */
+/* package */ final class BufferedDurationSampleBuffer {
+
+    private final long[] timestampsMs;
+    private final long[] bufferedDurationsUs;
+    private final int mask;
+    private final int batchSize;
+    private final AtomicBoolean drainPending;
+
+    private volatile long writeIndex;
+    private volatile long readIndex;
+    private volatile long droppedSampleCount;
+
+    /**
+     * @param capacity The maximum number of samples held, which must be a power of two.
+     * @param batchSize The number of pending samples from which a drain should be scheduled.
+     */
+    public BufferedDurationSampleBuffer(int capacity, int batchSize) {
+        Assertions.checkArgument(Integer.bitCount(capacity) == 1, "capacity must be a power of two");
+        Assertions.checkArgument(batchSize > 0 && batchSize <= capacity);
+        this.timestampsMs = new long[capacity];
+        this.bufferedDurationsUs = new long[capacity];
+        this.mask = capacity - 1;
+        this.batchSize = batchSize;
+        this.drainPending = new AtomicBoolean();
+    }
+
+    /** Returns the maximum number of samples held. */
+    public int getCapacity() {
+        return timestampsMs.length;
+    }
+
+    /** Returns the number of samples dropped because the consumer did not keep up. */
+    public long getDroppedSampleCount() {
+        return droppedSampleCount;
+    }
+
+    /**
+     * Adds a sample. Must only be called from the producer thread.
+     *
+     * @param timestampMs The time at which the sample was taken, in milliseconds.
+     * @param bufferedDurationUs The buffered duration, in microseconds.
+     * @return Whether a full batch is pending and no drain is scheduled yet, in which case the
+     *     caller should schedule a call to {@link #drainTo(long[], long[])}.
+     */
+    public boolean add(long timestampMs, long bufferedDurationUs) {
+        long writeIndex = this.writeIndex;
+        long pendingCount = writeIndex - readIndex;
+        if (pendingCount >= timestampsMs.length) {
+            droppedSampleCount++;
+            return false;
+        }
+        int position = (int) (writeIndex & mask);
+        timestampsMs[position] = timestampMs;
+        bufferedDurationsUs[position] = bufferedDurationUs;
+        this.writeIndex = writeIndex + 1;
+        return pendingCount + 1 >= batchSize && drainPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Requests a drain of the pending samples, even if they do not make a full batch. Must only be
+     * called from the producer thread, when it stops producing for a while.
+     *
+     * @return Whether samples are pending and no drain is scheduled yet, in which case the caller
+     *     should schedule a call to {@link #drainTo(long[], long[])}.
+     */
+    public boolean flush() {
+        return writeIndex != readIndex && drainPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Moves pending samples into the given arrays. Must only be called from the consumer thread.
+     *
+     * @param timestampsMs The array receiving the sample timestamps.
+     * @param bufferedDurationsUs The array receiving the buffered durations, at least as long as
+     *     {@code timestampsMs}.
+     * @return The number of samples copied.
+     */
+    public int drainTo(long[] timestampsMs, long[] bufferedDurationsUs) {
+        // Clear the flag first, so that samples added while draining can schedule the next drain.
+        drainPending.set(false);
+        long readIndex = this.readIndex;
+        int count = (int) min(writeIndex - readIndex, timestampsMs.length);
+        for (int i = 0; i < count; i++) {
+            int position = (int) ((readIndex + i) & mask);
+            timestampsMs[i] = this.timestampsMs[position];
+            bufferedDurationsUs[i] = this.bufferedDurationsUs[position];
+        }
+        this.readIndex = readIndex + count;
+        return count;
+    }
+}
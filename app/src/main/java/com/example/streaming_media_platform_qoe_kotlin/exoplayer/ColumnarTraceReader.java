@@ -0,0 +1,174 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a trace file written by {@link ColumnarTraceWriter}.
+ *
+ * <p>Opening a trace only reads the block headers. Reading a column then decodes that column's
+ * data in each block and skips the others, so scanning one column of a long session costs about
+ * as much as the column itself.
+ *
+ * <p>A trace whose writer was never closed ends with the unused tail of a mapped region, or with a
+ * block cut short. Reading stops at the first block that is not complete.
+ */
+public final class ColumnarTraceReader {
+
+    private final ByteBuffer data;
+    private final String[] columnNames;
+    private final int[] blockRowCounts;
+    private final int[][] columnOffsets;
+    private final int[][] columnLengths;
+    private final long rowCount;
+
+    /**
+     * Opens a trace file.
+     *
+     * @param file The trace file.
+     * @throws ParserException If the file is not a trace file.
+     */
+    public ColumnarTraceReader(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            Assertions.checkArgument(channel.size() <= Integer.MAX_VALUE, "trace too large");
+            // The mapping stays valid after the channel is closed.
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.remaining() < 5
+                || data.getInt() != ColumnarTraceWriter.MAGIC
+                || data.get() != ColumnarTraceWriter.VERSION) {
+            throw new ParserException("Not a trace file: " + file);
+        }
+        int columnCount = (int) readVarint(data);
+        columnNames = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            byte[] name = new byte[(int) readVarint(data)];
+            data.get(name);
+            columnNames[i] = Util.fromUtf8Bytes(name);
+        }
+
+        List<int[]> offsets = new ArrayList<>();
+        List<int[]> lengths = new ArrayList<>();
+        int[] blockRowCounts = new int[16];
+        long rowCount = 0;
+        while (data.remaining() >= 4) {
+            int blockStart = data.position();
+            if (data.getInt() != ColumnarTraceWriter.BLOCK_MAGIC) {
+                break;
+            }
+            int blockRowCount = (int) readVarint(data);
+            int[] blockLengths = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                blockLengths[i] = (int) readVarint(data);
+            }
+            int[] blockOffsets = new int[columnCount];
+            long offset = data.position();
+            for (int i = 0; i < columnCount; i++) {
+                blockOffsets[i] = (int) offset;
+                offset += blockLengths[i];
+            }
+            if (offset > data.limit()) {
+                data.position(blockStart);
+                break;
+            }
+            if (offsets.size() == blockRowCounts.length) {
+                blockRowCounts = Arrays.copyOf(blockRowCounts, blockRowCounts.length * 2);
+            }
+            blockRowCounts[offsets.size()] = blockRowCount;
+            offsets.add(blockOffsets);
+            lengths.add(blockLengths);
+            rowCount += blockRowCount;
+            data.position((int) offset);
+        }
+        this.blockRowCounts = Arrays.copyOf(blockRowCounts, offsets.size());
+        this.columnOffsets = offsets.toArray(new int[0][]);
+        this.columnLengths = lengths.toArray(new int[0][]);
+        this.rowCount = rowCount;
+    }
+
+    /** Returns the names of the columns. */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /** Returns the index of the column with the given name, or -1 if there is none. */
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of rows in complete blocks. */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /** Returns the number of complete blocks. */
+    public int getBlockCount() {
+        return blockRowCounts.length;
+    }
+
+    /**
+     * Returns the values of a column.
+     *
+     * @param columnName The name of the column.
+     * @throws IllegalArgumentException If there is no column with the given name.
+     */
+    public long[] readColumn(String columnName) {
+        int index = getColumnIndex(columnName);
+        Assertions.checkArgument(index != -1, "no column " + columnName);
+        return readColumn(index);
+    }
+
+    /**
+     * Returns the values of a column.
+     *
+     * @param columnIndex The index of the column.
+     */
+    public long[] readColumn(int columnIndex) {
+        Assertions.checkArgument(columnIndex >= 0 && columnIndex < columnNames.length);
+        Assertions.checkArgument(rowCount <= Integer.MAX_VALUE, "column too large");
+        long[] values = new long[(int) rowCount];
+        int valueCount = 0;
+        ByteBuffer column = data.duplicate();
+        for (int block = 0; block < blockRowCounts.length; block++) {
+            int offset = columnOffsets[block][columnIndex];
+            column.limit(offset + columnLengths[block][columnIndex]);
+            column.position(offset);
+            long value = 0;
+            for (int i = 0; i < blockRowCounts[block]; i++) {
+                long encoded = readVarint(column);
+                value += (encoded >>> 1) ^ -(encoded & 1);
+                values[valueCount++] = value;
+            }
+            column.limit(column.capacity());
+        }
+        return values;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.max;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Appends rows of {@code long} values to a column-oriented trace file.
+ *
+ * <p>Rows are collected in blocks. Within a block each column is stored on its own, as the
+ * zigzag varint of the difference to the previous value of the column, so timestamps and
+ * counters that grow slowly take a byte or two per row. A block starts with the byte length of
+ * every column, which lets {@link ColumnarTraceReader} skip the columns it does not read.
+ *
+ * <p>The file is written through a memory mapping grown a region at a time, so appending a block
+ * is a memory copy rather than a write call. The mapped pages belong to the kernel, so a block
+ * survives the process being killed even if {@link #close()} is never called; the reader ignores
+ * the unused tail of the last region.
+ *
+ * <p>The format is:
+ *
+ * <pre>
+ * file   = MAGIC, version (1 byte), columnCount (varint), columnName*, block*
+ * column = nameLength (varint), name (UTF-8)
+ * block  = BLOCK_MAGIC, rowCount (varint), columnLength (varint)*, columnData*
+ * </pre>
+ *
+ * Instances are not thread-safe.
+ */
+public final class ColumnarTraceWriter implements Closeable {
+
+    /** The magic number at the start of a trace file. */
+    public static final int MAGIC = 0x514f4554; // "QOET"
+
+    /** The magic number at the start of a block. */
+    public static final int BLOCK_MAGIC = 0x424c4b31; // "BLK1"
+
+    /** The version of the format. */
+    public static final int VERSION = 1;
+
+    /** The default number of rows per block. */
+    public static final int DEFAULT_ROWS_PER_BLOCK = 1024;
+
+    /** The default size by which the mapping of the file grows, in bytes. */
+    public static final int DEFAULT_REGION_SIZE = 256 * 1024;
+
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final String[] columnNames;
+    private final int rowsPerBlock;
+    private final int regionSize;
+    private final ColumnBuffer[] columns;
+    private final long[] previousValues;
+
+    private MappedByteBuffer region;
+    private long regionPosition;
+    private int rowCount;
+    private long blockRowCount;
+    private long totalRowCount;
+    private boolean closed;
+
+    /**
+     * Creates a trace file, replacing any existing one.
+     *
+     * @param file The trace file.
+     * @param columnNames The names of the columns.
+     */
+    public ColumnarTraceWriter(File file, String... columnNames) throws IOException {
+        this(file, columnNames, DEFAULT_ROWS_PER_BLOCK, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Creates a trace file, replacing any existing one.
+     *
+     * @param file The trace file.
+     * @param columnNames The names of the columns.
+     * @param rowsPerBlock The number of rows from which a block is appended to the file.
+     * @param regionSize The size by which the mapping of the file grows, in bytes.
+     */
+    public ColumnarTraceWriter(File file, String[] columnNames, int rowsPerBlock, int regionSize)
+            throws IOException {
+        Assertions.checkArgument(columnNames.length > 0, "columnNames must not be empty");
+        Assertions.checkArgument(rowsPerBlock > 0, "rowsPerBlock must be positive");
+        Assertions.checkArgument(regionSize > 0, "regionSize must be positive");
+        this.columnNames = columnNames.clone();
+        this.rowsPerBlock = rowsPerBlock;
+        this.regionSize = regionSize;
+        this.columns = new ColumnBuffer[columnNames.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnBuffer(max(rowsPerBlock * 2, MAX_VARINT_LENGTH));
+        }
+        this.previousValues = new long[columnNames.length];
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        writeHeader();
+    }
+
+    /** Returns the names of the columns. */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /** Returns the number of rows appended, including those not yet in a block. */
+    public long getRowCount() {
+        return totalRowCount;
+    }
+
+    /** Returns the number of rows written to the file in complete blocks. */
+    public long getWrittenRowCount() {
+        return blockRowCount;
+    }
+
+    /** Returns the number of bytes written to the file. */
+    public long getWrittenBytes() {
+        return region == null ? regionPosition : regionPosition + region.position();
+    }
+
+    /**
+     * Appends a row. A block is written to the file once {@code rowsPerBlock} rows are pending.
+     *
+     * @param values The value of each column, in the order of the column names.
+     */
+    public void append(long... values) throws IOException {
+        Assertions.checkState(!closed);
+        Assertions.checkArgument(values.length == columns.length, "wrong number of values");
+        for (int i = 0; i < values.length; i++) {
+            columns[i].writeVarint(zigzag(values[i] - previousValues[i]));
+            previousValues[i] = values[i];
+        }
+        rowCount++;
+        totalRowCount++;
+        if (rowCount == rowsPerBlock) {
+            writeBlock();
+        }
+    }
+
+    /** Writes the pending rows to the file as a block. */
+    public void flush() throws IOException {
+        Assertions.checkState(!closed);
+        if (rowCount > 0) {
+            writeBlock();
+        }
+    }
+
+    /** Writes the pending rows and truncates the file to the written bytes. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            long length = getWrittenBytes();
+            // The mapping is released by the garbage collector. Truncating under it is fine as
+            // long as nothing is written to it anymore.
+            region = null;
+            regionPosition = length;
+            channel.truncate(length);
+        } finally {
+            closed = true;
+            file.close();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        byte[][] names = new byte[columnNames.length][];
+        int length = 4 + 1 + MAX_VARINT_LENGTH;
+        for (int i = 0; i < columnNames.length; i++) {
+            names[i] = Util.getUtf8Bytes(columnNames[i]);
+            length += MAX_VARINT_LENGTH + names[i].length;
+        }
+        ensureCapacity(length);
+        region.putInt(MAGIC);
+        region.put((byte) VERSION);
+        putVarint(region, names.length);
+        for (byte[] name : names) {
+            putVarint(region, name.length);
+            region.put(name);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        int length = 4 + MAX_VARINT_LENGTH;
+        for (ColumnBuffer column : columns) {
+            length += MAX_VARINT_LENGTH + column.size;
+        }
+        ensureCapacity(length);
+        int blockStart = region.position();
+        region.position(blockStart + 4);
+        putVarint(region, rowCount);
+        for (ColumnBuffer column : columns) {
+            putVarint(region, column.size);
+        }
+        for (ColumnBuffer column : columns) {
+            region.put(column.data, 0, column.size);
+            column.size = 0;
+        }
+        // The magic goes in last, so a block cut short by the process being killed is ignored.
+        region.putInt(blockStart, BLOCK_MAGIC);
+        // Blocks are decoded on their own, so the deltas start over.
+        Arrays.fill(previousValues, 0);
+        blockRowCount += rowCount;
+        rowCount = 0;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (region != null && region.remaining() >= length) {
+            return;
+        }
+        if (region != null) {
+            regionPosition += region.position();
+        }
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionPosition, max(regionSize, length));
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void putVarint(MappedByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /** A growable byte array holding the encoded values of a column within a block. */
+    private static final class ColumnBuffer {
+
+        private byte[] data;
+        private int size;
+
+        public ColumnBuffer(int initialCapacity) {
+            data = new byte[initialCapacity];
+        }
+
+        public void writeVarint(long value) {
+            if (data.length - size < MAX_VARINT_LENGTH) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+}
@@ -15,11 +15,14 @@
  */
 package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
 
+import android.content.ComponentCallbacks2;
 import android.os.Handler;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.source.TrackGroupArray;
@@ -27,8 +30,10 @@ import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.Util;
@@ -38,10 +43,15 @@ import static java.lang.Math.min;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * The custom {@link LoadControl} implementation.
  * Implementing Drip feeding as in: https://medium.com/@filipluch/how-to-improve-buffering-by-4-times-with-drip-feeding-technique-in-exoplayer-on-android-b59eb0c4d9cc
+ *
+ * <p>By default loading switches between the two watermarks. A duty-cycle scheduler that loads in
+ * fixed-size bursts separated by idle windows can be enabled with {@link Builder#setDripFeed(int,
+ * int)}.
  */
 // code of customized buffer and custom error handling is the work of the following repo:
 // https://github.com/DaliaAyman/ExoPlayer-CustomizedBuffer
@@ -105,33 +115,113 @@ public class CustomLoadControl implements LoadControl {
             DEFAULT_VIDEO_BUFFER_SIZE + DEFAULT_AUDIO_BUFFER_SIZE + DEFAULT_TEXT_BUFFER_SIZE;
 
     /**
-     * The buffer size in bytes that will be used as a minimum target buffer in all cases. This is
-     * also the default target buffer before tracks are selected.
+     * The buffer size in bytes used as a minimum target buffer whenever the target falls back to the
+     * default per-track-type sizes. This is also the default target buffer before tracks are
+     * selected.
      */
     public static final int DEFAULT_MIN_BUFFER_SIZE = 200 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
 
     /**
      * Priority for media loading.
      */
-    public static final int LOADING_PRIORITY = 0;
+    public static final int LOADING_PRIORITY = C.PRIORITY_PLAYBACK;
+
+    /**
+     * Priority class of a player that is playing in the foreground. Its loads go first: it holds its
+     * priority in the {@link PriorityTaskManager} while its buffer is below the low watermark, and
+     * lower priority load controls sharing the manager stop loading meanwhile.
+     */
+    public static final int PRIORITY_FOREGROUND_PLAYBACK = LOADING_PRIORITY;
+
+    /**
+     * Priority class of a player that preloads media in the background. It holds its priority while
+     * it loads, and only loads while no higher priority is held.
+     */
+    public static final int PRIORITY_BACKGROUND_PRELOAD = PRIORITY_FOREGROUND_PLAYBACK - 1;
+
+
+    /**
+     * The default factor applied to the buffer durations when the measured throughput is far above
+     * the media bitrate and adaptive watermarks are enabled.
+     */
+    public static final float DEFAULT_ADAPTIVE_WATERMARK_MIN_SCALE = 0.5f;
+
+    /**
+     * The default factor applied to the buffer durations when the measured throughput is close to
+     * the media bitrate and adaptive watermarks are enabled.
+     */
+    public static final float DEFAULT_ADAPTIVE_WATERMARK_MAX_SCALE = 2f;
+
+    /**
+     * The ratio of measured throughput to media bitrate at or below which the watermarks are scaled
+     * by the maximum factor.
+     */
+    private static final float TIGHT_THROUGHPUT_RATIO = 1.5f;
+
+    /**
+     * The ratio of measured throughput to media bitrate at or above which the watermarks are scaled
+     * by the minimum factor.
+     */
+    private static final float LOOSE_THROUGHPUT_RATIO = 6f;
 
+    /** The default number of buffered duration samples delivered to the listener at once. */
+    public static final int DEFAULT_SAMPLE_BATCH_SIZE = 64;
 
-    private EventListener bufferedDurationListener;
-    private Handler eventHandler= new Handler();
+    /** The width of the buckets of the buffer occupancy histogram, in milliseconds. */
+    public static final int OCCUPANCY_HISTOGRAM_BUCKET_WIDTH_MS = 1000;
+
+    /** The default for whether loading decisions are logged. */
+    public static final boolean DEFAULT_LOGGING_ENABLED = false;
+
+    /** No memory pressure. The full target buffer size is used. */
+    public static final int MEMORY_PRESSURE_NONE = 0;
+
+    /** Moderate memory pressure. The target buffer size is halved. */
+    public static final int MEMORY_PRESSURE_MODERATE = 1;
+
+    /** Memory is running low. The target buffer size is cut to a quarter. */
+    public static final int MEMORY_PRESSURE_LOW = 2;
+
+    /** Memory is critically low. The target buffer size is cut to an eighth. */
+    public static final int MEMORY_PRESSURE_CRITICAL = 3;
+
+    /**
+     * The time without a new memory pressure signal after which the pressure is relaxed by one
+     * level, in milliseconds.
+     */
+    public static final int MEMORY_PRESSURE_RECOVERY_MS = 30_000;
+
+    /** The smallest target buffer size memory pressure can trim down to. */
+    private static final int MIN_TRIMMED_BUFFER_SIZE = 16 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+    /** The number of track types for which buffer size limits can be set. */
+    private static final int TRACK_TYPE_LIMIT_COUNT = C.TRACK_TYPE_CAMERA_MOTION + 1;
+
+    private static final String TAG = "CustomLoadControl";
+
+    @Nullable private final Handler eventHandler;
+    @Nullable private final EventListener bufferedDurationListener;
 
     private static final int ABOVE_HIGH_WATERMARK = 0;
     private static final int BETWEEN_WATERMARKS = 1;
     private static final int BELOW_LOW_WATERMARK = 2;
+    private static final int BUFFER_TIME_STATE_COUNT = 3;
+
+    /** The smallest low watermark used, so that playback cannot get stuck on a tiny buffer. */
+    private static final long MIN_LOW_WATERMARK_US = 500_000;
 
-    private final DefaultAllocator allocator;
+    private final Allocator allocator;
 
-    private final PriorityTaskManager priorityTaskManager;
+    @Nullable private final PriorityTaskManager priorityTaskManager;
+    private final int loadingPriority;
+    @Nullable private final BufferMemoryBudget memoryBudget;
+    private final BufferMemoryBudget.Listener memoryBudgetListener;
 
 
     /** Builder for {@link CustomLoadControl}. */
     public static final class Builder {
 
-        @Nullable private DefaultAllocator allocator;
+        @Nullable private Allocator allocator;
         private int minBufferMs;
         private int maxBufferMs;
         private int bufferForPlaybackMs;
@@ -140,6 +230,21 @@ public class CustomLoadControl implements LoadControl {
         private boolean prioritizeTimeOverSizeThresholds;
         private int backBufferDurationMs;
         private boolean retainBackBufferFromKeyframe;
+        private boolean loggingEnabled;
+        @Nullable private BandwidthMeter bandwidthMeter;
+        private float adaptiveWatermarkMinScale;
+        private float adaptiveWatermarkMaxScale;
+        @Nullable private Handler eventHandler;
+        @Nullable private EventListener bufferedDurationListener;
+        private int sampleBatchSize;
+        private Clock clock;
+        private int dripFeedBurstBytes;
+        private int dripFeedIdleIntervalMs;
+        @Nullable private PriorityTaskManager priorityTaskManager;
+        private int loadingPriority;
+        @Nullable private BufferMemoryBudget memoryBudget;
+        private final int[] trackTypeMinBufferBytes;
+        private final int[] trackTypeMaxBufferBytes;
         private boolean buildCalled;
 
         /** Constructs a new instance. */
@@ -152,16 +257,28 @@ public class CustomLoadControl implements LoadControl {
             prioritizeTimeOverSizeThresholds = DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
             backBufferDurationMs = DEFAULT_BACK_BUFFER_DURATION_MS;
             retainBackBufferFromKeyframe = DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+            loggingEnabled = DEFAULT_LOGGING_ENABLED;
+            adaptiveWatermarkMinScale = DEFAULT_ADAPTIVE_WATERMARK_MIN_SCALE;
+            adaptiveWatermarkMaxScale = DEFAULT_ADAPTIVE_WATERMARK_MAX_SCALE;
+            sampleBatchSize = DEFAULT_SAMPLE_BATCH_SIZE;
+            clock = Clock.DEFAULT;
+            dripFeedBurstBytes = C.LENGTH_UNSET;
+            loadingPriority = LOADING_PRIORITY;
+            trackTypeMinBufferBytes = new int[TRACK_TYPE_LIMIT_COUNT];
+            trackTypeMaxBufferBytes = new int[TRACK_TYPE_LIMIT_COUNT];
+            Arrays.fill(trackTypeMaxBufferBytes, C.LENGTH_UNSET);
         }
 
         /**
-         * Sets the {@link DefaultAllocator} used by the loader.
+         * Sets the {@link Allocator} used by the loader. The target buffer size is applied to a
+         * {@link DefaultAllocator} or a {@link PooledAllocator}. Other allocators are only trimmed
+         * when it changes.
          *
-         * @param allocator The {@link DefaultAllocator}.
+         * @param allocator The {@link Allocator}.
          * @return This builder, for convenience.
          * @throws IllegalStateException If {@link #build()} has already been called.
          */
-        public Builder setAllocator(DefaultAllocator allocator) {
+        public Builder setAllocator(Allocator allocator) {
             Assertions.checkState(!buildCalled);
             this.allocator = allocator;
             return this;
@@ -219,6 +336,35 @@ public class CustomLoadControl implements LoadControl {
             return this;
         }
 
+        /**
+         * Sets the limits of the buffer size derived for a track of the given type. When the target
+         * buffer size is calculated from the selected tracks, a track whose bitrate is known gets
+         * the bytes needed to buffer the largest high watermark at that bitrate, clamped to these
+         * limits. By default there is no floor, and the ceiling is the default buffer size of the
+         * track type.
+         *
+         * @param trackType The track type, one of the {@code C.TRACK_TYPE_*} constants up to {@link
+         *     C#TRACK_TYPE_CAMERA_MOTION}.
+         * @param minBufferBytes The smallest buffer size for a track of this type, in bytes.
+         * @param maxBufferBytes The largest buffer size for a track of this type, in bytes, or {@link
+         *     C#LENGTH_UNSET} for the default buffer size of the track type.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        public Builder setTrackTypeBufferBytesLimits(
+                int trackType, int minBufferBytes, int maxBufferBytes) {
+            Assertions.checkState(!buildCalled);
+            Assertions.checkArgument(trackType >= 0 && trackType < TRACK_TYPE_LIMIT_COUNT);
+            assertGreaterOrEqual(minBufferBytes, 0, "minBufferBytes", "0");
+            if (maxBufferBytes != C.LENGTH_UNSET) {
+                assertGreaterOrEqual(
+                        maxBufferBytes, minBufferBytes, "maxBufferBytes", "minBufferBytes");
+            }
+            trackTypeMinBufferBytes[trackType] = minBufferBytes;
+            trackTypeMaxBufferBytes[trackType] = maxBufferBytes;
+            return this;
+        }
+
         /**
          * Sets whether the load control prioritizes buffer time constraints over buffer size
          * constraints.
@@ -252,6 +398,175 @@ public class CustomLoadControl implements LoadControl {
             return this;
         }
 
+        /**
+         * Enables adaptive watermarks with the default scale factors.
+         *
+         * @param bandwidthMeter The {@link BandwidthMeter} providing the measured throughput.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         * @see #setAdaptiveWatermarks(BandwidthMeter, float, float)
+         */
+        public Builder setAdaptiveWatermarks(BandwidthMeter bandwidthMeter) {
+            return setAdaptiveWatermarks(
+                    bandwidthMeter,
+                    DEFAULT_ADAPTIVE_WATERMARK_MIN_SCALE,
+                    DEFAULT_ADAPTIVE_WATERMARK_MAX_SCALE);
+        }
+
+        /**
+         * Enables adaptive watermarks. The low and high watermarks start at the minimum and maximum
+         * buffer durations and are scaled by a factor between {@code minScale} and {@code maxScale}
+         * depending on how the throughput measured by {@code bandwidthMeter} compares to the bitrate
+         * of the selected tracks. The watermarks grow when the throughput is close to the media
+         * bitrate and shrink when the network is much faster than the content.
+         *
+         * @param bandwidthMeter The {@link BandwidthMeter} providing the measured throughput.
+         * @param minScale The factor applied to the buffer durations on fast networks.
+         * @param maxScale The factor applied to the buffer durations on networks barely faster than
+         *     the media bitrate.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        public Builder setAdaptiveWatermarks(
+                BandwidthMeter bandwidthMeter, float minScale, float maxScale) {
+            Assertions.checkState(!buildCalled);
+            Assertions.checkArgument(minScale > 0, "minScale must be positive");
+            Assertions.checkArgument(maxScale >= minScale, "maxScale cannot be less than minScale");
+            this.bandwidthMeter = bandwidthMeter;
+            this.adaptiveWatermarkMinScale = minScale;
+            this.adaptiveWatermarkMaxScale = maxScale;
+            return this;
+        }
+
+        /**
+         * Sets the listener receiving buffered duration samples, using the default batch size.
+         *
+         * @param eventHandler A handler for the thread on which the listener is called.
+         * @param listener The listener.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         * @see #setBufferedDurationListener(Handler, EventListener, int)
+         */
+        public Builder setBufferedDurationListener(Handler eventHandler, EventListener listener) {
+            return setBufferedDurationListener(eventHandler, listener, DEFAULT_SAMPLE_BATCH_SIZE);
+        }
+
+        /**
+         * Sets the listener receiving buffered duration samples. One sample is taken on every
+         * loading decision and stored in a ring buffer on the playback thread. Samples are delivered
+         * to the listener on the thread of {@code eventHandler} once {@code batchSize} of them are
+         * pending, and when the player is stopped or released.
+         *
+         * @param eventHandler A handler for the thread on which the listener is called.
+         * @param listener The listener.
+         * @param batchSize The number of samples delivered at once.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        public Builder setBufferedDurationListener(
+                Handler eventHandler, EventListener listener, int batchSize) {
+            Assertions.checkState(!buildCalled);
+            Assertions.checkArgument(batchSize > 0, "batchSize must be positive");
+            this.eventHandler = eventHandler;
+            this.bufferedDurationListener = listener;
+            this.sampleBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the {@link PriorityTaskManager} coordinating this load control with the load
+         * controls of other players, and the priority class of this player.
+         *
+         * <p>A load control of priority {@link #PRIORITY_FOREGROUND_PLAYBACK} holds its priority in
+         * the manager while its buffer is below the low watermark. A load control of a lower
+         * priority, such as {@link #PRIORITY_BACKGROUND_PRELOAD}, holds its priority while it loads,
+         * and stops loading while a higher priority is held.
+         *
+         * @param priorityTaskManager The {@link PriorityTaskManager} shared by the players.
+         * @param loadingPriority The priority class of this player.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        public Builder setPriorityTaskManager(
+                PriorityTaskManager priorityTaskManager, int loadingPriority) {
+            Assertions.checkState(!buildCalled);
+            this.priorityTaskManager = priorityTaskManager;
+            this.loadingPriority = loadingPriority;
+            return this;
+        }
+
+        /**
+         * Sets the process-wide {@link BufferMemoryBudget} this load control shares with the load
+         * controls of other players. The load control registers with its loading priority when it
+         * is prepared, requests the target buffer size it would use on its own, and caps its target
+         * at the granted share. It unregisters when stopped or released, which rebalances the budget
+         * between the remaining players.
+         *
+         * @param memoryBudget The {@link BufferMemoryBudget}.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         * @see #setPriorityTaskManager(PriorityTaskManager, int)
+         */
+        public Builder setMemoryBudget(BufferMemoryBudget memoryBudget) {
+            Assertions.checkState(!buildCalled);
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Enables the drip-feed duty-cycle scheduler. While the buffer is between the watermarks,
+         * media is then loaded in bursts of {@code burstBytes}, each followed by {@code
+         * idleIntervalMs} without loading so that the radio can go idle. Loading below the low
+         * watermark is never delayed.
+         *
+         * <p>The player only asks whether to continue loading between loader chunks, so bursts are
+         * rounded up to the continue-loading check interval of the media source.
+         *
+         * @param burstBytes The number of bytes loaded in each burst.
+         * @param idleIntervalMs The idle time after each burst, in milliseconds.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        public Builder setDripFeed(int burstBytes, int idleIntervalMs) {
+            Assertions.checkState(!buildCalled);
+            assertGreaterOrEqual(burstBytes, 1, "burstBytes", "1");
+            assertGreaterOrEqual(idleIntervalMs, 0, "idleIntervalMs", "0");
+            this.dripFeedBurstBytes = burstBytes;
+            this.dripFeedIdleIntervalMs = idleIntervalMs;
+            return this;
+        }
+
+        /**
+         * Sets the {@link Clock} used to timestamp samples and schedule drip-feed bursts. Should only
+         * be set for testing.
+         *
+         * @param clock The {@link Clock}.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        @VisibleForTesting
+        public Builder setClock(Clock clock) {
+            Assertions.checkState(!buildCalled);
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Sets whether loading decisions are logged. When disabled (the default), the loading
+         * decision path does not build any log strings, so it does not allocate. When enabled, only
+         * changes of the loading state are logged. Use {@link #getDecisionCounters()} to inspect
+         * decisions without logging.
+         *
+         * @param loggingEnabled Whether loading decisions are logged.
+         * @return This builder, for convenience.
+         * @throws IllegalStateException If {@link #build()} has already been called.
+         */
+        public Builder setLoggingEnabled(boolean loggingEnabled) {
+            Assertions.checkState(!buildCalled);
+            this.loggingEnabled = loggingEnabled;
+            return this;
+        }
+
         /** @deprecated use {@link #build} instead. */
         @Deprecated
         public CustomLoadControl createCustomLoadControl() {
@@ -275,7 +590,21 @@ public class CustomLoadControl implements LoadControl {
                     prioritizeTimeOverSizeThresholds,
                     backBufferDurationMs,
                     retainBackBufferFromKeyframe,
-                    null);
+                    priorityTaskManager,
+                    loggingEnabled,
+                    bandwidthMeter,
+                    adaptiveWatermarkMinScale,
+                    adaptiveWatermarkMaxScale,
+                    eventHandler,
+                    bufferedDurationListener,
+                    sampleBatchSize,
+                    clock,
+                    dripFeedBurstBytes,
+                    dripFeedIdleIntervalMs,
+                    loadingPriority,
+                    memoryBudget,
+                    trackTypeMinBufferBytes.clone(),
+                    trackTypeMaxBufferBytes.clone());
         }
     }
 
@@ -287,9 +616,41 @@ public class CustomLoadControl implements LoadControl {
     private final boolean prioritizeTimeOverSizeThresholds;
     private final long backBufferDurationUs;
     private final boolean retainBackBufferFromKeyframe;
-
-    private int targetBufferBytes;
+    private final boolean loggingEnabled;
+    private final DecisionCounters decisionCounters;
+    @Nullable private final BandwidthMeter bandwidthMeter;
+    private final float adaptiveWatermarkMinScale;
+    private final float adaptiveWatermarkMaxScale;
+    private final long maxHighWatermarkUs;
+    private final int[] trackTypeMinBufferBytes;
+    private final int[] trackTypeMaxBufferBytes;
+    private final Clock clock;
+    @Nullable private final BufferedDurationSampleBuffer sampleBuffer;
+    @Nullable private final Runnable sampleDeliveryRunnable;
+    private final long[] sampleBatchTimestampsMs;
+    private final long[] sampleBatchBufferedDurationsUs;
+    private final long[] occupancyHistogramMs;
+    @Nullable private final DripFeedScheduler dripFeedScheduler;
+
+    private volatile int requestedTargetBufferBytes;
+    private volatile int grantedBufferBytes;
+    private volatile int targetBufferBytes;
+    @Nullable private BufferMemoryBudget.Registration memoryBudgetRegistration;
     private boolean isBuffering;
+    private volatile long lowWatermarkUs;
+    private volatile long highWatermarkUs;
+    private int selectedMediaBitrate;
+    private long lastBitrateEstimate;
+    private long lastSampleTimeMs;
+    private int lastSampleHistogramBucket;
+    private int lastTotalBytesAllocated;
+    private volatile long sessionLoadedBytes;
+    private volatile int sessionRadioWakeUpCount;
+    private volatile int memoryPressure;
+    private volatile long memoryPressureChangeTimeMs;
+    private volatile long lastBufferedDurationUs;
+    private final ArrayList<MemoryTrimEvent> memoryTrimEvents;
+    private boolean holdingPriority;
 
     /** Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class. */
     @SuppressWarnings("deprecation")
@@ -310,6 +671,20 @@ public class CustomLoadControl implements LoadControl {
                 DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS,
                 DEFAULT_BACK_BUFFER_DURATION_MS,
                 DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME,
+                null,
+                DEFAULT_LOGGING_ENABLED,
+                null,
+                DEFAULT_ADAPTIVE_WATERMARK_MIN_SCALE,
+                DEFAULT_ADAPTIVE_WATERMARK_MAX_SCALE,
+                null,
+                null,
+                DEFAULT_SAMPLE_BATCH_SIZE,
+                Clock.DEFAULT,
+                C.LENGTH_UNSET,
+                0,
+                LOADING_PRIORITY,
+                null,
+                null,
                 null);
     }
 
@@ -333,11 +708,25 @@ public class CustomLoadControl implements LoadControl {
                 prioritizeTimeOverSizeThresholds,
                 DEFAULT_BACK_BUFFER_DURATION_MS,
                 DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME,
+                null,
+                DEFAULT_LOGGING_ENABLED,
+                null,
+                DEFAULT_ADAPTIVE_WATERMARK_MIN_SCALE,
+                DEFAULT_ADAPTIVE_WATERMARK_MAX_SCALE,
+                null,
+                null,
+                DEFAULT_SAMPLE_BATCH_SIZE,
+                Clock.DEFAULT,
+                C.LENGTH_UNSET,
+                0,
+                LOADING_PRIORITY,
+                null,
+                null,
                 null);
     }
 
     protected CustomLoadControl(
-            DefaultAllocator allocator,
+            Allocator allocator,
             int minBufferMs,
             int maxBufferMs,
             int bufferForPlaybackMs,
@@ -346,7 +735,21 @@ public class CustomLoadControl implements LoadControl {
             boolean prioritizeTimeOverSizeThresholds,
             int backBufferDurationMs,
             boolean retainBackBufferFromKeyframe,
-            PriorityTaskManager priorityTaskManager) {
+            @Nullable PriorityTaskManager priorityTaskManager,
+            boolean loggingEnabled,
+            @Nullable BandwidthMeter bandwidthMeter,
+            float adaptiveWatermarkMinScale,
+            float adaptiveWatermarkMaxScale,
+            @Nullable Handler eventHandler,
+            @Nullable EventListener bufferedDurationListener,
+            int sampleBatchSize,
+            Clock clock,
+            int dripFeedBurstBytes,
+            int dripFeedIdleIntervalMs,
+            int loadingPriority,
+            @Nullable BufferMemoryBudget memoryBudget,
+            @Nullable int[] trackTypeMinBufferBytes,
+            @Nullable int[] trackTypeMaxBufferBytes) {
         assertGreaterOrEqual(bufferForPlaybackMs, 0, "bufferForPlaybackMs", "0");
         assertGreaterOrEqual(
                 bufferForPlaybackAfterRebufferMs, 0, "bufferForPlaybackAfterRebufferMs", "0");
@@ -365,28 +768,114 @@ public class CustomLoadControl implements LoadControl {
         this.bufferForPlaybackUs = C.msToUs(bufferForPlaybackMs);
         this.bufferForPlaybackAfterRebufferUs = C.msToUs(bufferForPlaybackAfterRebufferMs);
         this.targetBufferBytesOverwrite = targetBufferBytes;
-        this.targetBufferBytes =
+        this.requestedTargetBufferBytes =
                 targetBufferBytesOverwrite != C.LENGTH_UNSET
                         ? targetBufferBytesOverwrite
                         : DEFAULT_MIN_BUFFER_SIZE;
+        this.grantedBufferBytes = Integer.MAX_VALUE;
+        this.targetBufferBytes = requestedTargetBufferBytes;
         this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
         this.backBufferDurationUs = C.msToUs(backBufferDurationMs);
         this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
         this.priorityTaskManager = priorityTaskManager;
+        this.loadingPriority = loadingPriority;
+        this.memoryBudget = memoryBudget;
+        this.memoryBudgetListener = this::onMemoryBudgetGrantChanged;
+        this.loggingEnabled = loggingEnabled;
+        this.decisionCounters = new DecisionCounters();
+        this.bandwidthMeter = bandwidthMeter;
+        this.adaptiveWatermarkMinScale = adaptiveWatermarkMinScale;
+        this.adaptiveWatermarkMaxScale = adaptiveWatermarkMaxScale;
+        this.lowWatermarkUs = minBufferUs;
+        this.highWatermarkUs = maxBufferUs;
+        this.selectedMediaBitrate = Format.NO_VALUE;
+        this.lastBitrateEstimate = C.LENGTH_UNSET;
+        this.eventHandler = eventHandler;
+        this.bufferedDurationListener = bufferedDurationListener;
+        this.clock = clock;
+        this.maxHighWatermarkUs =
+                (long) (maxBufferUs * (bandwidthMeter != null ? adaptiveWatermarkMaxScale : 1f));
+        if (trackTypeMinBufferBytes != null && trackTypeMaxBufferBytes != null) {
+            this.trackTypeMinBufferBytes = trackTypeMinBufferBytes;
+            this.trackTypeMaxBufferBytes = trackTypeMaxBufferBytes;
+        } else {
+            this.trackTypeMinBufferBytes = new int[TRACK_TYPE_LIMIT_COUNT];
+            this.trackTypeMaxBufferBytes = new int[TRACK_TYPE_LIMIT_COUNT];
+            Arrays.fill(this.trackTypeMaxBufferBytes, C.LENGTH_UNSET);
+        }
+        if (eventHandler != null && bufferedDurationListener != null) {
+            // Leave room for a few batches so that a busy listener thread does not drop samples.
+            int capacity = Integer.highestOneBit(sampleBatchSize * 4 - 1) << 1;
+            this.sampleBuffer = new BufferedDurationSampleBuffer(capacity, sampleBatchSize);
+            this.sampleDeliveryRunnable = this::deliverBufferedDurationSamples;
+            this.sampleBatchTimestampsMs = new long[capacity];
+            this.sampleBatchBufferedDurationsUs = new long[capacity];
+        } else {
+            this.sampleBuffer = null;
+            this.sampleDeliveryRunnable = null;
+            this.sampleBatchTimestampsMs = new long[0];
+            this.sampleBatchBufferedDurationsUs = new long[0];
+        }
+        // One bucket per second up to the largest possible high watermark, plus an overflow bucket.
+        this.occupancyHistogramMs =
+                new long[(int) (C.usToMs(maxHighWatermarkUs) / OCCUPANCY_HISTOGRAM_BUCKET_WIDTH_MS)
+                        + 2];
+        this.lastSampleTimeMs = C.TIME_UNSET;
+        this.dripFeedScheduler =
+                dripFeedBurstBytes != C.LENGTH_UNSET
+                        ? new DripFeedScheduler(dripFeedBurstBytes, dripFeedIdleIntervalMs)
+                        : null;
+        this.lastTotalBytesAllocated = C.LENGTH_UNSET;
+        this.memoryTrimEvents = new ArrayList<>();
     }
 
     /**
      * Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class.
      */
     public CustomLoadControl(EventListener listener) {
-        this(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE));
-        bufferedDurationListener = listener;
-        //    eventHandler = handler;
+        this(
+                new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+                DEFAULT_MIN_BUFFER_MS,
+                DEFAULT_MAX_BUFFER_MS,
+                DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+                DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+                DEFAULT_TARGET_BUFFER_BYTES,
+                DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS,
+                DEFAULT_BACK_BUFFER_DURATION_MS,
+                DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME,
+                null,
+                DEFAULT_LOGGING_ENABLED,
+                null,
+                DEFAULT_ADAPTIVE_WATERMARK_MIN_SCALE,
+                DEFAULT_ADAPTIVE_WATERMARK_MAX_SCALE,
+                Util.createHandlerForCurrentOrMainLooper(),
+                listener,
+                DEFAULT_SAMPLE_BATCH_SIZE,
+                Clock.DEFAULT,
+                C.LENGTH_UNSET,
+                0,
+                LOADING_PRIORITY,
+                null,
+                null,
+                null);
     }
 
     @Override
     public void onPrepared() {
         reset(false);
+        if (memoryBudget != null && memoryBudgetRegistration == null) {
+            memoryBudgetRegistration =
+                    memoryBudget.register(
+                            loadingPriority, requestedTargetBufferBytes, memoryBudgetListener);
+        }
+        // A new playback session starts, so the occupancy histogram starts from scratch.
+        Arrays.fill(occupancyHistogramMs, 0);
+        lastSampleTimeMs = C.TIME_UNSET;
+        sessionLoadedBytes = 0;
+        sessionRadioWakeUpCount = 0;
+        if (dripFeedScheduler != null) {
+            dripFeedScheduler.reset();
+        }
     }
 
     @Override
@@ -394,20 +883,27 @@ public class CustomLoadControl implements LoadControl {
                                  ExoTrackSelection[] trackSelections) {
 //        ArrayList<ExoTrackSelection> listTrackSelections = new ArrayList<>(Arrays.asList(trackSelections));
         TrackSelectionArray trackSelectionsList = new TrackSelectionArray(trackSelections);
-        targetBufferBytes =
+        requestedTargetBufferBytes =
                 targetBufferBytesOverwrite == C.LENGTH_UNSET
                         ? calculateTargetBufferBytes(renderers, trackSelectionsList)
                         : targetBufferBytesOverwrite;
-        allocator.setTargetBufferSize(targetBufferBytes);
+        if (memoryBudgetRegistration != null) {
+            memoryBudget.updateRequest(memoryBudgetRegistration, requestedTargetBufferBytes);
+        }
+        updateTargetBufferBytes();
+        selectedMediaBitrate = getSelectedMediaBitrate(trackSelections);
+        lastBitrateEstimate = C.LENGTH_UNSET;
     }
 
     @Override
     public void onStopped() {
+        flushBufferedDurationSamples();
         reset(true);
     }
 
     @Override
     public void onReleased() {
+        flushBufferedDurationSamples();
         reset(true);
     }
 
@@ -416,6 +912,151 @@ public class CustomLoadControl implements LoadControl {
         return allocator;
     }
 
+    /**
+     * Returns the counters of the loading decisions taken by this instance. The returned object is
+     * updated in place on the playback thread, so values read from another thread may be slightly
+     * stale.
+     */
+    public DecisionCounters getDecisionCounters() {
+        return decisionCounters;
+    }
+
+    /**
+     * Returns the target buffer size in bytes currently in effect, which is the size requested for
+     * the selected tracks capped by the share granted by the {@link BufferMemoryBudget}, if any, and
+     * shrunk by the current memory pressure.
+     */
+    public int getTargetBufferBytes() {
+        return targetBufferBytes;
+    }
+
+    /**
+     * Returns the current low watermark, in microseconds. Below it the player always loads. Unless
+     * adaptive watermarks are enabled this is the minimum buffer duration.
+     */
+    public long getLowWatermarkUs() {
+        return lowWatermarkUs;
+    }
+
+    /**
+     * Returns the current high watermark, in microseconds. Above it the player stops loading. Unless
+     * adaptive watermarks are enabled this is the maximum buffer duration.
+     */
+    public long getHighWatermarkUs() {
+        return highWatermarkUs;
+    }
+
+    /**
+     * Returns a copy of the buffer occupancy histogram of the current session. Bucket {@code i}
+     * holds the time, in milliseconds, spent with between {@code i} and {@code i + 1} times {@link
+     * #OCCUPANCY_HISTOGRAM_BUCKET_WIDTH_MS} of media buffered. The last bucket holds the time spent
+     * above the range of the other buckets. The histogram is updated on the playback thread, so a
+     * copy taken from another thread may be slightly stale.
+     */
+    public long[] getOccupancyHistogramMs() {
+        return occupancyHistogramMs.clone();
+    }
+
+    /**
+     * Returns the number of buffered duration samples dropped because the listener thread did not
+     * keep up, or 0 if no listener is set.
+     */
+    public long getDroppedSampleCount() {
+        return sampleBuffer != null ? sampleBuffer.getDroppedSampleCount() : 0;
+    }
+
+    /**
+     * Returns the number of times loading was resumed after having been stopped in the current
+     * session. Each resumption wakes the radio up if it had gone idle.
+     */
+    public int getSessionRadioWakeUpCount() {
+        return sessionRadioWakeUpCount;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes loaded in the current session, computed from the
+     * growth of the allocator between loading decisions.
+     */
+    public long getSessionLoadedBytes() {
+        return sessionLoadedBytes;
+    }
+
+    /**
+     * Returns the buffered duration passed to the latest loading decision, in microseconds, or 0 if
+     * no decision was made since the last reset.
+     */
+    public long getBufferedDurationUs() {
+        return lastBufferedDurationUs;
+    }
+
+    /** Returns the current memory pressure level, one of the {@code MEMORY_PRESSURE_*} constants. */
+    public int getMemoryPressure() {
+        return memoryPressure;
+    }
+
+    /** Returns a copy of the trims caused by memory pressure so far, oldest first. */
+    public synchronized List<MemoryTrimEvent> getMemoryTrimEvents() {
+        return new ArrayList<>(memoryTrimEvents);
+    }
+
+    /**
+     * Reports a memory pressure level. A level above the current one shrinks the target buffer size
+     * right away, which trims the free segments of the allocator and stops loading until the
+     * buffered media fits. Lower levels are ignored: the pressure is relaxed by one level at a time
+     * once no signal of the current level or above was received for {@link
+     * #MEMORY_PRESSURE_RECOVERY_MS}. May be called from any thread.
+     *
+     * @param memoryPressure The memory pressure level, one of the {@code MEMORY_PRESSURE_*}
+     *     constants.
+     */
+    public synchronized void onMemoryPressure(int memoryPressure) {
+        Assertions.checkArgument(
+                memoryPressure >= MEMORY_PRESSURE_NONE && memoryPressure <= MEMORY_PRESSURE_CRITICAL);
+        if (memoryPressure < this.memoryPressure) {
+            return;
+        }
+        long nowMs = clock.elapsedRealtime();
+        memoryPressureChangeTimeMs = nowMs;
+        if (memoryPressure == this.memoryPressure) {
+            return;
+        }
+        this.memoryPressure = memoryPressure;
+        int previousTargetBufferBytes = targetBufferBytes;
+        int freedBytes = updateTargetBufferBytes();
+        if (targetBufferBytes < previousTargetBufferBytes) {
+            MemoryTrimEvent event =
+                    new MemoryTrimEvent(
+                            nowMs,
+                            memoryPressure,
+                            previousTargetBufferBytes,
+                            targetBufferBytes,
+                            freedBytes);
+            memoryTrimEvents.add(event);
+            Log.i(TAG, "Trimmed buffer: " + event);
+        }
+    }
+
+    /**
+     * Maps a level passed to {@link ComponentCallbacks2#onTrimMemory(int)} to a memory pressure
+     * level. {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN} maps to {@link
+     * #MEMORY_PRESSURE_NONE}, as it only reports that the UI went to the background.
+     *
+     * @param trimLevel The trim level.
+     * @return One of the {@code MEMORY_PRESSURE_*} constants.
+     */
+    public static int getMemoryPressureForTrimLevel(int trimLevel) {
+        if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || trimLevel == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return MEMORY_PRESSURE_CRITICAL;
+        } else if (trimLevel >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || trimLevel == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return MEMORY_PRESSURE_LOW;
+        } else if (trimLevel == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return MEMORY_PRESSURE_MODERATE;
+        }
+        return MEMORY_PRESSURE_NONE;
+    }
+
     @Override
     public long getBackBufferDurationUs() {
         return backBufferDurationUs;
@@ -429,54 +1070,132 @@ public class CustomLoadControl implements LoadControl {
     @Override
     public boolean shouldContinueLoading(
             long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
-        boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+        // This runs on the playback thread for every loader check, so it must not allocate: the
+        // allocator is read once and nothing is logged unless logging was enabled on the Builder.
+        int totalBytesAllocated = allocator.getTotalBytesAllocated();
+        boolean targetBufferSizeReached = totalBytesAllocated >= targetBufferBytes;
+        updateSessionLoadedBytes(totalBytesAllocated);
+        long nowMs = clock.elapsedRealtime();
+        if (memoryPressure != MEMORY_PRESSURE_NONE
+                && nowMs - memoryPressureChangeTimeMs >= MEMORY_PRESSURE_RECOVERY_MS) {
+            relaxMemoryPressure(nowMs);
+        }
+        if (bandwidthMeter != null) {
+            updateAdaptiveWatermarks(bandwidthMeter.getBitrateEstimate());
+        }
+        long lowWatermarkUs = this.lowWatermarkUs;
+        long highWatermarkUs = this.highWatermarkUs;
+        if (playbackSpeed > 1) {
+            // The playback speed is faster than real time, so scale up the watermarks to keep enough
+            // media buffered for the same playout durations.
+            highWatermarkUs = Util.getMediaDurationForPlayoutDuration(highWatermarkUs, playbackSpeed);
+            lowWatermarkUs =
+                    min(Util.getMediaDurationForPlayoutDuration(lowWatermarkUs, playbackSpeed),
+                            highWatermarkUs);
+        }
+        // Prevent playback from getting stuck if the low watermark is too small.
+        lowWatermarkUs = max(lowWatermarkUs, MIN_LOW_WATERMARK_US);
+        int bufferTimeState = getBufferTimeState(bufferedDurationUs, lowWatermarkUs, highWatermarkUs);
+        recordBufferedDurationSample(nowMs, bufferedDurationUs);
+        lastBufferedDurationUs = bufferedDurationUs;
 
         boolean wasBuffering = isBuffering;
-//        long minBufferUs = this.minBufferUs;
-//
-//        if (playbackSpeed > 1) {
-//            // The playback speed is faster than real time, so scale up the minimum required media
-//            // duration to keep enough media buffered for a playout duration of minBufferUs.
-//            long mediaDurationMinBufferUs =
-//                    Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed);
-//            minBufferUs = min(mediaDurationMinBufferUs, maxBufferUs);
-//        }
-//        // Prevent playback from getting stuck if minBufferUs is too small.
-//        minBufferUs = max(minBufferUs, 500_000);
-//        if (bufferedDurationUs < minBufferUs) {
-//            isBuffering = prioritizeTimeOverSizeThresholds || !targetBufferSizeReached;
-//            if (!isBuffering && bufferedDurationUs < 500_000) {
-//                Log.w(
-//                        "CustomLoadControl",
-//                        "Target buffer size reached with less than 500ms of buffered media data.");
-//            }
-//        } else if (bufferedDurationUs > maxBufferUs || targetBufferSizeReached) {
-//            isBuffering = false;
-//        } // Else don't change the buffering state
-
-        Log.d("EventLogger", "CustomLoadControl shouldContinueLoading ");
-        computeIsBuffering(bufferedDurationUs);
-//        if(priorityTaskManager!=null && isBuffering!=wasBuffering){
-//            if(isBuffering){
-//                priorityTaskManager.add(C.PRIORITY_PLAYBACK);
-//            }
-//            else{
-//                priorityTaskManager.remove(C.PRIORITY_PLAYBACK);
-//            }
-//        }
-
-        Log.d("EventLogger", "CustomLoadControl shouldContinueLoading isBuffering: " + isBuffering);
+        computeIsBuffering(bufferTimeState, targetBufferSizeReached);
+        if (dripFeedScheduler != null) {
+            isBuffering = applyDripFeed(dripFeedScheduler, bufferTimeState, isBuffering, nowMs);
+        }
+        if (priorityTaskManager != null) {
+            isBuffering = applyLoadingPriority(priorityTaskManager, bufferTimeState, isBuffering);
+        }
+        if (isBuffering && !wasBuffering) {
+            sessionRadioWakeUpCount++;
+        }
+
+        decisionCounters.onDecision(bufferTimeState, targetBufferSizeReached, wasBuffering, isBuffering);
+        if (loggingEnabled && isBuffering != wasBuffering) {
+            Log.d(TAG, "shouldContinueLoading isBuffering: " + isBuffering
+                    + ", bufferTimeState: " + printBufferTimeState(bufferTimeState)
+                    + ", targetBufferSizeReached: " + targetBufferSizeReached);
+        }
+
+        return isBuffering;
+    }
+
+    private void updateSessionLoadedBytes(int totalBytesAllocated) {
+        // The allocator grows as media is loaded and shrinks as it is played out, so the positive
+        // steps between two decisions approximate the loaded bytes.
+        if (lastTotalBytesAllocated != C.LENGTH_UNSET && totalBytesAllocated > lastTotalBytesAllocated) {
+            sessionLoadedBytes += totalBytesAllocated - lastTotalBytesAllocated;
+        }
+        lastTotalBytesAllocated = totalBytesAllocated;
+    }
 
+    private boolean applyDripFeed(
+            DripFeedScheduler scheduler, int bufferTimeState, boolean isBuffering, long nowMs) {
+        if (!isBuffering) {
+            scheduler.onLoadingStopped(nowMs);
+            return false;
+        } else if (bufferTimeState == BELOW_LOW_WATERMARK) {
+            scheduler.onForcedLoading(sessionLoadedBytes);
+            return true;
+        }
+        return scheduler.shouldLoad(nowMs, sessionLoadedBytes);
+    }
 
+    private boolean applyLoadingPriority(
+            PriorityTaskManager priorityTaskManager, int bufferTimeState, boolean isBuffering) {
+        // The foreground player only claims precedence while it risks a stall. Lower priority
+        // players hold their priority whenever they load, so that they can tell whether a higher
+        // priority is held.
+        boolean holdPriority =
+                isBuffering
+                        && (loadingPriority < PRIORITY_FOREGROUND_PLAYBACK
+                                || bufferTimeState == BELOW_LOW_WATERMARK);
+        if (holdPriority != holdingPriority) {
+            if (holdPriority) {
+                priorityTaskManager.add(loadingPriority);
+            } else {
+                priorityTaskManager.remove(loadingPriority);
+            }
+            holdingPriority = holdPriority;
+        }
+        if (holdingPriority && !priorityTaskManager.proceedNonBlocking(loadingPriority)) {
+            decisionCounters.onPriorityDeferred();
+            return false;
+        }
         return isBuffering;
     }
 
-    private void computeIsBuffering(long bufferedDurationUs){
-        int bufferTimeState = getBufferTimeState(bufferedDurationUs);
-        boolean targetBufferSizeReached = allocator.getTotalBytesAllocated()>=targetBufferBytes;
-        Log.d("EventLogger", "CustomLoadControl computeIsBuffering bufferTimeState: " + printBufferTimeState(bufferTimeState));
-        Log.d("EventLogger", "CustomLoadControl computeIsBuffering targetBufferSizeReached: " + targetBufferSizeReached);
+    private void recordBufferedDurationSample(long nowMs, long bufferedDurationUs) {
+        // Attribute the time since the previous sample to the buffer level seen at that sample.
+        if (lastSampleTimeMs != C.TIME_UNSET && nowMs > lastSampleTimeMs) {
+            occupancyHistogramMs[lastSampleHistogramBucket] += nowMs - lastSampleTimeMs;
+        }
+        lastSampleTimeMs = nowMs;
+        lastSampleHistogramBucket =
+                (int) min(C.usToMs(max(bufferedDurationUs, 0)) / OCCUPANCY_HISTOGRAM_BUCKET_WIDTH_MS,
+                        occupancyHistogramMs.length - 1);
+        if (sampleBuffer != null && sampleBuffer.add(nowMs, bufferedDurationUs)) {
+            eventHandler.post(sampleDeliveryRunnable);
+        }
+    }
 
+    /** Delivers the samples of a partial batch, as no loading decision may follow for a while. */
+    private void flushBufferedDurationSamples() {
+        if (sampleBuffer != null && sampleBuffer.flush()) {
+            eventHandler.post(sampleDeliveryRunnable);
+        }
+    }
+
+    private void deliverBufferedDurationSamples() {
+        int count = sampleBuffer.drainTo(sampleBatchTimestampsMs, sampleBatchBufferedDurationsUs);
+        if (count > 0) {
+            bufferedDurationListener.onBufferedDurationSamples(
+                    sampleBatchTimestampsMs, sampleBatchBufferedDurationsUs, count);
+        }
+    }
+
+    private void computeIsBuffering(int bufferTimeState, boolean targetBufferSizeReached){
         if (bufferTimeState == BELOW_LOW_WATERMARK){
             isBuffering = true;
         }
@@ -489,19 +1208,66 @@ public class CustomLoadControl implements LoadControl {
 
     }
 
-    private int getBufferTimeState(long bufferedDurationUs) {
-        return bufferedDurationUs > maxBufferUs ? ABOVE_HIGH_WATERMARK
-                : (bufferedDurationUs < minBufferUs ? BELOW_LOW_WATERMARK : BETWEEN_WATERMARKS);
+    private static int getBufferTimeState(
+            long bufferedDurationUs, long lowWatermarkUs, long highWatermarkUs) {
+        return bufferedDurationUs > highWatermarkUs ? ABOVE_HIGH_WATERMARK
+                : (bufferedDurationUs < lowWatermarkUs ? BELOW_LOW_WATERMARK : BETWEEN_WATERMARKS);
+    }
+
+    private void updateAdaptiveWatermarks(long bitrateEstimate) {
+        if (bitrateEstimate == lastBitrateEstimate) {
+            return;
+        }
+        lastBitrateEstimate = bitrateEstimate;
+        float scale = getAdaptiveWatermarkScale(bitrateEstimate, selectedMediaBitrate);
+        // Never drop the low watermark below what playback needs to start or resume.
+        long lowWatermarkUs =
+                max((long) (minBufferUs * scale),
+                        max(bufferForPlaybackUs, bufferForPlaybackAfterRebufferUs));
+        this.lowWatermarkUs = lowWatermarkUs;
+        this.highWatermarkUs = max((long) (maxBufferUs * scale), lowWatermarkUs);
+    }
+
+    /**
+     * Returns the factor applied to the buffer durations for the given throughput and media bitrate.
+     * Throughput close to the media bitrate maps to the maximum scale, throughput far above it maps
+     * to the minimum scale, and ratios in between are interpolated linearly.
+     */
+    private float getAdaptiveWatermarkScale(long bitrateEstimate, int mediaBitrate) {
+        if (bitrateEstimate <= 0 || mediaBitrate == Format.NO_VALUE || mediaBitrate <= 0) {
+            return 1f;
+        }
+        float throughputRatio = (float) bitrateEstimate / mediaBitrate;
+        if (throughputRatio <= TIGHT_THROUGHPUT_RATIO) {
+            return adaptiveWatermarkMaxScale;
+        } else if (throughputRatio >= LOOSE_THROUGHPUT_RATIO) {
+            return adaptiveWatermarkMinScale;
+        }
+        float fraction = (throughputRatio - TIGHT_THROUGHPUT_RATIO)
+                / (LOOSE_THROUGHPUT_RATIO - TIGHT_THROUGHPUT_RATIO);
+        return adaptiveWatermarkMaxScale
+                - fraction * (adaptiveWatermarkMaxScale - adaptiveWatermarkMinScale);
+    }
+
+    private static int getSelectedMediaBitrate(ExoTrackSelection[] trackSelections) {
+        int totalBitrate = Format.NO_VALUE;
+        for (ExoTrackSelection trackSelection : trackSelections) {
+            if (trackSelection == null) {
+                continue;
+            }
+            int bitrate = trackSelection.getSelectedFormat().bitrate;
+            if (bitrate != Format.NO_VALUE) {
+                totalBitrate = (totalBitrate == Format.NO_VALUE ? 0 : totalBitrate) + bitrate;
+            }
+        }
+        return totalBitrate;
     }
 
-    private String printBufferTimeState(int value){
-//        private static final int ABOVE_HIGH_WATERMARK = 0;
-//        private static final int BETWEEN_WATERMARKS = 1;
-//        private static final int BELOW_LOW_WATERMARK = 2;
+    private static String printBufferTimeState(int value){
         switch (value){
-            case 0: return "ABOVE_HIGH_WATERMARK";
-            case 1: return "BETWEEN_WATERMARKS";
-            case 2: return "BELOW_LOW_WATERMARK";
+            case ABOVE_HIGH_WATERMARK: return "ABOVE_HIGH_WATERMARK";
+            case BETWEEN_WATERMARKS: return "BETWEEN_WATERMARKS";
+            case BELOW_LOW_WATERMARK: return "BELOW_LOW_WATERMARK";
         }
         return "";
     }
@@ -511,6 +1277,11 @@ public class CustomLoadControl implements LoadControl {
             long bufferedDurationUs, float playbackSpeed, boolean rebuffering, long targetLiveOffsetUs) {
         bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
         long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+        if (targetLiveOffsetUs != C.TIME_UNSET) {
+            // A live stream cannot buffer much beyond the target offset from the live edge, so don't
+            // wait for more than half of it before starting.
+            minBufferDurationUs = min(targetLiveOffsetUs / 2, minBufferDurationUs);
+        }
         return minBufferDurationUs <= 0
                 || bufferedDurationUs >= minBufferDurationUs
                 || (!prioritizeTimeOverSizeThresholds
@@ -521,29 +1292,135 @@ public class CustomLoadControl implements LoadControl {
      * Calculate target buffer size in bytes based on the selected tracks. The player will try not to
      * exceed this target buffer. Only used when {@code targetBufferBytes} is {@link C#LENGTH_UNSET}.
      *
+     * <p>Each selected track gets the bytes needed to buffer the largest high watermark at the
+     * highest bitrate it can switch to, clamped to the limits set for its track type. Tracks of
+     * unknown bitrate get the default buffer size of their track type, and the total is then at
+     * least {@link #DEFAULT_MIN_BUFFER_SIZE}.
+     *
      * @param renderers The renderers for which the track were selected.
      * @param trackSelectionArray The selected tracks.
      * @return The target buffer size in bytes.
      */
     protected int calculateTargetBufferBytes(
             Renderer[] renderers, TrackSelectionArray trackSelectionArray) {
-        int targetBufferSize = 0;
+        long targetBufferSize = 0;
+        boolean usedDefaultBufferSize = false;
         for (int i = 0; i < renderers.length; i++) {
-            if (trackSelectionArray.get(i) != null) {
-                targetBufferSize += getDefaultBufferSize(renderers[i].getTrackType());
+            TrackSelection trackSelection = trackSelectionArray.get(i);
+            if (trackSelection == null) {
+                continue;
+            }
+            int trackType = renderers[i].getTrackType();
+            int bitrate = getMaxBitrate(trackSelection);
+            if (bitrate == Format.NO_VALUE || trackType < 0 || trackType >= TRACK_TYPE_LIMIT_COUNT) {
+                targetBufferSize += getDefaultBufferSize(trackType);
+                usedDefaultBufferSize = true;
+                continue;
+            }
+            long bufferSize =
+                    (long) bitrate * maxHighWatermarkUs / (C.BITS_PER_BYTE * C.MICROS_PER_SECOND);
+            int maxBufferSize = trackTypeMaxBufferBytes[trackType];
+            if (maxBufferSize == C.LENGTH_UNSET) {
+                maxBufferSize = getDefaultBufferSize(trackType);
             }
+            targetBufferSize +=
+                    max(min(bufferSize, maxBufferSize), trackTypeMinBufferBytes[trackType]);
+        }
+        int targetBufferBytes = (int) min(targetBufferSize, Integer.MAX_VALUE);
+        return usedDefaultBufferSize
+                ? max(DEFAULT_MIN_BUFFER_SIZE, targetBufferBytes)
+                : targetBufferBytes;
+    }
+
+    private static int getMaxBitrate(TrackSelection trackSelection) {
+        int maxBitrate = Format.NO_VALUE;
+        for (int i = 0; i < trackSelection.length(); i++) {
+            maxBitrate = max(maxBitrate, trackSelection.getFormat(i).bitrate);
+        }
+        return maxBitrate;
+    }
+
+    private void onMemoryBudgetGrantChanged(int grantedBytes) {
+        grantedBufferBytes = grantedBytes;
+        updateTargetBufferBytes();
+    }
+
+    private synchronized void relaxMemoryPressure(long nowMs) {
+        // Check again, as a new signal may have come in from another thread.
+        if (memoryPressure == MEMORY_PRESSURE_NONE
+                || nowMs - memoryPressureChangeTimeMs < MEMORY_PRESSURE_RECOVERY_MS) {
+            return;
+        }
+        memoryPressure--;
+        memoryPressureChangeTimeMs = nowMs;
+        updateTargetBufferBytes();
+        Log.i(TAG, "Relaxed memory pressure to " + memoryPressure
+                + ", targetBufferBytes: " + targetBufferBytes);
+    }
+
+    /**
+     * Applies the requested target buffer size capped by the granted memory budget and shrunk by the
+     * memory pressure. May be called from the playback thread, from the thread reporting memory
+     * pressure or, through the memory budget, from the thread of another player.
+     *
+     * @return The number of bytes of free segments released by the allocator, or {@link
+     *     C#LENGTH_UNSET} if the allocator does not report it.
+     */
+    private synchronized int updateTargetBufferBytes() {
+        targetBufferBytes = getConstrainedTargetBufferBytes();
+        if (allocator instanceof PooledAllocator) {
+            return ((PooledAllocator) allocator).setTargetBufferSize(targetBufferBytes);
+        } else if (allocator instanceof DefaultAllocator) {
+            ((DefaultAllocator) allocator).setTargetBufferSize(targetBufferBytes);
+        } else {
+            allocator.trim();
         }
-        return max(DEFAULT_MIN_BUFFER_SIZE, targetBufferSize);
+        return C.LENGTH_UNSET;
+    }
+
+    private int getConstrainedTargetBufferBytes() {
+        int targetBufferBytes = min(requestedTargetBufferBytes, grantedBufferBytes);
+        if (memoryPressure == MEMORY_PRESSURE_NONE) {
+            return targetBufferBytes;
+        }
+        // Each level halves the target, down to a floor that still lets playback proceed.
+        return min(targetBufferBytes,
+                max(targetBufferBytes >> memoryPressure, MIN_TRIMMED_BUFFER_SIZE));
     }
 
     private void reset(boolean resetAllocator) {
-        targetBufferBytes =
+        requestedTargetBufferBytes =
                 targetBufferBytesOverwrite == C.LENGTH_UNSET
                         ? DEFAULT_MIN_BUFFER_SIZE
                         : targetBufferBytesOverwrite;
+        if (resetAllocator && memoryBudgetRegistration != null) {
+            // Hand the share of this player to the remaining ones.
+            memoryBudget.unregister(memoryBudgetRegistration);
+            memoryBudgetRegistration = null;
+            grantedBufferBytes = Integer.MAX_VALUE;
+        } else if (memoryBudgetRegistration != null) {
+            memoryBudget.updateRequest(memoryBudgetRegistration, requestedTargetBufferBytes);
+        }
+        targetBufferBytes = getConstrainedTargetBufferBytes();
         isBuffering = false;
+        if (priorityTaskManager != null && holdingPriority) {
+            priorityTaskManager.remove(loadingPriority);
+            holdingPriority = false;
+        }
+        lowWatermarkUs = minBufferUs;
+        highWatermarkUs = maxBufferUs;
+        selectedMediaBitrate = Format.NO_VALUE;
+        lastBitrateEstimate = C.LENGTH_UNSET;
+        lastBufferedDurationUs = 0;
         if (resetAllocator) {
-            allocator.reset();
+            if (allocator instanceof PooledAllocator) {
+                ((PooledAllocator) allocator).reset();
+            } else if (allocator instanceof DefaultAllocator) {
+                ((DefaultAllocator) allocator).reset();
+            } else {
+                allocator.trim();
+            }
+            lastTotalBytesAllocated = C.LENGTH_UNSET;
         }
     }
 
@@ -572,7 +1449,174 @@ public class CustomLoadControl implements LoadControl {
         Assertions.checkArgument(value1 >= value2, name1 + " cannot be less than " + name2);
     }
 
+    /** Listener of buffered duration samples. */
     public interface EventListener {
+
+        /**
+         * Called for each buffered duration sample, unless {@link #onBufferedDurationSamples} is
+         * overridden.
+         *
+         * @param bufferedDurationUs The buffered duration, in microseconds.
+         */
         void onBufferedDurationSample(long bufferedDurationUs);
+
+        /**
+         * Called with a batch of buffered duration samples, in the order they were taken. The arrays
+         * are reused for the next batch, so implementations must copy anything they keep.
+         *
+         * @param timestampsMs The {@link Clock#elapsedRealtime()} of each sample.
+         * @param bufferedDurationsUs The buffered duration of each sample, in microseconds.
+         * @param count The number of valid entries in the arrays.
+         */
+        default void onBufferedDurationSamples(
+                long[] timestampsMs, long[] bufferedDurationsUs, int count) {
+            for (int i = 0; i < count; i++) {
+                onBufferedDurationSample(bufferedDurationsUs[i]);
+            }
+        }
+    }
+
+    /** A reduction of the target buffer size caused by memory pressure. */
+    public static final class MemoryTrimEvent {
+
+        /** The {@link Clock#elapsedRealtime()} at which the trim happened. */
+        public final long timestampMs;
+        /** The memory pressure level that caused the trim. */
+        public final int memoryPressure;
+        /** The target buffer size before the trim, in bytes. */
+        public final int previousTargetBufferBytes;
+        /** The target buffer size after the trim, in bytes. */
+        public final int targetBufferBytes;
+        /**
+         * The number of bytes of free allocator segments released by the trim, or {@link
+         * C#LENGTH_UNSET} if the allocator does not report it, as is the case for {@link
+         * DefaultAllocator}. Segments holding buffered media are released later, as it is played
+         * out.
+         */
+        public final int freedBytes;
+
+        private MemoryTrimEvent(
+                long timestampMs,
+                int memoryPressure,
+                int previousTargetBufferBytes,
+                int targetBufferBytes,
+                int freedBytes) {
+            this.timestampMs = timestampMs;
+            this.memoryPressure = memoryPressure;
+            this.previousTargetBufferBytes = previousTargetBufferBytes;
+            this.targetBufferBytes = targetBufferBytes;
+            this.freedBytes = freedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "timestampMs=" + timestampMs
+                    + ", memoryPressure=" + memoryPressure
+                    + ", targetBufferBytes=" + previousTargetBufferBytes + "->" + targetBufferBytes
+                    + ", freedBytes=" + freedBytes;
+        }
+    }
+
+    /**
+     * Counters of the loading decisions taken by {@link #shouldContinueLoading(long, long, float)}.
+     * Updating the counters does not allocate, so they can be inspected instead of logging every
+     * decision.
+     */
+    public static final class DecisionCounters {
+
+        private final long[] bufferTimeStateCounts = new long[BUFFER_TIME_STATE_COUNT];
+        private long decisionCount;
+        private long continueLoadingCount;
+        private long targetBufferSizeReachedCount;
+        private long loadingStartCount;
+        private long loadingStopCount;
+        private long priorityDeferredCount;
+
+        private DecisionCounters() {}
+
+        /** Returns the number of loading decisions taken. */
+        public long getDecisionCount() {
+            return decisionCount;
+        }
+
+        /** Returns the number of decisions to continue loading. */
+        public long getContinueLoadingCount() {
+            return continueLoadingCount;
+        }
+
+        /** Returns the number of decisions taken while the target buffer size was reached. */
+        public long getTargetBufferSizeReachedCount() {
+            return targetBufferSizeReachedCount;
+        }
+
+        /** Returns the number of times loading was resumed after having been stopped. */
+        public long getLoadingStartCount() {
+            return loadingStartCount;
+        }
+
+        /** Returns the number of times loading was stopped after having been running. */
+        public long getLoadingStopCount() {
+            return loadingStopCount;
+        }
+
+        /**
+         * Returns the number of decisions to stop loading because a higher priority was held in the
+         * {@link PriorityTaskManager}.
+         */
+        public long getPriorityDeferredCount() {
+            return priorityDeferredCount;
+        }
+
+        /** Returns the number of decisions taken with more media buffered than the high watermark. */
+        public long getAboveHighWatermarkCount() {
+            return bufferTimeStateCounts[ABOVE_HIGH_WATERMARK];
+        }
+
+        /** Returns the number of decisions taken with media buffered between the two watermarks. */
+        public long getBetweenWatermarksCount() {
+            return bufferTimeStateCounts[BETWEEN_WATERMARKS];
+        }
+
+        /** Returns the number of decisions taken with less media buffered than the low watermark. */
+        public long getBelowLowWatermarkCount() {
+            return bufferTimeStateCounts[BELOW_LOW_WATERMARK];
+        }
+
+        private void onPriorityDeferred() {
+            priorityDeferredCount++;
+        }
+
+        private void onDecision(
+                int bufferTimeState,
+                boolean targetBufferSizeReached,
+                boolean wasBuffering,
+                boolean isBuffering) {
+            decisionCount++;
+            bufferTimeStateCounts[bufferTimeState]++;
+            if (targetBufferSizeReached) {
+                targetBufferSizeReachedCount++;
+            }
+            if (isBuffering) {
+                continueLoadingCount++;
+            }
+            if (isBuffering && !wasBuffering) {
+                loadingStartCount++;
+            } else if (!isBuffering && wasBuffering) {
+                loadingStopCount++;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "decisions=" + decisionCount
+                    + ", continueLoading=" + continueLoadingCount
+                    + ", targetBufferSizeReached=" + targetBufferSizeReachedCount
+                    + ", loadingStarts=" + loadingStartCount
+                    + ", loadingStops=" + loadingStopCount
+                    + ", priorityDeferred=" + priorityDeferredCount
+                    + ", aboveHigh=" + getAboveHighWatermarkCount()
+                    + ", between=" + getBetweenWatermarksCount()
+                    + ", belowLow=" + getBelowLowWatermarkCount();
+        }
     }
 }
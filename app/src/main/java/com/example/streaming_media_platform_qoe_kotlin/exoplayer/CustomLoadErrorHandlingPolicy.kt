@@ -2,32 +2,194 @@ package com.example.streaming_media_platform_qoe_kotlin.exoplayer
 
 import android.util.Log
 import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ParserException
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy
 import com.google.android.exoplayer2.upstream.HttpDataSource
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy
+import com.google.android.exoplayer2.upstream.Loader
+import com.google.android.exoplayer2.util.Clock
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.util.Locale
+import java.util.Random
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
-class CustomLoadErrorHandlingPolicy :
-    LoadErrorHandlingPolicy by DefaultLoadErrorHandlingPolicy() {
+/**
+ * Retries failed loads with exponential backoff and jitter, within a retry budget per playback
+ * session. An instance is meant to serve a single session.
+ *
+ * Timeouts are retried sooner than server errors, as the timeout itself already spent the time a
+ * backoff would. Client errors other than 408 and 429 are not retried. Once a load has failed
+ * [STALLED_RETRY_LIMIT] times, it is only retried if the media buffered ahead of the playback
+ * position covers the delay of the next attempt; otherwise playback would stall before it, and
+ * the error is surfaced instead. Blacklisting is left to [DefaultLoadErrorHandlingPolicy].
+ *
+ * @param bufferedDurationUsProvider Returns the media buffered ahead of the playback position, in
+ *     microseconds, or [C.TIME_UNSET] if unknown.
+ * @param maxRetriesPerSession The maximum number of retries in the session.
+ */
+class CustomLoadErrorHandlingPolicy @JvmOverloads constructor(
+    private val bufferedDurationUsProvider: () -> Long = { C.TIME_UNSET },
+    private val maxRetriesPerSession: Int = DEFAULT_MAX_RETRIES_PER_SESSION,
+    private val random: Random = Random(),
+    private val clock: Clock = Clock.DEFAULT
+) : LoadErrorHandlingPolicy by DefaultLoadErrorHandlingPolicy(),
+    QoeDebugTextViewHelper.StatsSource {
+
+    private val retryCount = AtomicInteger()
+    private val timeoutRetryCount = AtomicInteger()
+    private val serverErrorRetryCount = AtomicInteger()
+    private val giveUpCount = AtomicInteger()
+    private val recoveredLoadCount = AtomicInteger()
+    private val recoveryTimeMs = AtomicLong()
+
+    // Only accessed on the playback thread.
+    private val firstErrorTimesMs = HashMap<Long, Long>()
 
     override fun getRetryDelayMsFor(loadErrorInfo: LoadErrorHandlingPolicy.LoadErrorInfo): Long {
         val exception = loadErrorInfo.exception
-        Log.e("Player", "getRetryDelayMsFor $exception")
+        val loadTaskId = loadErrorInfo.loadEventInfo.loadTaskId
+        val errorType = getErrorType(exception)
+        if (errorType == ERROR_TYPE_FATAL || retryCount.get() >= maxRetriesPerSession) {
+            return giveUp(loadTaskId, exception)
+        }
+
+        val baseDelayMs = when (errorType) {
+            ERROR_TYPE_TIMEOUT -> TIMEOUT_BASE_DELAY_MS
+            ERROR_TYPE_SERVER -> SERVER_ERROR_BASE_DELAY_MS
+            else -> CONNECTION_ERROR_BASE_DELAY_MS
+        }
+        val shift = minOf(loadErrorInfo.errorCount - 1, MAX_BACKOFF_SHIFT)
+        val backoffMs = minOf(baseDelayMs shl shift, MAX_RETRY_DELAY_MS)
+        // Keep half of the backoff and randomize the other half, so that players failing together
+        // do not retry together.
+        var delayMs = backoffMs / 2 + random.nextInt((backoffMs / 2).toInt() + 1)
         if (exception is HttpDataSource.InvalidResponseCodeException) {
-            val responseCode = exception.responseCode
-            return if (responseCode in 500..599) RETRY_DELAY else C.TIME_UNSET
+            delayMs = maxOf(delayMs, getRetryAfterMs(exception))
         }
-        else if(exception is HttpDataSource.HttpDataSourceException){
-            return 2000
+
+        val bufferedDurationUs = bufferedDurationUsProvider()
+        if (loadErrorInfo.errorCount > STALLED_RETRY_LIMIT
+            && bufferedDurationUs != C.TIME_UNSET
+            && C.usToMs(bufferedDurationUs) < delayMs) {
+            return giveUp(loadTaskId, exception)
         }
-        return C.TIME_UNSET
+
+        retryCount.incrementAndGet()
+        when (errorType) {
+            ERROR_TYPE_TIMEOUT -> timeoutRetryCount.incrementAndGet()
+            ERROR_TYPE_SERVER -> serverErrorRetryCount.incrementAndGet()
+        }
+        if (!firstErrorTimesMs.containsKey(loadTaskId)) {
+            firstErrorTimesMs[loadTaskId] = clock.elapsedRealtime()
+        }
+        Log.d(TAG, "Retrying load $loadTaskId in ${delayMs}ms after error " +
+                "${loadErrorInfo.errorCount}: $exception")
+        return delayMs
     }
 
     override fun getMinimumLoadableRetryCount(dataType: Int): Int {
-        return MINIMUM_RETRY_COUNT
+        // Errors are surfaced by returning C.TIME_UNSET, not by running out of loadable retries.
+        return maxRetriesPerSession
+    }
+
+    override fun onLoadTaskConcluded(loadTaskId: Long) {
+        val firstErrorTimeMs = firstErrorTimesMs.remove(loadTaskId) ?: return
+        recoveredLoadCount.incrementAndGet()
+        recoveryTimeMs.addAndGet(clock.elapsedRealtime() - firstErrorTimeMs)
+    }
+
+    /** Returns the number of retries scheduled in the session. */
+    fun getRetryCount(): Int = retryCount.get()
+
+    /** Returns the number of retries scheduled after a timeout. */
+    fun getTimeoutRetryCount(): Int = timeoutRetryCount.get()
+
+    /** Returns the number of retries scheduled after a 5xx or 429 response. */
+    fun getServerErrorRetryCount(): Int = serverErrorRetryCount.get()
+
+    /** Returns the number of errors surfaced instead of retried. */
+    fun getGiveUpCount(): Int = giveUpCount.get()
+
+    /** Returns the number of loads that concluded after having been retried. */
+    fun getRecoveredLoadCount(): Int = recoveredLoadCount.get()
+
+    /**
+     * Returns the time from the first error of each retried load until it concluded, summed over
+     * the session, in milliseconds.
+     */
+    fun getRecoveryTimeMs(): Long = recoveryTimeMs.get()
+
+    override fun getStatsString(): String = String.format(
+        Locale.US,
+        "retries:%d timeouts:%d server:%d gave up:%d recovered:%d in %dms",
+        getRetryCount(),
+        getTimeoutRetryCount(),
+        getServerErrorRetryCount(),
+        getGiveUpCount(),
+        getRecoveredLoadCount(),
+        getRecoveryTimeMs()
+    )
+
+    private fun giveUp(loadTaskId: Long, exception: IOException): Long {
+        firstErrorTimesMs.remove(loadTaskId)
+        giveUpCount.incrementAndGet()
+        Log.e(TAG, "Giving up load $loadTaskId: $exception")
+        return C.TIME_UNSET
+    }
+
+    private fun getRetryAfterMs(exception: HttpDataSource.InvalidResponseCodeException): Long {
+        val value = exception.headerFields.entries
+            .firstOrNull { it.key.equals(RETRY_AFTER_HEADER, ignoreCase = true) }
+            ?.value?.firstOrNull() ?: return 0
+        val seconds = value.trim().toLongOrNull() ?: return 0
+        return minOf(seconds * 1000, MAX_RETRY_DELAY_MS)
     }
 
     companion object {
-        private const val RETRY_DELAY = 5000L
-        private const val MINIMUM_RETRY_COUNT = 3
+        private const val TAG = "LoadErrorPolicy"
+
+        /** The default maximum number of retries per session. */
+        const val DEFAULT_MAX_RETRIES_PER_SESSION = 20
+
+        /** The number of attempts of a load that are retried regardless of the buffered media. */
+        const val STALLED_RETRY_LIMIT = 3
+
+        private const val TIMEOUT_BASE_DELAY_MS = 500L
+        private const val CONNECTION_ERROR_BASE_DELAY_MS = 1_000L
+        private const val SERVER_ERROR_BASE_DELAY_MS = 2_000L
+        private const val MAX_RETRY_DELAY_MS = 30_000L
+        private const val MAX_BACKOFF_SHIFT = 10
+        private const val RETRY_AFTER_HEADER = "Retry-After"
+
+        private const val ERROR_TYPE_FATAL = 0
+        private const val ERROR_TYPE_TIMEOUT = 1
+        private const val ERROR_TYPE_SERVER = 2
+        private const val ERROR_TYPE_CONNECTION = 3
+
+        private fun getErrorType(exception: IOException): Int {
+            if (exception is ParserException
+                || exception is FileNotFoundException
+                || exception is Loader.UnexpectedLoaderException) {
+                return ERROR_TYPE_FATAL
+            }
+            if (exception is HttpDataSource.InvalidResponseCodeException) {
+                return when (exception.responseCode) {
+                    408 -> ERROR_TYPE_TIMEOUT
+                    429, in 500..599 -> ERROR_TYPE_SERVER
+                    else -> ERROR_TYPE_FATAL
+                }
+            }
+            var cause: Throwable? = exception
+            while (cause != null) {
+                if (cause is SocketTimeoutException) {
+                    return ERROR_TYPE_TIMEOUT
+                }
+                cause = cause.cause
+            }
+            return ERROR_TYPE_CONNECTION
+        }
     }
 }
@@ -0,0 +1,170 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
+import com.google.android.exoplayer2.SimpleExoPlayer
+import com.google.android.exoplayer2.decoder.DecoderCounters
+import java.util.Locale
+
+/**
+ * Samples the video and audio decoder counters of a player at a fixed interval and publishes the
+ * increase of each counter over the interval.
+ *
+ * The counters are copied into snapshots and deltas allocated once, so a tick does not allocate.
+ * The deltas passed to the [Listener] are reused on the next tick and must not be kept.
+ *
+ * A burst is a run of intervals in which at least [burstDroppedFramesPerSecond] video frames were
+ * dropped per second. Must be used on the application thread.
+ *
+ * @param intervalMs The interval between samples, in milliseconds.
+ * @param burstDroppedFramesPerSecond The video drop rate from which an interval is part of a burst.
+ */
+class DecoderCountersSampler @JvmOverloads constructor(
+    private val intervalMs: Long = DEFAULT_INTERVAL_MS,
+    private val burstDroppedFramesPerSecond: Float = DEFAULT_BURST_DROPPED_FRAMES_PER_SECOND
+) : QoeDebugTextViewHelper.StatsSource {
+
+    /** Receives the deltas of each interval. */
+    fun interface Listener {
+
+        /**
+         * Called after each interval.
+         *
+         * @param durationMs The duration of the interval, in milliseconds.
+         * @param videoDeltas The increase of the video decoder counters over the interval.
+         * @param audioDeltas The increase of the audio decoder counters over the interval.
+         */
+        fun onIntervalSampled(
+            durationMs: Long,
+            videoDeltas: DecoderCountersData,
+            audioDeltas: DecoderCountersData
+        )
+    }
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val sampleRunnable = Runnable { sampleAndReschedule() }
+    private val videoCurrent = DecoderCountersData()
+    private val videoPrevious = DecoderCountersData()
+    private val videoDeltas = DecoderCountersData()
+    private val audioCurrent = DecoderCountersData()
+    private val audioPrevious = DecoderCountersData()
+    private val audioDeltas = DecoderCountersData()
+
+    private var player: SimpleExoPlayer? = null
+    private var listener: Listener? = null
+    private var lastSampleTimeMs = NO_SAMPLE
+    private var inBurst = false
+
+    @Volatile private var droppedFramesPerSecond = 0f
+    @Volatile private var renderedFramesPerSecond = 0f
+    @Volatile private var peakDroppedFramesPerSecond = 0f
+    @Volatile private var burstCount = 0
+    @Volatile private var intervalCount = 0
+
+    /** Sets the listener receiving the deltas of each interval, or null to remove it. */
+    fun setListener(listener: Listener?) {
+        this.listener = listener
+    }
+
+    /** Starts sampling [player], replacing the player sampled so far. */
+    fun start(player: SimpleExoPlayer) {
+        stop()
+        this.player = player
+        handler.post(sampleRunnable)
+    }
+
+    /** Stops sampling. The next [start] begins a new baseline. */
+    fun stop() {
+        handler.removeCallbacks(sampleRunnable)
+        player = null
+        lastSampleTimeMs = NO_SAMPLE
+        inBurst = false
+    }
+
+    /**
+     * Takes a sample of the given counters. The first sample sets the baseline; each later one
+     * publishes the deltas since the previous sample.
+     *
+     * @param nowMs The time of the sample, in milliseconds.
+     * @param videoCounters The video decoder counters, or null if there is no video decoder.
+     * @param audioCounters The audio decoder counters, or null if there is no audio decoder.
+     */
+    fun sample(nowMs: Long, videoCounters: DecoderCounters?, audioCounters: DecoderCounters?) {
+        // Counters restart at zero when a renderer is enabled again, which setDelta accounts for.
+        if (videoCounters != null) videoCurrent.set(videoCounters) else videoCurrent.reset()
+        if (audioCounters != null) audioCurrent.set(audioCounters) else audioCurrent.reset()
+        if (lastSampleTimeMs != NO_SAMPLE && nowMs > lastSampleTimeMs) {
+            val durationMs = nowMs - lastSampleTimeMs
+            videoDeltas.setDelta(videoCurrent, videoPrevious)
+            audioDeltas.setDelta(audioCurrent, audioPrevious)
+            onInterval(durationMs)
+        }
+        videoPrevious.set(videoCurrent)
+        audioPrevious.set(audioCurrent)
+        lastSampleTimeMs = nowMs
+    }
+
+    /** Returns the video frames dropped per second over the latest interval. */
+    fun getDroppedFramesPerSecond(): Float = droppedFramesPerSecond
+
+    /** Returns the video frames rendered per second over the latest interval. */
+    fun getRenderedFramesPerSecond(): Float = renderedFramesPerSecond
+
+    /** Returns the highest video frames dropped per second over any interval. */
+    fun getPeakDroppedFramesPerSecond(): Float = peakDroppedFramesPerSecond
+
+    /** Returns the number of bursts of dropped video frames. */
+    fun getBurstCount(): Int = burstCount
+
+    /** Returns the number of intervals sampled. */
+    fun getIntervalCount(): Int = intervalCount
+
+    override fun getStatsString(): String {
+        return String.format(
+            Locale.US,
+            "frames fps:%.1f drop/s:%.1f peak:%.1f bursts:%d",
+            renderedFramesPerSecond,
+            droppedFramesPerSecond,
+            peakDroppedFramesPerSecond,
+            burstCount
+        )
+    }
+
+    private fun onInterval(durationMs: Long) {
+        val dropped = videoDeltas.droppedBufferCount * 1000f / durationMs
+        droppedFramesPerSecond = dropped
+        renderedFramesPerSecond = videoDeltas.renderedOutputBufferCount * 1000f / durationMs
+        if (dropped > peakDroppedFramesPerSecond) {
+            peakDroppedFramesPerSecond = dropped
+        }
+        val burst = videoDeltas.droppedBufferCount > 0 && dropped >= burstDroppedFramesPerSecond
+        if (burst && !inBurst) {
+            burstCount++
+        }
+        inBurst = burst
+        intervalCount++
+        listener?.onIntervalSampled(durationMs, videoDeltas, audioDeltas)
+    }
+
+    private fun sampleAndReschedule() {
+        val player = this.player ?: return
+        sample(
+            SystemClock.elapsedRealtime(),
+            player.videoDecoderCounters,
+            player.audioDecoderCounters
+        )
+        handler.postDelayed(sampleRunnable, intervalMs)
+    }
+
+    companion object {
+        private const val NO_SAMPLE = Long.MIN_VALUE
+
+        /** The default interval between samples, in milliseconds. */
+        const val DEFAULT_INTERVAL_MS = 1_000L
+
+        /** The default video drop rate from which an interval is part of a burst. */
+        const val DEFAULT_BURST_DROPPED_FRAMES_PER_SECOND = 5f
+    }
+}
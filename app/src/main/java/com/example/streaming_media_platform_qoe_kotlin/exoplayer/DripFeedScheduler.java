@@ -0,0 +1,95 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * Duty-cycle scheduler for drip-feed loading.
+ *
+ * <p>While the buffer is between the watermarks, media is loaded in bursts of a fixed number of
+ * bytes, each followed by an idle window in which nothing is loaded so that the radio can drop to a
+ * low-power state. Loading below the low watermark is never delayed, but it counts as a burst.
+ */
+/* package */ final class DripFeedScheduler {
+
+    private final int burstBytes;
+    private final long idleIntervalMs;
+
+    private boolean bursting;
+    private long burstStartLoadedBytes;
+    private long idleStartMs;
+
+    /**
+     * @param burstBytes The number of bytes loaded in each burst.
+     * @param idleIntervalMs The time the radio is left idle after each burst, in milliseconds.
+     */
+    public DripFeedScheduler(int burstBytes, long idleIntervalMs) {
+        Assertions.checkArgument(burstBytes > 0, "burstBytes must be positive");
+        Assertions.checkArgument(idleIntervalMs >= 0, "idleIntervalMs cannot be negative");
+        this.burstBytes = burstBytes;
+        this.idleIntervalMs = idleIntervalMs;
+        this.idleStartMs = C.TIME_UNSET;
+    }
+
+    /** Resets the scheduler for a new playback session. */
+    public void reset() {
+        bursting = false;
+        idleStartMs = C.TIME_UNSET;
+    }
+
+    /**
+     * Returns whether to load while the buffer is between the watermarks and the target buffer size
+     * is not reached.
+     *
+     * @param nowMs The current time, in milliseconds.
+     * @param loadedBytes The number of bytes loaded in the session so far.
+     */
+    public boolean shouldLoad(long nowMs, long loadedBytes) {
+        if (bursting) {
+            if (loadedBytes - burstStartLoadedBytes < burstBytes) {
+                return true;
+            }
+            startIdle(nowMs);
+            return false;
+        }
+        if (idleStartMs != C.TIME_UNSET && nowMs - idleStartMs < idleIntervalMs) {
+            return false;
+        }
+        startBurst(loadedBytes);
+        return true;
+    }
+
+    /**
+     * Called when loading is forced because the buffer is below the low watermark.
+     *
+     * @param loadedBytes The number of bytes loaded in the session so far.
+     */
+    public void onForcedLoading(long loadedBytes) {
+        if (!bursting) {
+            startBurst(loadedBytes);
+        }
+    }
+
+    /**
+     * Called when loading stops for a reason other than the scheduler, such as the buffer reaching
+     * the high watermark or the target buffer size.
+     *
+     * @param nowMs The current time, in milliseconds.
+     */
+    public void onLoadingStopped(long nowMs) {
+        if (bursting) {
+            startIdle(nowMs);
+        }
+    }
+
+    private void startBurst(long loadedBytes) {
+        bursting = true;
+        burstStartLoadedBytes = loadedBytes;
+        idleStartMs = C.TIME_UNSET;
+    }
+
+    private void startIdle(long nowMs) {
+        bursting = false;
+        idleStartMs = nowMs;
+    }
+}
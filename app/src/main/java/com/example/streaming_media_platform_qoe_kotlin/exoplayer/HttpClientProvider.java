@@ -0,0 +1,356 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Provides the process-wide {@link OkHttpClient} used by the players.
+ *
+ * <p>The client keeps idle connections alive in a shared pool, negotiates HTTP/2 where the server
+ * supports it, and bounds its timeouts so that a dead socket fails the load instead of hanging it.
+ * The client counts the connections it opens and reuses, see {@link #getConnectionStats()}.
+ */
+public final class HttpClientProvider {
+
+    /** The default connect timeout, in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 8_000;
+
+    /** The default read timeout, in milliseconds. */
+    public static final int DEFAULT_READ_TIMEOUT_MS = 8_000;
+
+    /** The maximum number of idle connections kept in the pool. */
+    public static final int MAX_IDLE_CONNECTIONS = 5;
+
+    /** The time an idle connection is kept in the pool, in milliseconds. */
+    public static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+    private static final ConnectionStats connectionStats = new ConnectionStats();
+
+    @Nullable private static OkHttpClient sharedClient;
+
+    private HttpClientProvider() {}
+
+    /** Returns the shared client, with the default timeouts. */
+    public static synchronized OkHttpClient getSharedClient() {
+        if (sharedClient == null) {
+            ConnectionPool connectionPool =
+                    new ConnectionPool(
+                            MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS, TimeUnit.MILLISECONDS);
+            sharedClient =
+                    new OkHttpClient.Builder()
+                            .connectionPool(connectionPool)
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .connectTimeout(DEFAULT_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                            .readTimeout(DEFAULT_READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                            .retryOnConnectionFailure(true)
+                            .eventListener(connectionStats)
+                            .build();
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Returns a client sharing the connection pool of the shared client, with the given timeouts.
+     *
+     * @param connectTimeoutMs The connect timeout, in milliseconds, or 0 or less for the default.
+     * @param readTimeoutMs The read timeout, in milliseconds, or 0 or less for the default.
+     * @return The client.
+     */
+    public static OkHttpClient getClient(int connectTimeoutMs, int readTimeoutMs) {
+        return getClient(connectTimeoutMs, readTimeoutMs, /* eventListener= */ null);
+    }
+
+    /**
+     * Returns a client sharing the connection pool of the shared client, with the given timeouts,
+     * whose calls are also reported to {@code eventListener}.
+     *
+     * @param connectTimeoutMs The connect timeout, in milliseconds, or 0 or less for the default.
+     * @param readTimeoutMs The read timeout, in milliseconds, or 0 or less for the default.
+     * @param eventListener A listener of the calls of the client, in addition to the connection
+     *     counters, or {@code null}.
+     * @return The client.
+     */
+    public static OkHttpClient getClient(
+            int connectTimeoutMs, int readTimeoutMs, @Nullable EventListener eventListener) {
+        OkHttpClient client = getSharedClient();
+        if (connectTimeoutMs <= 0 && readTimeoutMs <= 0 && eventListener == null) {
+            return client;
+        }
+        OkHttpClient.Builder builder = client.newBuilder()
+                .connectTimeout(
+                        connectTimeoutMs > 0 ? connectTimeoutMs : DEFAULT_CONNECT_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS)
+                .readTimeout(
+                        readTimeoutMs > 0 ? readTimeoutMs : DEFAULT_READ_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS);
+        if (eventListener != null) {
+            builder.eventListener(new CompositeEventListener(connectionStats, eventListener));
+        }
+        return builder.build();
+    }
+
+    /** Returns the connection counters of the shared client and the clients derived from it. */
+    public static ConnectionStats getConnectionStats() {
+        return connectionStats;
+    }
+
+    /** Counts the connections opened and reused by the calls of the client. */
+    public static final class ConnectionStats extends EventListener
+            implements QoeDebugTextViewHelper.StatsSource {
+
+        private final AtomicLong callCount;
+        private final AtomicLong connectionAcquiredCount;
+        private final AtomicLong connectionOpenedCount;
+        private final AtomicLong http2ConnectionCount;
+
+        private ConnectionStats() {
+            callCount = new AtomicLong();
+            connectionAcquiredCount = new AtomicLong();
+            connectionOpenedCount = new AtomicLong();
+            http2ConnectionCount = new AtomicLong();
+        }
+
+        /** Returns the number of calls started. */
+        public long getCallCount() {
+            return callCount.get();
+        }
+
+        /** Returns the number of times a call acquired a connection, new or pooled. */
+        public long getConnectionAcquiredCount() {
+            return connectionAcquiredCount.get();
+        }
+
+        /** Returns the number of connections opened. */
+        public long getConnectionOpenedCount() {
+            return connectionOpenedCount.get();
+        }
+
+        /** Returns the number of connections opened that negotiated HTTP/2. */
+        public long getHttp2ConnectionCount() {
+            return http2ConnectionCount.get();
+        }
+
+        /**
+         * Returns the fraction of acquired connections that were reused rather than opened, or 0
+         * if no connection was acquired yet.
+         */
+        public float getReuseRate() {
+            long acquiredCount = connectionAcquiredCount.get();
+            if (acquiredCount == 0) {
+                return 0f;
+            }
+            return Math.max(0, acquiredCount - connectionOpenedCount.get()) / (float) acquiredCount;
+        }
+
+        @Override
+        public String getStatsString() {
+            return String.format(
+                    Locale.US,
+                    "http calls:%d connections:%d h2:%d reuse:%.0f%%",
+                    getCallCount(),
+                    getConnectionOpenedCount(),
+                    getHttp2ConnectionCount(),
+                    getReuseRate() * 100);
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callCount.incrementAndGet();
+        }
+
+        @Override
+        public void connectEnd(
+                Call call,
+                InetSocketAddress inetSocketAddress,
+                Proxy proxy,
+                @Nullable Protocol protocol) {
+            connectionOpenedCount.incrementAndGet();
+            if (protocol == Protocol.HTTP_2) {
+                http2ConnectionCount.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionAcquiredCount.incrementAndGet();
+        }
+    }
+
+    /** Reports the events of a call to several listeners, in order. */
+    private static final class CompositeEventListener extends EventListener {
+
+        private final EventListener[] listeners;
+
+        private CompositeEventListener(EventListener... listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            for (EventListener listener : listeners) {
+                listener.callStart(call);
+            }
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            for (EventListener listener : listeners) {
+                listener.dnsStart(call, domainName);
+            }
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            for (EventListener listener : listeners) {
+                listener.dnsEnd(call, domainName, inetAddressList);
+            }
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            for (EventListener listener : listeners) {
+                listener.connectStart(call, inetSocketAddress, proxy);
+            }
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            for (EventListener listener : listeners) {
+                listener.secureConnectStart(call);
+            }
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            for (EventListener listener : listeners) {
+                listener.secureConnectEnd(call, handshake);
+            }
+        }
+
+        @Override
+        public void connectEnd(
+                Call call,
+                InetSocketAddress inetSocketAddress,
+                Proxy proxy,
+                @Nullable Protocol protocol) {
+            for (EventListener listener : listeners) {
+                listener.connectEnd(call, inetSocketAddress, proxy, protocol);
+            }
+        }
+
+        @Override
+        public void connectFailed(
+                Call call,
+                InetSocketAddress inetSocketAddress,
+                Proxy proxy,
+                @Nullable Protocol protocol,
+                IOException ioe) {
+            for (EventListener listener : listeners) {
+                listener.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+            }
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            for (EventListener listener : listeners) {
+                listener.connectionAcquired(call, connection);
+            }
+        }
+
+        @Override
+        public void connectionReleased(Call call, Connection connection) {
+            for (EventListener listener : listeners) {
+                listener.connectionReleased(call, connection);
+            }
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            for (EventListener listener : listeners) {
+                listener.requestHeadersStart(call);
+            }
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            for (EventListener listener : listeners) {
+                listener.requestHeadersEnd(call, request);
+            }
+        }
+
+        @Override
+        public void requestBodyStart(Call call) {
+            for (EventListener listener : listeners) {
+                listener.requestBodyStart(call);
+            }
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            for (EventListener listener : listeners) {
+                listener.requestBodyEnd(call, byteCount);
+            }
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            for (EventListener listener : listeners) {
+                listener.responseHeadersStart(call);
+            }
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            for (EventListener listener : listeners) {
+                listener.responseHeadersEnd(call, response);
+            }
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            for (EventListener listener : listeners) {
+                listener.responseBodyStart(call);
+            }
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            for (EventListener listener : listeners) {
+                listener.responseBodyEnd(call, byteCount);
+            }
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            for (EventListener listener : listeners) {
+                listener.callEnd(call);
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            for (EventListener listener : listeners) {
+                listener.callFailed(call, ioe);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Assertions;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded on-disk cache of media, placed in front of an upstream {@link DataSource.Factory}.
+ *
+ * <p>Least recently used content is evicted once the cache exceeds its size cap. The cache counts
+ * the reads it serves and the requests that go to the network, so that its effect can be shown on
+ * the debug overlay.
+ */
+public final class MediaCache implements QoeDebugTextViewHelper.StatsSource {
+
+    /** The default size cap of the cache, in bytes. */
+    public static final long DEFAULT_MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+    private static final String CACHE_DIRECTORY_NAME = "media_cache";
+
+    @Nullable private static MediaCache singletonInstance;
+
+    private final Cache cache;
+    private final CacheDataSource.EventListener cacheEventListener;
+    private final TransferListener networkTransferListener;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong cachedBytesRead;
+    private final AtomicLong networkBytesRead;
+
+    /**
+     * Returns a process-wide cache in the app's cache directory, capped at {@link
+     * #DEFAULT_MAX_CACHE_BYTES}.
+     *
+     * @param context A {@link Context}.
+     * @return The cache.
+     */
+    public static synchronized MediaCache getSingletonInstance(Context context) {
+        if (singletonInstance == null) {
+            Context applicationContext = context.getApplicationContext();
+            singletonInstance =
+                    new MediaCache(
+                            new File(applicationContext.getCacheDir(), CACHE_DIRECTORY_NAME),
+                            DEFAULT_MAX_CACHE_BYTES,
+                            new ExoDatabaseProvider(applicationContext));
+        }
+        return singletonInstance;
+    }
+
+    /**
+     * @param directory The directory holding the cached media, which must not be used by another
+     *     cache.
+     * @param maxCacheBytes The size cap of the cache, in bytes.
+     * @param databaseProvider Provides the database holding the cache index, or {@code null} to keep
+     *     the index in a file in {@code directory}.
+     */
+    public MediaCache(
+            File directory, long maxCacheBytes, @Nullable DatabaseProvider databaseProvider) {
+        Assertions.checkArgument(maxCacheBytes > 0, "maxCacheBytes must be positive");
+        this.cache =
+                new SimpleCache(
+                        directory,
+                        new LeastRecentlyUsedCacheEvictor(maxCacheBytes),
+                        databaseProvider,
+                        /* legacyIndexSecretKey= */ null,
+                        /* legacyIndexEncrypt= */ false,
+                        /* preferLegacyIndex= */ databaseProvider == null);
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.cachedBytesRead = new AtomicLong();
+        this.networkBytesRead = new AtomicLong();
+        this.cacheEventListener = new CacheEventListener();
+        this.networkTransferListener = new NetworkTransferListener();
+    }
+
+    /** Returns the underlying {@link Cache}. */
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns a factory of data sources that read from the cache, and from {@code upstreamFactory}
+     * whatever is not cached yet, writing it to the cache.
+     *
+     * <p>Requests of unset length are served from the cache, as the player requests progressive
+     * media that way. A response of unknown length, such as a live progressive stream, is only
+     * written to the cache if the request does not set {@link
+     * DataSpec#FLAG_DONT_CACHE_IF_LENGTH_UNKNOWN}, which the player sets.
+     *
+     * @param upstreamFactory The factory of the data sources reading from the network.
+     * @return The factory.
+     * @see #createDataSourceFactory(DataSource.Factory, boolean)
+     */
+    public CacheDataSource.Factory createDataSourceFactory(DataSource.Factory upstreamFactory) {
+        return createDataSourceFactory(
+                upstreamFactory, /* ignoreCacheForUnsetLengthRequests= */ false);
+    }
+
+    /**
+     * Returns a factory of data sources that read from the cache, and from {@code upstreamFactory}
+     * whatever is not cached yet, writing it to the cache.
+     *
+     * @param upstreamFactory The factory of the data sources reading from the network.
+     * @param ignoreCacheForUnsetLengthRequests Whether requests of unset length bypass the cache,
+     *     neither reading from nor writing to it. Set it for resources that are refreshed in place,
+     *     such as the manifests of live streams, which would otherwise be served stale from the
+     *     cache.
+     * @return The factory.
+     */
+    public CacheDataSource.Factory createDataSourceFactory(
+            DataSource.Factory upstreamFactory, boolean ignoreCacheForUnsetLengthRequests) {
+        DataSource.Factory countingUpstreamFactory =
+                () -> {
+                    DataSource upstream = upstreamFactory.createDataSource();
+                    upstream.addTransferListener(networkTransferListener);
+                    return upstream;
+                };
+        int flags = CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR;
+        if (ignoreCacheForUnsetLengthRequests) {
+            flags |= CacheDataSource.FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS;
+        }
+        return new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(countingUpstreamFactory)
+                .setFlags(flags)
+                .setEventListener(cacheEventListener);
+    }
+
+    /** Returns the number of reads that were served at least partly from the cache. */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** Returns the number of requests that went to the network. */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** Returns the number of bytes read from the cache. */
+    public long getCachedBytesRead() {
+        return cachedBytesRead.get();
+    }
+
+    /** Returns the number of bytes read from the network. */
+    public long getNetworkBytesRead() {
+        return networkBytesRead.get();
+    }
+
+    /** Returns the number of bytes currently held by the cache. */
+    public long getCacheSpace() {
+        return cache.getCacheSpace();
+    }
+
+    @Override
+    public String getStatsString() {
+        return String.format(
+                Locale.US,
+                "cache hits:%d misses:%d cached:%dkB network:%dkB size:%dkB",
+                getHitCount(),
+                getMissCount(),
+                getCachedBytesRead() / 1024,
+                getNetworkBytesRead() / 1024,
+                getCacheSpace() / 1024);
+    }
+
+    private final class CacheEventListener implements CacheDataSource.EventListener {
+
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            hitCount.incrementAndGet();
+            MediaCache.this.cachedBytesRead.addAndGet(cachedBytesRead);
+        }
+
+        @Override
+        public void onCacheIgnored(int reason) {
+            // Reads that bypass the cache are counted as misses by the network listener.
+        }
+    }
+
+    private final class NetworkTransferListener implements TransferListener {
+
+        @Override
+        public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+        @Override
+        public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            missCount.incrementAndGet();
+        }
+
+        @Override
+        public void onBytesTransferred(
+                DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+            networkBytesRead.addAndGet(bytesTransferred);
+        }
+
+        @Override
+        public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+    }
+}
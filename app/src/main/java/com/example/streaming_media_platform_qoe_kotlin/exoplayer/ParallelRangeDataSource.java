@@ -0,0 +1,400 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.min;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link DataSource} that loads a byte window through several concurrent HTTP range requests and
+ * returns the bytes in order.
+ *
+ * <p>The requested range is split into chunks of a fixed size. Up to one chunk per connection is in
+ * flight or buffered ahead of the reader, so the memory held is bounded by the connection count
+ * times the chunk size. The first chunk is requested alone; its {@code Content-Range} header gives
+ * the length of the resource. If the server does not answer with a range, or everything fits in one
+ * chunk, the data source reads sequentially from the first request instead.
+ */
+public final class ParallelRangeDataSource extends BaseDataSource {
+
+    /** The default number of concurrent connections. */
+    public static final int DEFAULT_CONNECTION_COUNT = 4;
+
+    /** The default chunk size, in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /** Factory for {@link ParallelRangeDataSource} instances. */
+    public static final class Factory implements DataSource.Factory {
+
+        private final DataSource.Factory upstreamFactory;
+        private final int connectionCount;
+        private final int chunkSize;
+        private final ConnectionStats connectionStats;
+        private final ExecutorService executorService;
+
+        /**
+         * @param upstreamFactory The factory of the data sources issuing the range requests. Each
+         *     request should get its own connection, so HTTP/2 should not be negotiated.
+         * @param connectionCount The number of concurrent range requests.
+         * @param chunkSize The size of each range request, in bytes.
+         */
+        public Factory(DataSource.Factory upstreamFactory, int connectionCount, int chunkSize) {
+            Assertions.checkArgument(connectionCount > 0, "connectionCount must be positive");
+            Assertions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+            this.upstreamFactory = upstreamFactory;
+            this.connectionCount = connectionCount;
+            this.chunkSize = chunkSize;
+            this.connectionStats = new ConnectionStats(connectionCount);
+            this.executorService =
+                    Executors.newCachedThreadPool(
+                            runnable -> {
+                                Thread thread = new Thread(runnable, THREAD_NAME);
+                                // The loads are abandoned with the player, so the threads must not
+                                // keep the process alive.
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+        }
+
+        /** Returns the transfer counters of each connection, shared by all created data sources. */
+        public ConnectionStats getConnectionStats() {
+            return connectionStats;
+        }
+
+        /** Stops the threads loading the chunks. Created data sources can no longer be opened. */
+        public void release() {
+            executorService.shutdownNow();
+        }
+
+        @Override
+        public ParallelRangeDataSource createDataSource() {
+            return new ParallelRangeDataSource(
+                    upstreamFactory, connectionCount, chunkSize, connectionStats, executorService);
+        }
+    }
+
+    /** The transfer counters of each connection slot. */
+    public static final class ConnectionStats implements QoeDebugTextViewHelper.StatsSource {
+
+        private final AtomicLongArray bytesTransferred;
+        private final AtomicLongArray transferTimeMs;
+
+        private ConnectionStats(int connectionCount) {
+            bytesTransferred = new AtomicLongArray(connectionCount);
+            transferTimeMs = new AtomicLongArray(connectionCount);
+        }
+
+        /** Returns the number of connection slots. */
+        public int getConnectionCount() {
+            return bytesTransferred.length();
+        }
+
+        /** Returns the number of bytes transferred by a connection slot. */
+        public long getBytesTransferred(int connection) {
+            return bytesTransferred.get(connection);
+        }
+
+        /**
+         * Returns the average throughput of a connection slot while it was transferring, in bits
+         * per second, or 0 if it has not transferred anything yet.
+         */
+        public long getThroughputBps(int connection) {
+            long timeMs = transferTimeMs.get(connection);
+            if (timeMs <= 0) {
+                return 0;
+            }
+            return bytesTransferred.get(connection) * C.BITS_PER_BYTE * 1000 / timeMs;
+        }
+
+        @Override
+        public String getStatsString() {
+            StringBuilder stats = new StringBuilder("ranges");
+            for (int i = 0; i < getConnectionCount(); i++) {
+                stats.append(
+                        String.format(Locale.US, " c%d:%dkbps", i, getThroughputBps(i) / 1000));
+            }
+            return stats.toString();
+        }
+
+        private void onChunkTransferred(int connection, long bytes, long elapsedMs) {
+            bytesTransferred.addAndGet(connection, bytes);
+            transferTimeMs.addAndGet(connection, elapsedMs);
+        }
+    }
+
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+    private static final String THREAD_NAME = "ParallelRangeDataSource";
+
+    private final DataSource.Factory upstreamFactory;
+    private final int connectionCount;
+    private final int chunkSize;
+    private final ConnectionStats connectionStats;
+    private final ExecutorService executorService;
+    private final Chunk[] chunks;
+
+    @Nullable private DataSpec dataSpec;
+    @Nullable private DataSource sequentialSource;
+    private long endPosition;
+    private long chunkCount;
+    private long readChunkIndex;
+    private int readOffset;
+    private long bytesRemaining;
+    private boolean opened;
+
+    private ParallelRangeDataSource(
+            DataSource.Factory upstreamFactory,
+            int connectionCount,
+            int chunkSize,
+            ConnectionStats connectionStats,
+            ExecutorService executorService) {
+        super(/* isNetwork= */ true);
+        this.upstreamFactory = upstreamFactory;
+        this.connectionCount = connectionCount;
+        this.chunkSize = chunkSize;
+        this.connectionStats = connectionStats;
+        this.executorService = executorService;
+        this.chunks = new Chunk[connectionCount];
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        transferInitializing(dataSpec);
+        DataSource firstSource = upstreamFactory.createDataSource();
+        long firstLength =
+                dataSpec.length == C.LENGTH_UNSET ? chunkSize : min(chunkSize, dataSpec.length);
+        long firstBytes = firstSource.open(dataSpec.subrange(0, firstLength));
+        long resourceLength = getResourceLength(firstSource.getResponseHeaders());
+        endPosition =
+                dataSpec.length != C.LENGTH_UNSET
+                        ? dataSpec.position + dataSpec.length
+                        : resourceLength;
+
+        if (endPosition != C.LENGTH_UNSET && endPosition - dataSpec.position <= firstBytes) {
+            // Everything fits in the first chunk.
+            sequentialSource = firstSource;
+            bytesRemaining = firstBytes;
+        } else if (resourceLength == C.LENGTH_UNSET) {
+            // The server does not serve ranges, so read everything from a single request.
+            firstSource.close();
+            sequentialSource = upstreamFactory.createDataSource();
+            bytesRemaining = sequentialSource.open(dataSpec);
+        } else {
+            bytesRemaining = endPosition - dataSpec.position;
+            chunkCount = (bytesRemaining + chunkSize - 1) / chunkSize;
+            readChunkIndex = 0;
+            readOffset = 0;
+            startChunk(0, firstSource);
+            for (long i = 1; i < min(connectionCount, chunkCount); i++) {
+                startChunk(i, /* openedSource= */ null);
+            }
+        }
+        opened = true;
+        transferStarted(dataSpec);
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (readLength == 0) {
+            return 0;
+        }
+        if (sequentialSource != null) {
+            int bytesRead = sequentialSource.read(buffer, offset, readLength);
+            if (bytesRead != C.RESULT_END_OF_INPUT) {
+                bytesTransferred(bytesRead);
+            }
+            return bytesRead;
+        }
+        if (bytesRemaining == 0) {
+            return C.RESULT_END_OF_INPUT;
+        }
+        Chunk chunk = chunks[(int) (readChunkIndex % connectionCount)];
+        int bytesAvailable = chunk.awaitBytes(readOffset);
+        int bytesRead = min(readLength, bytesAvailable);
+        System.arraycopy(chunk.data, readOffset, buffer, offset, bytesRead);
+        readOffset += bytesRead;
+        bytesRemaining -= bytesRead;
+        bytesTransferred(bytesRead);
+        if (readOffset == chunk.length) {
+            // The slot is free, so start the chunk one window ahead.
+            readOffset = 0;
+            readChunkIndex++;
+            long nextChunkIndex = readChunkIndex + connectionCount - 1;
+            if (nextChunkIndex < chunkCount) {
+                startChunk(nextChunkIndex, /* openedSource= */ null);
+            }
+        }
+        return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return dataSpec != null ? dataSpec.uri : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // A canceled load may still be blocked in a read into its buffer, which interrupts do not
+        // unblock, so the buffers are dropped rather than reused by the next open.
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                chunks[i].cancel();
+                chunks[i] = null;
+            }
+        }
+        try {
+            if (sequentialSource != null) {
+                sequentialSource.close();
+            }
+        } finally {
+            sequentialSource = null;
+            dataSpec = null;
+            if (opened) {
+                opened = false;
+                transferEnded();
+            }
+        }
+    }
+
+    private void startChunk(long chunkIndex, @Nullable DataSource openedSource) {
+        int slot = (int) (chunkIndex % connectionCount);
+        DataSpec dataSpec = Assertions.checkNotNull(this.dataSpec);
+        long offset = chunkIndex * chunkSize;
+        int length = (int) min(chunkSize, endPosition - dataSpec.position - offset);
+        // The previous chunk of the slot was read in full, so its load no longer writes to its
+        // buffer. Buffers of an earlier open are never reused, see close().
+        Chunk previousChunk = chunks[slot];
+        byte[] data = previousChunk != null ? previousChunk.data : new byte[chunkSize];
+        Chunk chunk = new Chunk(data, length);
+        chunks[slot] = chunk;
+        DataSpec chunkDataSpec = dataSpec.subrange(offset, length);
+        DataSource source =
+                openedSource != null ? openedSource : upstreamFactory.createDataSource();
+        chunk.future =
+                executorService.submit(
+                        () -> loadChunk(chunk, source, chunkDataSpec, openedSource != null, slot));
+    }
+
+    private void loadChunk(
+            Chunk chunk, DataSource source, DataSpec chunkDataSpec, boolean opened, int slot) {
+        long startTimeMs = Clock.DEFAULT.elapsedRealtime();
+        int bytesLoaded = 0;
+        try {
+            if (!opened) {
+                source.open(chunkDataSpec);
+            }
+            while (bytesLoaded < chunk.length && !chunk.isCanceled()) {
+                int bytesRead = source.read(chunk.data, bytesLoaded, chunk.length - bytesLoaded);
+                if (bytesRead == C.RESULT_END_OF_INPUT) {
+                    throw new EOFException();
+                }
+                bytesLoaded += bytesRead;
+                chunk.onBytesLoaded(bytesLoaded);
+            }
+        } catch (IOException e) {
+            chunk.onError(e);
+        } finally {
+            Util.closeQuietly(source);
+            connectionStats.onChunkTransferred(
+                    slot, bytesLoaded, Clock.DEFAULT.elapsedRealtime() - startTimeMs);
+        }
+    }
+
+    private static long getResourceLength(Map<String, List<String>> responseHeaders) {
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            if (!CONTENT_RANGE_HEADER.equalsIgnoreCase(header.getKey())
+                    || header.getValue().isEmpty()) {
+                continue;
+            }
+            // Content-Range: bytes <first>-<last>/<length>
+            String value = header.getValue().get(0);
+            int slashIndex = value.lastIndexOf('/');
+            if (slashIndex != -1) {
+                try {
+                    return Long.parseLong(value.substring(slashIndex + 1).trim());
+                } catch (NumberFormatException e) {
+                    // The length is unknown ("*").
+                }
+            }
+        }
+        return C.LENGTH_UNSET;
+    }
+
+    /** A chunk being loaded into a buffer while the reader consumes it. */
+    private static final class Chunk {
+
+        private final byte[] data;
+        private final int length;
+
+        @Nullable private Future<?> future;
+        private int bytesLoaded;
+        private boolean canceled;
+        @Nullable private IOException error;
+
+        private Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        /** Blocks until more than {@code readOffset} bytes are loaded, and returns the excess. */
+        private synchronized int awaitBytes(int readOffset) throws IOException {
+            while (bytesLoaded <= readOffset && error == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (bytesLoaded <= readOffset) {
+                throw Assertions.checkNotNull(error);
+            }
+            return bytesLoaded - readOffset;
+        }
+
+        private synchronized void onBytesLoaded(int bytesLoaded) {
+            this.bytesLoaded = bytesLoaded;
+            notifyAll();
+        }
+
+        private synchronized void onError(IOException error) {
+            this.error = error;
+            notifyAll();
+        }
+
+        private synchronized boolean isCanceled() {
+            return canceled;
+        }
+
+        private void cancel() {
+            synchronized (this) {
+                canceled = true;
+            }
+            if (future != null) {
+                future.cancel(/* mayInterruptIfRunning= */ true);
+            }
+        }
+    }
+}
@@ -1,79 +1,319 @@
 package com.example.streaming_media_platform_qoe_kotlin.exoplayer
-//
-//import android.content.Context
-//import android.os.Environment
-//import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
-//import com.example.streaming_media_platform_qoe_kotlin.data_models.Utils
-//import com.google.android.exoplayer2.SimpleExoPlayer
-//import java.io.File
-//import java.io.PrintWriter
-//import java.lang.Exception
-//import android.util.Log
-//import com.google.android.exoplayer2.Player
-//import java.io.FileOutputStream
-//import kotlin.io.path.Path
-//import kotlin.io.path.absolutePathString
-//
-//
-public class PlayerEventLogger {
-//
-//    val logFileName: String = "decoder_logs.csv"
-//
-//    public fun createNewLog(player: SimpleExoPlayer, context: Context) {
-//        val decoderCountersStr: String = Utils.getGeneralDecoderCountersBufferCountData(player)!!.toString()
-//        val playWhenReady: Boolean = player.playWhenReady
-//        val playbackState: Int = player.playbackState
-//
-//        val currentTimeStamp: Long = java.util.Date().time
-//        val logStr = "${currentTimeStamp},${playWhenReady},${playbackState},${decoderCountersStr}\n"
-//
-////        WriteToFile(logStr)
-//        WriteToCSVFile(logStr, context)
-//
-//    }
-//
-//    private fun WriteToCSVFile(entry: String, context: Context): Boolean {
-//        Log.d("EventLogger", "Attempting to write to file: ${Path(logFileName).absolutePathString()}")
-//        var fileOutputStream: FileOutputStream
-//        try {
-//            fileOutputStream = context.openFileOutput(logFileName, Context.MODE_PRIVATE)
-//            fileOutputStream.write(entry.toByteArray())
-//            fileOutputStream.close()
-//        } catch(e: Exception) {
-//            e.printStackTrace()
-//            Log.d("EventLogger", "Write file (${logFileName} failed.")
-//            return false
-//        }
-//        Log.d("EventLogger", "Write to file (${logFileName}) successful.")
-//        return true
-//    }
-//
-//    private fun WriteToFile(entry: String) {
-//        Log.d("EventLogger", "Attempting to write to file: ${Environment.getDataDirectory()}")
-//        val sd_main = File(Environment.getExternalStorageDirectory().toString(), "/kotlin_project")
-//        var success = true
-//        if (!sd_main.exists())
-//            success = sd_main.mkdir()
-//
-//        if (success) {
-//            val sd = File(Environment.getExternalStorageDirectory().toString() + "/kotlin_project")
-//
-//            if (!sd.exists())
-//                success = sd.mkdir()
-//
-//            if (success) {
-//                // directory exists or already created
-//                val dest = File(sd, logFileName)
-//                try {
-////                    PrintWriter(dest).use {out -> out.println(entry)}
-//                    dest.appendText(entry)
-//                } catch (e: Exception) {
-//                    Log.d("EventLogger", "Write to file failed.")
-//                }
-//            }
-//        }
-//        else {
-//            Log.d("EventLogger", "Directory creation unsuccessful")
-//        }
-//    }
+
+import android.util.Log
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersDataStrId
+import com.google.android.exoplayer2.SimpleExoPlayer
+import java.io.BufferedWriter
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Appends the records of a playback session to CSV files in the background.
+ *
+ * Every file starts with a header row, and every record has the same columns: its timestamp, its
+ * event and one column per name in [columns]. Fields left out at the end are written empty, so
+ * the files can be loaded as tables.
+ *
+ * Records are added to a lock-free queue, so logging from the application or playback thread
+ * never waits on the disk. A writer thread drains the queue in batches, as soon as a batch is
+ * pending or every [flushIntervalMs], and flushes after each batch. Once the current file would
+ * exceed [maxFileBytes] it is rotated: `name.csv` becomes `name.1.csv` and so on, keeping at most
+ * [maxFileCount] files. If the writer falls behind by [maxPendingRecords] records, new records are
+ * dropped and counted rather than letting the queue grow without bound. If writing fails, the
+ * logger stops writing and drops every record from then on.
+ *
+ * @param directory The directory of the log files.
+ * @param baseName The name of the log files, without extension.
+ * @param columns The names of the columns after the timestamp and the event, such as
+ *     [PLAYER_STATE_COLUMNS].
+ */
+class PlayerEventLogger @JvmOverloads constructor(
+    private val directory: File,
+    private val baseName: String,
+    columns: List<String>,
+    private val maxFileBytes: Long = DEFAULT_MAX_FILE_BYTES,
+    private val maxFileCount: Int = DEFAULT_MAX_FILE_COUNT,
+    private val flushIntervalMs: Long = DEFAULT_FLUSH_INTERVAL_MS,
+    private val maxPendingRecords: Int = DEFAULT_MAX_PENDING_RECORDS
+) : Closeable {
+
+    private class Record(val timestampMs: Long, val event: String, val fields: Array<out Any?>)
+
+    private val queue = ConcurrentLinkedQueue<Record>()
+    private val pendingCount = AtomicInteger()
+    private val loggedCount = AtomicLong()
+    private val droppedCount = AtomicLong()
+    @Volatile private var writtenCount = 0L
+    @Volatile private var rotationCount = 0
+    @Volatile private var closed = false
+    @Volatile private var failed = false
+    private val columnCount = columns.size
+    private val header = "timestamp_ms,event," + columns.joinToString(",") + "\n"
+    private val writerThread: Thread
+
+    // Only accessed on the writer thread.
+    private var writer: BufferedWriter? = null
+    private var fileBytes = 0L
+    private val line = StringBuilder()
+
+    init {
+        require(maxFileBytes > 0) { "maxFileBytes must be positive" }
+        require(maxFileCount > 0) { "maxFileCount must be positive" }
+        require(maxPendingRecords > 0) { "maxPendingRecords must be positive" }
+        directory.mkdirs()
+        writerThread = Thread(::runWriter, "PlayerEventLogger")
+        writerThread.isDaemon = true
+        writerThread.start()
+    }
+
+    /**
+     * Queues a record. Never blocks, so it may be called from the application or playback thread.
+     *
+     * @param event The name of the event.
+     * @param fields The fields of the record, at most one per column, written with [toString].
+     *     Null fields are written empty.
+     * @return Whether the record will be written, rather than dropped because the logger is
+     *     closed, the writer fell behind or writing failed.
+     */
+    fun log(event: String, vararg fields: Any?): Boolean {
+        require(fields.size <= columnCount) { "More fields than columns" }
+        if (closed || failed) {
+            droppedCount.incrementAndGet()
+            return false
+        }
+        val pending = pendingCount.incrementAndGet()
+        if (pending > maxPendingRecords) {
+            pendingCount.decrementAndGet()
+            droppedCount.incrementAndGet()
+            return false
+        }
+        val record = Record(System.currentTimeMillis(), event, fields)
+        queue.offer(record)
+        if (closed || failed) {
+            // The logger closed or failed after the check above, and the writer may already have
+            // written its last batch. Taking the record back makes sure it is counted once.
+            if (queue.remove(record)) {
+                pendingCount.decrementAndGet()
+                droppedCount.incrementAndGet()
+                return false
+            }
+            if (failed) {
+                // The writer took the record while dropping the queue.
+                return false
+            }
+        }
+        loggedCount.incrementAndGet()
+        if (pending == BATCH_SIZE) {
+            LockSupport.unpark(writerThread)
+        }
+        return true
+    }
+
+    /**
+     * Queues a record in the layout of [PLAYER_STATE_COLUMNS]. Must be called on the application
+     * thread.
+     *
+     * @param player The player whose state is logged.
+     * @param event The name of the event.
+     * @param intervalMs The duration of the interval [counters] cover, in milliseconds, or a
+     *     negative value if they are totals. The column is left empty for totals.
+     * @param counters The video decoder counters, or null to leave their columns empty.
+     */
+    @JvmOverloads
+    fun logPlayerState(
+        player: SimpleExoPlayer,
+        event: String,
+        intervalMs: Long = -1,
+        counters: DecoderCountersData? = player.videoDecoderCounters?.let {
+            DecoderCountersData().apply { set(it) }
+        }
+    ): Boolean {
+        return log(
+            event,
+            player.playWhenReady,
+            player.playbackState,
+            player.currentPosition,
+            if (intervalMs >= 0) intervalMs else null,
+            counters?.decoderInitCount,
+            counters?.decoderReleaseCount,
+            counters?.inputBufferCount,
+            counters?.skippedInputBufferCount,
+            counters?.renderedOutputBufferCount,
+            counters?.skippedOutputBufferCount,
+            counters?.droppedBufferCount,
+            counters?.maxConsecutiveDroppedBufferCount,
+            counters?.droppedToKeyframeCount,
+            counters?.totalVideoFrameProcessingOffsetUs,
+            counters?.videoFrameProcessingOffsetCount
+        )
+    }
+
+    /** Returns the number of records queued. */
+    fun getLoggedRecordCount(): Long = loggedCount.get()
+
+    /** Returns the number of records written to the files. */
+    fun getWrittenRecordCount(): Long = writtenCount
+
+    /** Returns the number of records dropped, including those queued when writing failed. */
+    fun getDroppedRecordCount(): Long = droppedCount.get()
+
+    /** Returns the number of times the current file was rotated. */
+    fun getRotationCount(): Int = rotationCount
+
+    /** Returns the existing log files, newest first. */
+    fun getFiles(): List<File> =
+        (0 until maxFileCount).map { File(directory, getFileName(it)) }.filter { it.exists() }
+
+    /**
+     * Stops accepting records. The writer thread writes the queued records, closes the files and
+     * stops in the background, so this never blocks; see [awaitTermination].
+     */
+    override fun close() {
+        if (closed) {
+            return
+        }
+        closed = true
+        LockSupport.unpark(writerThread)
+    }
+
+    /**
+     * Waits for the writer thread to stop after [close], for at most [timeoutMs] milliseconds.
+     * Blocks on the disk, so it must not be called on the application or playback thread.
+     *
+     * @return Whether the writer thread stopped.
+     */
+    fun awaitTermination(timeoutMs: Long): Boolean {
+        try {
+            writerThread.join(timeoutMs)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+        return !writerThread.isAlive
+    }
+
+    private fun runWriter() {
+        val flushIntervalNs = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs)
+        try {
+            while (!closed) {
+                LockSupport.parkNanos(this, flushIntervalNs)
+                writeQueuedRecords()
+            }
+            writeQueuedRecords()
+        } catch (e: IOException) {
+            Log.e(TAG, "Writing the session log failed", e)
+            failed = true
+            // Records queued before log() saw the failure are never written.
+            while (queue.poll() != null) {
+                pendingCount.decrementAndGet()
+                droppedCount.incrementAndGet()
+            }
+        } finally {
+            closeWriter()
+        }
+    }
+
+    private fun writeQueuedRecords() {
+        var record = queue.poll() ?: return
+        while (true) {
+            write(record)
+            pendingCount.decrementAndGet()
+            writtenCount++
+            record = queue.poll() ?: break
+        }
+        writer?.flush()
+    }
+
+    private fun write(record: Record) {
+        line.setLength(0)
+        line.append(record.timestampMs).append(',').append(record.event)
+        for (i in 0 until columnCount) {
+            line.append(',')
+            val field = if (i < record.fields.size) record.fields[i] else null
+            if (field != null) {
+                line.append(field)
+            }
+        }
+        line.append('\n')
+        if (writer != null && fileBytes > 0 && fileBytes + line.length > maxFileBytes) {
+            rotate()
+        }
+        val writer = this.writer ?: openWriter()
+        writer.append(line)
+        fileBytes += line.length
+    }
+
+    private fun openWriter(): BufferedWriter {
+        val file = File(directory, getFileName(0))
+        fileBytes = file.length()
+        val writer = BufferedWriter(
+            OutputStreamWriter(FileOutputStream(file, /* append= */ true), Charsets.UTF_8),
+            WRITE_BUFFER_SIZE
+        )
+        this.writer = writer
+        if (fileBytes == 0L) {
+            writer.append(header)
+            fileBytes += header.length
+        }
+        return writer
+    }
+
+    private fun rotate() {
+        closeWriter()
+        File(directory, getFileName(maxFileCount - 1)).delete()
+        for (i in maxFileCount - 2 downTo 0) {
+            val file = File(directory, getFileName(i))
+            if (file.exists() && !file.renameTo(File(directory, getFileName(i + 1)))) {
+                Log.w(TAG, "Rotating ${file.name} failed")
+            }
+        }
+        rotationCount++
+    }
+
+    private fun closeWriter() {
+        try {
+            writer?.close()
+        } catch (e: IOException) {
+            Log.e(TAG, "Closing the session log failed", e)
+        }
+        writer = null
+    }
+
+    private fun getFileName(index: Int) = if (index == 0) "$baseName.csv" else "$baseName.$index.csv"
+
+    companion object {
+        private const val TAG = "PlayerEventLogger"
+
+        /** The default size from which the current file is rotated, in bytes. */
+        const val DEFAULT_MAX_FILE_BYTES = 1024 * 1024L
+
+        /** The default number of files kept, including the current one. */
+        const val DEFAULT_MAX_FILE_COUNT = 5
+
+        /** The default interval at which queued records are written, in milliseconds. */
+        const val DEFAULT_FLUSH_INTERVAL_MS = 1_000L
+
+        /** The default number of queued records from which new records are dropped. */
+        const val DEFAULT_MAX_PENDING_RECORDS = 64 * 1024
+
+        /**
+         * The columns of the records written by [logPlayerState]: the state of the player, the
+         * duration of the interval the counters cover, and the video decoder counters.
+         */
+        @JvmField
+        val PLAYER_STATE_COLUMNS: List<String> =
+            listOf("play_when_ready", "playback_state", "position_ms", "interval_ms") +
+                DecoderCountersDataStrId.values().map { it.getStr() }
+
+        private const val BATCH_SIZE = 256
+        private const val WRITE_BUFFER_SIZE = 16 * 1024
+    }
 }
@@ -0,0 +1,94 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.max;
+
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+/**
+ * An {@link Allocator} that takes its segments from a {@link SegmentPool} and returns them to it,
+ * so that segments outlive the player that allocated them.
+ *
+ * <p>Like {@link DefaultAllocator}, the allocator keeps free segments up to its target buffer size,
+ * here in the shared pool. Unlike it, {@link #reset()} keeps the pooled segments so that the next
+ * player can reuse them.
+ */
+public final class PooledAllocator implements Allocator {
+
+    private final SegmentPool pool;
+    private final Allocation[] singleAllocationReleaseHolder;
+
+    private int targetBufferSize;
+    private int allocatedCount;
+
+    /** @param pool The pool the segments are taken from. */
+    public PooledAllocator(SegmentPool pool) {
+        this.pool = pool;
+        this.singleAllocationReleaseHolder = new Allocation[1];
+    }
+
+    /** Returns the pool the segments are taken from. */
+    public SegmentPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the target buffer size. A smaller size than before trims the pool.
+     *
+     * @param targetBufferSize The target buffer size, in bytes.
+     * @return The number of pooled bytes released by the trim.
+     */
+    public synchronized int setTargetBufferSize(int targetBufferSize) {
+        boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+        this.targetBufferSize = targetBufferSize;
+        return targetBufferSizeReduced ? trimPool() : 0;
+    }
+
+    /**
+     * Resets the target buffer size. Segments still in use are expected to be released by the
+     * player, and pooled segments are kept for reuse.
+     */
+    public synchronized void reset() {
+        targetBufferSize = 0;
+    }
+
+    @Override
+    public synchronized Allocation allocate() {
+        allocatedCount++;
+        return pool.acquire();
+    }
+
+    @Override
+    public synchronized void release(Allocation allocation) {
+        singleAllocationReleaseHolder[0] = allocation;
+        release(singleAllocationReleaseHolder);
+        singleAllocationReleaseHolder[0] = null;
+    }
+
+    @Override
+    public synchronized void release(Allocation[] allocations) {
+        pool.release(allocations, allocations.length);
+        allocatedCount -= allocations.length;
+    }
+
+    @Override
+    public synchronized void trim() {
+        trimPool();
+    }
+
+    @Override
+    public synchronized int getTotalBytesAllocated() {
+        return allocatedCount * pool.getSegmentSize();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+        return pool.getSegmentSize();
+    }
+
+    private int trimPool() {
+        // Keep free segments up to the target, as DefaultAllocator does.
+        return pool.trim(max(0, targetBufferSize - getTotalBytesAllocated()));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import android.widget.TextView;
+
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.ui.DebugTextViewHelper;
+
+/**
+ * A {@link DebugTextViewHelper} that also shows a line for each of a set of {@link StatsSource
+ * StatsSources}, such as the {@link MediaCache} the player reads from and the connection counters
+ * of the {@link HttpClientProvider}.
+ */
+public class QoeDebugTextViewHelper extends DebugTextViewHelper {
+
+    /** Provides a line of counters for the debug overlay. */
+    public interface StatsSource {
+
+        /** Returns a single line summary of the counters. */
+        String getStatsString();
+    }
+
+    private final StatsSource[] statsSources;
+
+    /**
+     * @param player The {@link SimpleExoPlayer} from which debug information should be obtained.
+     * @param textView The {@link TextView} that should be updated to display the information.
+     * @param statsSources The sources of the lines shown below the player information, in order.
+     */
+    public QoeDebugTextViewHelper(
+            SimpleExoPlayer player, TextView textView, StatsSource... statsSources) {
+        super(player, textView);
+        this.statsSources = statsSources;
+    }
+
+    @Override
+    protected String getDebugString() {
+        StringBuilder debugString = new StringBuilder(super.getDebugString());
+        for (StatsSource statsSource : statsSources) {
+            debugString.append('\n').append(statsSource.getStatsString());
+        }
+        return debugString.toString();
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.util.Assertions;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the QoE metrics of a session up to date over sliding windows of 10 seconds and 1 minute,
+ * and over the whole session.
+ *
+ * <p>Each sliding window is a ring of one-second buckets with a running sum per metric. Time and
+ * counts are added to the current bucket and to the sums; when the window moves on, the bucket
+ * falling out is subtracted from the sums and reused. An event therefore costs at most one pass
+ * over the buckets of a window, however long the session, and reading the metrics only divides the
+ * sums.
+ *
+ * <p>Rebuffering is time spent buffering while playback is wanted, after playback first started
+ * and outside of seeks. The startup itself is measured by {@link StartupTimeline}. The continuity
+ * rate is, as in the README, the rendered and skipped output buffers over the input buffers.
+ *
+ * <p>Must be used on a single thread.
+ */
+public final class QoeMetricsEngine implements QoeDebugTextViewHelper.StatsSource {
+
+    /** The window of the last 10 seconds. */
+    public static final int WINDOW_10_S = 0;
+    /** The window of the last minute. */
+    public static final int WINDOW_1_MIN = 1;
+    /** The whole session. */
+    public static final int WINDOW_SESSION = 2;
+
+    /** The metrics of a window. */
+    public static final class Metrics {
+
+        /** The duration covered by the window, in milliseconds. */
+        public final long durationMs;
+        /** The time spent playing, in milliseconds. */
+        public final long playTimeMs;
+        /** The time spent rebuffering, in milliseconds. */
+        public final long rebufferTimeMs;
+        /** The number of rebuffers that started in the window. */
+        public final int rebufferCount;
+        /** The fraction of the playing and rebuffering time spent rebuffering. */
+        public final float rebufferRatio;
+        /** The output buffers over the input buffers, or 1 if there were no input buffers. */
+        public final float continuityRate;
+        /** The video frames dropped per second. */
+        public final float droppedFramesPerSecond;
+        /** The video input buffers queued per second. */
+        public final float inputBuffersPerSecond;
+
+        private Metrics(long durationMs, long[] sums) {
+            this.durationMs = durationMs;
+            playTimeMs = sums[METRIC_PLAY_MS];
+            rebufferTimeMs = sums[METRIC_REBUFFER_MS];
+            rebufferCount = (int) sums[METRIC_REBUFFER_COUNT];
+            long watchTimeMs = playTimeMs + rebufferTimeMs;
+            rebufferRatio = watchTimeMs > 0 ? (float) rebufferTimeMs / watchTimeMs : 0;
+            long inputBuffers = sums[METRIC_INPUT_BUFFERS];
+            continuityRate =
+                    inputBuffers > 0 ? (float) sums[METRIC_OUTPUT_BUFFERS] / inputBuffers : 1;
+            droppedFramesPerSecond =
+                    durationMs > 0 ? sums[METRIC_DROPPED_BUFFERS] * 1000f / durationMs : 0;
+            inputBuffersPerSecond = durationMs > 0 ? inputBuffers * 1000f / durationMs : 0;
+        }
+    }
+
+    private static final int METRIC_PLAY_MS = 0;
+    private static final int METRIC_REBUFFER_MS = 1;
+    private static final int METRIC_REBUFFER_COUNT = 2;
+    private static final int METRIC_INPUT_BUFFERS = 3;
+    private static final int METRIC_OUTPUT_BUFFERS = 4;
+    private static final int METRIC_DROPPED_BUFFERS = 5;
+    private static final int METRIC_COUNT = 6;
+
+    private static final int ACTIVITY_NONE = 0;
+    private static final int ACTIVITY_PLAYING = 1;
+    private static final int ACTIVITY_REBUFFERING = 2;
+
+    private static final long BUCKET_MS = 1_000;
+
+    private final Window[] windows;
+    private final long[] sessionSums;
+
+    private long sessionStartMs;
+    private long lastUpdateMs;
+    private int activity;
+    private boolean started;
+    private boolean seeking;
+
+    public QoeMetricsEngine() {
+        windows = new Window[] {new Window(10_000), new Window(60_000)};
+        sessionSums = new long[METRIC_COUNT];
+        sessionStartMs = C.TIME_UNSET;
+        lastUpdateMs = C.TIME_UNSET;
+    }
+
+    /**
+     * Updates the activity of the player.
+     *
+     * @param nowMs The current time, in milliseconds, on a monotonic clock.
+     * @param playbackState The {@link Player.State playback state}.
+     * @param playWhenReady Whether playback is wanted.
+     */
+    public void onPlayerStateChanged(long nowMs, @Player.State int playbackState,
+            boolean playWhenReady) {
+        update(nowMs);
+        int newActivity = ACTIVITY_NONE;
+        if (playbackState == Player.STATE_READY && playWhenReady) {
+            newActivity = ACTIVITY_PLAYING;
+            started = true;
+            seeking = false;
+        } else if (playbackState == Player.STATE_BUFFERING && playWhenReady && started
+                && !seeking) {
+            newActivity = ACTIVITY_REBUFFERING;
+        }
+        if (playbackState != Player.STATE_BUFFERING) {
+            seeking = false;
+        }
+        if (newActivity == ACTIVITY_REBUFFERING && activity != ACTIVITY_REBUFFERING) {
+            add(METRIC_REBUFFER_COUNT, 1, nowMs / BUCKET_MS);
+        }
+        activity = newActivity;
+    }
+
+    /**
+     * Notes a seek, so that the buffering until playback resumes is not counted as rebuffering.
+     *
+     * @param nowMs The current time, in milliseconds, on a monotonic clock.
+     */
+    public void onSeek(long nowMs) {
+        update(nowMs);
+        seeking = true;
+        if (activity == ACTIVITY_REBUFFERING) {
+            activity = ACTIVITY_NONE;
+        }
+    }
+
+    /**
+     * Adds the increase of the video decoder counters over an interval ending now.
+     *
+     * @param nowMs The current time, in milliseconds, on a monotonic clock.
+     * @param videoDeltas The increase of the video decoder counters.
+     */
+    public void onDecoderCounters(long nowMs, DecoderCountersData videoDeltas) {
+        update(nowMs);
+        // The interval ends now, so it goes in the bucket of its last millisecond.
+        long bucket = (nowMs - 1) / BUCKET_MS;
+        add(METRIC_INPUT_BUFFERS, videoDeltas.getInputBufferCount(), bucket);
+        add(METRIC_OUTPUT_BUFFERS,
+                videoDeltas.getRenderedOutputBufferCount()
+                        + videoDeltas.getSkippedOutputBufferCount(),
+                bucket);
+        add(METRIC_DROPPED_BUFFERS, videoDeltas.getDroppedBufferCount(), bucket);
+    }
+
+    /**
+     * Moves the windows on to the given time, attributing the time since the previous update to
+     * the current activity.
+     *
+     * @param nowMs The current time, in milliseconds, on a monotonic clock.
+     */
+    public void update(long nowMs) {
+        if (lastUpdateMs == C.TIME_UNSET) {
+            sessionStartMs = nowMs;
+            lastUpdateMs = nowMs;
+            for (Window window : windows) {
+                window.advanceTo(nowMs / BUCKET_MS);
+            }
+            return;
+        }
+        if (nowMs <= lastUpdateMs) {
+            return;
+        }
+        int metric = activity == ACTIVITY_PLAYING ? METRIC_PLAY_MS
+                : activity == ACTIVITY_REBUFFERING ? METRIC_REBUFFER_MS : C.INDEX_UNSET;
+        long timeMs = lastUpdateMs;
+        // Time older than the longest window only counts towards the session.
+        long longestWindowMs = windows[windows.length - 1].windowMs + BUCKET_MS;
+        if (nowMs - timeMs > longestWindowMs) {
+            long skippedMs = nowMs - longestWindowMs - timeMs;
+            if (metric != C.INDEX_UNSET) {
+                sessionSums[metric] += skippedMs;
+            }
+            timeMs += skippedMs;
+        }
+        while (timeMs < nowMs) {
+            long bucket = timeMs / BUCKET_MS;
+            long endMs = min((bucket + 1) * BUCKET_MS, nowMs);
+            for (Window window : windows) {
+                window.advanceTo(bucket);
+                if (metric != C.INDEX_UNSET) {
+                    window.add(metric, endMs - timeMs, bucket);
+                }
+            }
+            if (metric != C.INDEX_UNSET) {
+                sessionSums[metric] += endMs - timeMs;
+            }
+            timeMs = endMs;
+        }
+        for (Window window : windows) {
+            window.advanceTo(nowMs / BUCKET_MS);
+        }
+        lastUpdateMs = nowMs;
+    }
+
+    /**
+     * Returns the metrics of a window as of the latest update.
+     *
+     * @param window One of {@link #WINDOW_10_S}, {@link #WINDOW_1_MIN} and {@link
+     *     #WINDOW_SESSION}.
+     */
+    public Metrics getMetrics(int window) {
+        long sessionDurationMs =
+                lastUpdateMs == C.TIME_UNSET ? 0 : lastUpdateMs - sessionStartMs;
+        if (window == WINDOW_SESSION) {
+            return new Metrics(sessionDurationMs, sessionSums);
+        }
+        Assertions.checkArgument(window == WINDOW_10_S || window == WINDOW_1_MIN);
+        Window slidingWindow = windows[window];
+        // The newest bucket is only partly covered.
+        long windowMs = slidingWindow.windowMs + lastUpdateMs % BUCKET_MS;
+        return new Metrics(min(sessionDurationMs, windowMs), slidingWindow.sums);
+    }
+
+    @Override
+    public String getStatsString() {
+        Metrics last10s = getMetrics(WINDOW_10_S);
+        Metrics last1min = getMetrics(WINDOW_1_MIN);
+        Metrics session = getMetrics(WINDOW_SESSION);
+        return String.format(
+                Locale.US,
+                "qoe rebuf 10s:%.1f%% 1m:%.1f%% all:%.1f%%(%d) cont 1m:%.3f drop/s 10s:%.1f",
+                last10s.rebufferRatio * 100,
+                last1min.rebufferRatio * 100,
+                session.rebufferRatio * 100,
+                session.rebufferCount,
+                last1min.continuityRate,
+                last10s.droppedFramesPerSecond);
+    }
+
+    private void add(int metric, long value, long bucket) {
+        for (Window window : windows) {
+            window.add(metric, value, bucket);
+        }
+        sessionSums[metric] += value;
+    }
+
+    /**
+     * A sliding window of one-second buckets. It holds one bucket more than its duration, since
+     * the newest bucket is only partly over.
+     */
+    private static final class Window {
+
+        private final long windowMs;
+        private final int bucketCount;
+        private final long[] buckets;
+        private final long[] sums;
+
+        private long currentBucket;
+
+        public Window(long windowMs) {
+            this.windowMs = windowMs;
+            this.bucketCount = (int) (windowMs / BUCKET_MS) + 1;
+            this.buckets = new long[bucketCount * METRIC_COUNT];
+            this.sums = new long[METRIC_COUNT];
+            this.currentBucket = C.TIME_UNSET;
+        }
+
+        /** Moves the window on so that the given bucket is its newest. */
+        public void advanceTo(long bucket) {
+            if (currentBucket == C.TIME_UNSET || bucket - currentBucket >= bucketCount) {
+                Arrays.fill(buckets, 0);
+                Arrays.fill(sums, 0);
+                currentBucket = max(bucket, currentBucket);
+                return;
+            }
+            while (currentBucket < bucket) {
+                currentBucket++;
+                int offset = (int) (currentBucket % bucketCount) * METRIC_COUNT;
+                for (int metric = 0; metric < METRIC_COUNT; metric++) {
+                    sums[metric] -= buckets[offset + metric];
+                    buckets[offset + metric] = 0;
+                }
+            }
+        }
+
+        /** Adds a value to a bucket, which is ignored if it is no longer in the window. */
+        public void add(int metric, long value, long bucket) {
+            if (bucket <= currentBucket - bucketCount || bucket > currentBucket) {
+                return;
+            }
+            buckets[(int) (bucket % bucketCount) * METRIC_COUNT + metric] += value;
+            sums[metric] += value;
+        }
+    }
+}
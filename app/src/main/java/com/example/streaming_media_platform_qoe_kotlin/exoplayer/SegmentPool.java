@@ -0,0 +1,163 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.util.Assertions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A process-wide pool of buffer segments of a fixed size, shared by the {@link PooledAllocator}
+ * instances of successive players.
+ *
+ * <p>Segments released by a player are kept, up to a maximum number of pooled bytes, and handed to
+ * the next allocation instead of being left to the garbage collector. This keeps the segments of a
+ * released player available to the player created next, so that restarting playback does not
+ * allocate its buffer again.
+ *
+ * <p>{@link Allocation} requires a Java array, so the segments live on the Java heap.
+ */
+public final class SegmentPool {
+
+    /** The default maximum number of bytes kept in a pool. */
+    public static final int DEFAULT_MAX_POOLED_BYTES = CustomLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+
+    private static final HashMap<Integer, SegmentPool> sharedInstances = new HashMap<>();
+
+    private final int segmentSize;
+    private final int maxPooledSegmentCount;
+
+    private Allocation[] pooledSegments;
+    private int pooledSegmentCount;
+    private int outstandingSegmentCount;
+    private int highWaterSegmentCount;
+    private long allocationCount;
+    private long reuseCount;
+
+    /**
+     * Returns the process-wide pool of segments of the given size, holding at most {@link
+     * #DEFAULT_MAX_POOLED_BYTES}.
+     *
+     * @param segmentSize The size of the segments, in bytes.
+     * @return The pool.
+     */
+    public static SegmentPool getSharedInstance(int segmentSize) {
+        synchronized (sharedInstances) {
+            SegmentPool pool = sharedInstances.get(segmentSize);
+            if (pool == null) {
+                pool = new SegmentPool(segmentSize, DEFAULT_MAX_POOLED_BYTES);
+                sharedInstances.put(segmentSize, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Releases the pooled segments of all process-wide pools. Segments in use are not affected.
+     *
+     * @return The number of bytes released.
+     */
+    public static int trimSharedInstances() {
+        int freedBytes = 0;
+        synchronized (sharedInstances) {
+            for (SegmentPool pool : sharedInstances.values()) {
+                freedBytes += pool.trim(0);
+            }
+        }
+        return freedBytes;
+    }
+
+    /**
+     * @param segmentSize The size of the segments, in bytes.
+     * @param maxPooledBytes The maximum number of bytes of unused segments kept in the pool.
+     */
+    public SegmentPool(int segmentSize, int maxPooledBytes) {
+        Assertions.checkArgument(segmentSize > 0, "segmentSize must be positive");
+        Assertions.checkArgument(maxPooledBytes >= 0, "maxPooledBytes cannot be negative");
+        this.segmentSize = segmentSize;
+        this.maxPooledSegmentCount = maxPooledBytes / segmentSize;
+        this.pooledSegments = new Allocation[0];
+    }
+
+    /** Returns the size of the segments, in bytes. */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /** Returns the number of segments handed out since the pool was created. */
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    /** Returns the number of segments handed out from the pool rather than newly created. */
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    /** Returns the number of bytes of unused segments currently kept in the pool. */
+    public synchronized int getPooledBytes() {
+        return pooledSegmentCount * segmentSize;
+    }
+
+    /** Returns the number of bytes of segments currently in use. */
+    public synchronized int getOutstandingBytes() {
+        return outstandingSegmentCount * segmentSize;
+    }
+
+    /** Returns the largest number of bytes of segments that were in use at the same time. */
+    public synchronized int getHighWaterBytes() {
+        return highWaterSegmentCount * segmentSize;
+    }
+
+    /** Returns a segment, reusing a pooled one if available. */
+    public synchronized Allocation acquire() {
+        allocationCount++;
+        outstandingSegmentCount++;
+        highWaterSegmentCount = max(highWaterSegmentCount, outstandingSegmentCount);
+        if (pooledSegmentCount > 0) {
+            reuseCount++;
+            Allocation segment = pooledSegments[--pooledSegmentCount];
+            pooledSegments[pooledSegmentCount] = null;
+            return segment;
+        }
+        return new Allocation(new byte[segmentSize], 0);
+    }
+
+    /**
+     * Returns segments to the pool. Segments beyond the maximum number of pooled bytes are left to
+     * the garbage collector.
+     *
+     * @param segments The segments, which must have been acquired from this pool.
+     * @param count The number of segments to return, starting from the first.
+     */
+    public synchronized void release(Allocation[] segments, int count) {
+        outstandingSegmentCount -= count;
+        int pooledCount = min(count, maxPooledSegmentCount - pooledSegmentCount);
+        if (pooledCount <= 0) {
+            return;
+        }
+        if (pooledSegmentCount + pooledCount > pooledSegments.length) {
+            int capacity = max(pooledSegments.length * 2, pooledSegmentCount + pooledCount);
+            pooledSegments = Arrays.copyOf(pooledSegments, min(capacity, maxPooledSegmentCount));
+        }
+        System.arraycopy(segments, 0, pooledSegments, pooledSegmentCount, pooledCount);
+        pooledSegmentCount += pooledCount;
+    }
+
+    /**
+     * Releases pooled segments until at most {@code maxPooledBytes} are kept.
+     *
+     * @param maxPooledBytes The maximum number of bytes to keep.
+     * @return The number of bytes released.
+     */
+    public synchronized int trim(int maxPooledBytes) {
+        int keepCount = min(max(maxPooledBytes, 0) / segmentSize, pooledSegmentCount);
+        int freedCount = pooledSegmentCount - keepCount;
+        Arrays.fill(pooledSegments, keepCount, pooledSegmentCount, null);
+        pooledSegmentCount = keepCount;
+        return freedCount * segmentSize;
+    }
+}
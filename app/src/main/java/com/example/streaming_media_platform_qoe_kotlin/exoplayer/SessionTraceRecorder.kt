@@ -0,0 +1,139 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersDataStrId
+import com.example.streaming_media_platform_qoe_kotlin.data_models.Utils
+import com.google.android.exoplayer2.SimpleExoPlayer
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+
+/**
+ * Samples the state of a player at a fixed interval into a [ColumnarTraceWriter].
+ *
+ * Each row holds the time, the playback state, the position, the buffered duration and every
+ * field of the video [DecoderCountersData], under the names in [COLUMNS]. Must be used on the
+ * application thread.
+ *
+ * @param file The trace file.
+ * @param intervalMs The interval between samples, in milliseconds.
+ */
+class SessionTraceRecorder @JvmOverloads constructor(
+    file: File,
+    private val intervalMs: Long = DEFAULT_INTERVAL_MS
+) : Closeable {
+
+    private val writer = ColumnarTraceWriter(file, *COLUMNS)
+    private val handler = Handler(Looper.getMainLooper())
+    private val row = LongArray(COLUMNS.size)
+    private val decoderCounters = DecoderCountersData()
+    private val sampleRunnable = Runnable { sample() }
+    private var player: SimpleExoPlayer? = null
+
+    /** Starts sampling [player], replacing the player sampled so far. */
+    fun start(player: SimpleExoPlayer) {
+        this.player = player
+        handler.removeCallbacks(sampleRunnable)
+        handler.post(sampleRunnable)
+    }
+
+    /** Stops sampling and writes the pending rows to the file. */
+    fun stop() {
+        handler.removeCallbacks(sampleRunnable)
+        player = null
+        try {
+            writer.flush()
+        } catch (e: IOException) {
+            Log.e(TAG, "Writing the session trace failed", e)
+        }
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param decoderCounters The video decoder counters, or null if there is no video decoder.
+     */
+    fun record(
+        timestampMs: Long,
+        playbackState: Int,
+        playWhenReady: Boolean,
+        positionMs: Long,
+        bufferedDurationMs: Long,
+        decoderCounters: DecoderCountersData?
+    ) {
+        row[0] = timestampMs
+        row[1] = playbackState.toLong()
+        row[2] = if (playWhenReady) 1 else 0
+        row[3] = positionMs
+        row[4] = bufferedDurationMs
+        if (decoderCounters == null) {
+            row.fill(0, PLAYER_COLUMN_COUNT)
+        } else {
+            row[5] = decoderCounters.decoderInitCount.toLong()
+            row[6] = decoderCounters.decoderReleaseCount.toLong()
+            row[7] = decoderCounters.inputBufferCount.toLong()
+            row[8] = decoderCounters.skippedInputBufferCount.toLong()
+            row[9] = decoderCounters.renderedOutputBufferCount.toLong()
+            row[10] = decoderCounters.skippedOutputBufferCount.toLong()
+            row[11] = decoderCounters.droppedBufferCount.toLong()
+            row[12] = decoderCounters.maxConsecutiveDroppedBufferCount.toLong()
+            row[13] = decoderCounters.droppedToKeyframeCount.toLong()
+            row[14] = decoderCounters.totalVideoFrameProcessingOffsetUs
+            row[15] = decoderCounters.videoFrameProcessingOffsetCount.toLong()
+        }
+        writer.append(*row)
+    }
+
+    /** Stops sampling, writes the pending rows and closes the file. */
+    override fun close() {
+        stop()
+        try {
+            writer.close()
+        } catch (e: IOException) {
+            Log.e(TAG, "Closing the session trace failed", e)
+        }
+    }
+
+    private fun sample() {
+        val player = this.player ?: return
+        try {
+            record(
+                System.currentTimeMillis(),
+                player.playbackState,
+                player.playWhenReady,
+                player.currentPosition,
+                player.totalBufferedDuration,
+                if (Utils.getGeneralDecoderCountersBufferCountData(player, decoderCounters)) {
+                    decoderCounters
+                } else {
+                    null
+                }
+            )
+        } catch (e: IOException) {
+            Log.e(TAG, "Writing the session trace failed", e)
+            return
+        }
+        handler.postDelayed(sampleRunnable, intervalMs)
+    }
+
+    companion object {
+        private const val TAG = "SessionTraceRecorder"
+        private const val PLAYER_COLUMN_COUNT = 5
+
+        /** The default interval between samples, in milliseconds. */
+        const val DEFAULT_INTERVAL_MS = 1_000L
+
+        /** The names of the columns of the trace. */
+        @JvmField
+        val COLUMNS: Array<String> = arrayOf(
+            "timestampMs",
+            "playbackState",
+            "playWhenReady",
+            "positionMs",
+            "bufferedDurationMs"
+        ) + DecoderCountersDataStrId.values().map { it.getStr() }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import android.view.Surface;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.LoadEventInfo;
+import com.google.android.exoplayer2.source.MediaLoadData;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * Breaks the startup of a playback session down into phases, from the network events of the first
+ * HTTP call and the analytics events of the player.
+ *
+ * <p>All times come from {@link android.os.SystemClock#elapsedRealtime()}, so they are not affected
+ * by changes to the wall clock. Register the timeline with {@code addAnalyticsListener}, pass
+ * {@link #getNetworkEventListener()} to {@link HttpClientProvider#getClient(int, int,
+ * EventListener)}, and call {@link #start()} when the player is created. The phases are:
+ *
+ * <ul>
+ *   <li>{@link #PHASE_PREPARE}: from {@link #start()} to the first load.
+ *   <li>{@link #PHASE_DNS}, {@link #PHASE_CONNECT} and {@link #PHASE_TLS}: the lookup, TCP
+ *       handshake and TLS handshake of the first call. They are unset if the call reused a pooled
+ *       connection.
+ *   <li>{@link #PHASE_TIME_TO_FIRST_BYTE}: from sending the request headers of the first call to
+ *       receiving the response headers.
+ *   <li>{@link #PHASE_SNIFFING}: from the response headers, or the first load if it was served from
+ *       the cache, to the tracks being known, which covers sniffing and parsing the container.
+ *   <li>{@link #PHASE_DECODER_INIT}: the longest decoder initialization. Decoders initialize while
+ *       media keeps loading, so this phase overlaps {@link #PHASE_BUFFERING}.
+ *   <li>{@link #PHASE_BUFFERING}: from the tracks being known to the player being ready.
+ *   <li>{@link #PHASE_FIRST_FRAME}: from the player being ready to the first rendered video frame.
+ *       It is unset for streams without video.
+ * </ul>
+ *
+ * Startup completes at the first rendered frame, or when the player is ready if there is no video.
+ */
+public final class StartupTimeline implements AnalyticsListener {
+
+    /** Listener of completed startups. */
+    public interface Listener {
+
+        /** Called on the application thread once startup of a session completed. */
+        void onStartupCompleted(StartupTimeline startupTimeline);
+    }
+
+    public static final int PHASE_PREPARE = 0;
+    public static final int PHASE_DNS = 1;
+    public static final int PHASE_CONNECT = 2;
+    public static final int PHASE_TLS = 3;
+    public static final int PHASE_TIME_TO_FIRST_BYTE = 4;
+    public static final int PHASE_SNIFFING = 5;
+    public static final int PHASE_DECODER_INIT = 6;
+    public static final int PHASE_BUFFERING = 7;
+    public static final int PHASE_FIRST_FRAME = 8;
+
+    private static final String[] PHASE_NAMES = {
+        "prepare", "dns", "connect", "tls", "ttfb", "sniff", "decoder", "buffering", "first frame"
+    };
+
+    private final Clock clock;
+    private final NetworkEventListener networkEventListener;
+    @Nullable private final Listener listener;
+    private final long[] phaseDurationsMs;
+
+    private long startTimeMs;
+    private long firstLoadTimeMs;
+    private long responseHeadersEndTimeMs;
+    private long tracksTimeMs;
+    private long readyTimeMs;
+    private long firstFrameTimeMs;
+    private boolean hasVideo;
+    private boolean completed;
+
+    /** @param listener A listener of completed startups, or {@code null}. */
+    public StartupTimeline(@Nullable Listener listener) {
+        this(listener, Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a timeline timing the network events with the given {@link Clock}. Should only be
+     * used for testing.
+     *
+     * @param listener A listener of completed startups, or {@code null}.
+     * @param clock The {@link Clock}, which must agree with the times of the analytics events.
+     */
+    public StartupTimeline(@Nullable Listener listener, Clock clock) {
+        this.clock = clock;
+        this.listener = listener;
+        this.networkEventListener = new NetworkEventListener();
+        this.phaseDurationsMs = new long[PHASE_NAMES.length];
+        reset();
+    }
+
+    /** Returns the listener of the network events of the player's HTTP client. */
+    public EventListener getNetworkEventListener() {
+        return networkEventListener;
+    }
+
+    /** Starts timing a new session, discarding the previous one. */
+    public synchronized void start() {
+        reset();
+        startTimeMs = clock.elapsedRealtime();
+    }
+
+    /** Returns whether startup of the current session completed. */
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the duration of a phase, in milliseconds, or {@link C#TIME_UNSET} if it did not
+     * happen.
+     *
+     * @param phase One of the {@code PHASE_*} constants.
+     */
+    public synchronized long getPhaseDurationMs(int phase) {
+        return phaseDurationsMs[phase];
+    }
+
+    /**
+     * Returns the time from {@link #start()} to the completion of startup, in milliseconds, or
+     * {@link C#TIME_UNSET} if startup did not complete.
+     */
+    public synchronized long getTotalDurationMs() {
+        if (!completed) {
+            return C.TIME_UNSET;
+        }
+        return (firstFrameTimeMs != C.TIME_UNSET ? firstFrameTimeMs : readyTimeMs) - startTimeMs;
+    }
+
+    /** Returns a single line summary of the phases, in milliseconds. */
+    public synchronized String getSummaryString() {
+        StringBuilder summary = new StringBuilder("startup ");
+        long totalDurationMs = getTotalDurationMs();
+        summary.append(totalDurationMs != C.TIME_UNSET ? totalDurationMs + "ms" : "-");
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            summary.append(i == 0 ? ": " : ", ").append(PHASE_NAMES[i]).append(' ');
+            summary.append(phaseDurationsMs[i] != C.TIME_UNSET ? phaseDurationsMs[i] : "-");
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public synchronized void onLoadStarted(
+            EventTime eventTime, LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData) {
+        if (startTimeMs == C.TIME_UNSET || firstLoadTimeMs != C.TIME_UNSET) {
+            return;
+        }
+        firstLoadTimeMs = eventTime.realtimeMs;
+        phaseDurationsMs[PHASE_PREPARE] = firstLoadTimeMs - startTimeMs;
+    }
+
+    @Override
+    public synchronized void onTracksChanged(
+            EventTime eventTime, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+        if (startTimeMs == C.TIME_UNSET
+                || tracksTimeMs != C.TIME_UNSET
+                || trackGroups.length == 0) {
+            return;
+        }
+        tracksTimeMs = eventTime.realtimeMs;
+        long sniffStartTimeMs = responseHeadersEndTimeMs != C.TIME_UNSET
+                ? responseHeadersEndTimeMs
+                : firstLoadTimeMs;
+        if (sniffStartTimeMs != C.TIME_UNSET) {
+            phaseDurationsMs[PHASE_SNIFFING] = tracksTimeMs - sniffStartTimeMs;
+        }
+        for (int i = 0; i < trackGroups.length; i++) {
+            String sampleMimeType = trackGroups.get(i).getFormat(0).sampleMimeType;
+            hasVideo |= MimeTypes.isVideo(sampleMimeType);
+        }
+    }
+
+    @Override
+    public void onVideoDecoderInitialized(
+            EventTime eventTime,
+            String decoderName,
+            long initializedTimestampMs,
+            long initializationDurationMs) {
+        onDecoderInitialized(initializationDurationMs);
+    }
+
+    @Override
+    public void onAudioDecoderInitialized(
+            EventTime eventTime,
+            String decoderName,
+            long initializedTimestampMs,
+            long initializationDurationMs) {
+        onDecoderInitialized(initializationDurationMs);
+    }
+
+    @Override
+    public synchronized void onPlaybackStateChanged(EventTime eventTime, int state) {
+        if (startTimeMs == C.TIME_UNSET
+                || state != Player.STATE_READY
+                || readyTimeMs != C.TIME_UNSET) {
+            return;
+        }
+        readyTimeMs = eventTime.realtimeMs;
+        if (tracksTimeMs != C.TIME_UNSET) {
+            phaseDurationsMs[PHASE_BUFFERING] = readyTimeMs - tracksTimeMs;
+        }
+        if (!hasVideo) {
+            complete();
+        } else if (firstFrameTimeMs != C.TIME_UNSET) {
+            // The first frame can be rendered before the player reports it is ready.
+            phaseDurationsMs[PHASE_FIRST_FRAME] = Math.max(0, firstFrameTimeMs - readyTimeMs);
+            complete();
+        }
+    }
+
+    @Override
+    public synchronized void onRenderedFirstFrame(EventTime eventTime, @Nullable Surface surface) {
+        if (startTimeMs == C.TIME_UNSET || firstFrameTimeMs != C.TIME_UNSET) {
+            return;
+        }
+        firstFrameTimeMs = eventTime.realtimeMs;
+        if (readyTimeMs != C.TIME_UNSET) {
+            phaseDurationsMs[PHASE_FIRST_FRAME] = Math.max(0, firstFrameTimeMs - readyTimeMs);
+            complete();
+        }
+    }
+
+    private synchronized void onDecoderInitialized(long initializationDurationMs) {
+        if (startTimeMs == C.TIME_UNSET || completed) {
+            return;
+        }
+        phaseDurationsMs[PHASE_DECODER_INIT] =
+                Math.max(phaseDurationsMs[PHASE_DECODER_INIT], initializationDurationMs);
+    }
+
+    private void complete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (listener != null) {
+            listener.onStartupCompleted(this);
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(phaseDurationsMs, C.TIME_UNSET);
+        startTimeMs = C.TIME_UNSET;
+        firstLoadTimeMs = C.TIME_UNSET;
+        responseHeadersEndTimeMs = C.TIME_UNSET;
+        tracksTimeMs = C.TIME_UNSET;
+        readyTimeMs = C.TIME_UNSET;
+        firstFrameTimeMs = C.TIME_UNSET;
+        hasVideo = false;
+        completed = false;
+        networkEventListener.reset();
+    }
+
+    /** Times the phases of the first call of the session. Calls run on OkHttp threads. */
+    private final class NetworkEventListener extends EventListener {
+
+        @Nullable private Call firstCall;
+        private long dnsStartTimeMs;
+        private long connectStartTimeMs;
+        private long secureConnectStartTimeMs;
+        private long requestHeadersStartTimeMs;
+
+        private void reset() {
+            firstCall = null;
+            dnsStartTimeMs = C.TIME_UNSET;
+            connectStartTimeMs = C.TIME_UNSET;
+            secureConnectStartTimeMs = C.TIME_UNSET;
+            requestHeadersStartTimeMs = C.TIME_UNSET;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            synchronized (StartupTimeline.this) {
+                if (startTimeMs != C.TIME_UNSET && firstCall == null) {
+                    firstCall = call;
+                }
+            }
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall) {
+                    dnsStartTimeMs = clock.elapsedRealtime();
+                }
+            }
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall && dnsStartTimeMs != C.TIME_UNSET) {
+                    phaseDurationsMs[PHASE_DNS] = clock.elapsedRealtime() - dnsStartTimeMs;
+                }
+            }
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall) {
+                    connectStartTimeMs = clock.elapsedRealtime();
+                }
+            }
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall) {
+                    secureConnectStartTimeMs = clock.elapsedRealtime();
+                }
+            }
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall && secureConnectStartTimeMs != C.TIME_UNSET) {
+                    phaseDurationsMs[PHASE_TLS] =
+                            clock.elapsedRealtime() - secureConnectStartTimeMs;
+                }
+            }
+        }
+
+        @Override
+        public void connectEnd(
+                Call call,
+                InetSocketAddress inetSocketAddress,
+                Proxy proxy,
+                @Nullable Protocol protocol) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall && connectStartTimeMs != C.TIME_UNSET) {
+                    // The TLS handshake runs within the connect phase, so exclude it.
+                    long tlsDurationMs = Math.max(phaseDurationsMs[PHASE_TLS], 0);
+                    phaseDurationsMs[PHASE_CONNECT] =
+                            clock.elapsedRealtime() - connectStartTimeMs - tlsDurationMs;
+                }
+            }
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall) {
+                    requestHeadersStartTimeMs = clock.elapsedRealtime();
+                }
+            }
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall && requestHeadersStartTimeMs != C.TIME_UNSET) {
+                    phaseDurationsMs[PHASE_TIME_TO_FIRST_BYTE] =
+                            clock.elapsedRealtime() - requestHeadersStartTimeMs;
+                }
+            }
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            synchronized (StartupTimeline.this) {
+                if (call == firstCall) {
+                    responseHeadersEndTimeMs = clock.elapsedRealtime();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import static java.lang.Math.min;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speculatively writes the head of a stream to a {@link MediaCache} before the player is created.
+ *
+ * <p>The player reads through the same cache, so it starts from the prefetched bytes instead of
+ * waiting for the network. At most a fixed number of bytes is prefetched per stream, as the bitrate
+ * is unknown before the media is parsed. Prefetching a new URL cancels the previous prefetch, and
+ * what was written so far stays in the cache. Streams the server sends without a length, such as
+ * live streams, are not prefetched.
+ */
+public final class StreamPrefetcher {
+
+    /** The default number of bytes prefetched from the head of a stream. */
+    public static final int DEFAULT_PREFETCH_BYTES = 2 * 1024 * 1024;
+
+    private static final String TAG = "StreamPrefetcher";
+
+    private static final int READ_BUFFER_SIZE = 32 * 1024;
+
+    private final CacheDataSource.Factory cacheDataSourceFactory;
+    private final int prefetchBytes;
+    private final ExecutorService executorService;
+
+    @Nullable private String currentUrl;
+    @Nullable private PrefetchTask currentTask;
+
+    /**
+     * @param mediaCache The cache the player reads from.
+     * @param upstreamFactory The factory of the data sources reading from the network.
+     * @param prefetchBytes The maximum number of bytes prefetched from the head of a stream.
+     */
+    public StreamPrefetcher(
+            MediaCache mediaCache, DataSource.Factory upstreamFactory, int prefetchBytes) {
+        Assertions.checkArgument(prefetchBytes > 0, "prefetchBytes must be positive");
+        this.cacheDataSourceFactory = mediaCache.createDataSourceFactory(upstreamFactory);
+        this.prefetchBytes = prefetchBytes;
+        this.executorService = Util.newSingleThreadExecutor("StreamPrefetcher");
+    }
+
+    /**
+     * Starts prefetching the head of the stream at {@code url}, cancelling the prefetch of any
+     * other URL. Does nothing if {@code url} is already being prefetched, or is not an HTTP(S) URL.
+     *
+     * @param url The URL of the stream.
+     */
+    public synchronized void prefetch(String url) {
+        if (url.equals(currentUrl)) {
+            return;
+        }
+        cancel();
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return;
+        }
+        // Request the whole stream, as the player does, and stop reading at prefetchBytes. A
+        // bounded request would be cached even if the server does not send a length.
+        DataSpec dataSpec =
+                new DataSpec.Builder()
+                        .setUri(uri)
+                        .setFlags(DataSpec.FLAG_DONT_CACHE_IF_LENGTH_UNKNOWN)
+                        .build();
+        currentUrl = url;
+        currentTask = new PrefetchTask(dataSpec);
+        executorService.execute(currentTask);
+    }
+
+    /** Cancels the current prefetch, if any. The bytes already prefetched stay in the cache. */
+    public synchronized void cancel() {
+        if (currentTask != null) {
+            currentTask.cancel();
+            currentTask = null;
+        }
+        currentUrl = null;
+    }
+
+    /** Cancels the current prefetch and releases the prefetch thread. */
+    public synchronized void release() {
+        cancel();
+        executorService.shutdown();
+    }
+
+    /**
+     * Waits for the prefetch thread to stop after {@link #release()}, for at most {@code timeoutMs}
+     * milliseconds. Blocks on the network, so it must not be called on the application thread.
+     *
+     * @param timeoutMs The maximum time to wait, in milliseconds.
+     * @return Whether the prefetch thread stopped.
+     */
+    public boolean awaitTermination(long timeoutMs) {
+        try {
+            return executorService.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private final class PrefetchTask implements Runnable {
+
+        private final DataSpec dataSpec;
+
+        private volatile boolean canceled;
+
+        private PrefetchTask(DataSpec dataSpec) {
+            this.dataSpec = dataSpec;
+        }
+
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public void run() {
+            if (canceled) {
+                return;
+            }
+            DataSource dataSource = cacheDataSourceFactory.createDataSource();
+            long bytesRead = 0;
+            try {
+                long length = dataSource.open(dataSpec);
+                if (length == C.LENGTH_UNSET) {
+                    // A live stream, which must not be cached: its head is stale by the time the
+                    // player reads it, and the player could not resume it at the prefetched offset.
+                    Log.d(TAG, "Skipped prefetch of " + dataSpec.uri + " of unknown length");
+                    return;
+                }
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                while (!canceled && bytesRead < prefetchBytes) {
+                    int bytesToRead = (int) min(buffer.length, prefetchBytes - bytesRead);
+                    int result = dataSource.read(buffer, 0, bytesToRead);
+                    if (result == C.RESULT_END_OF_INPUT) {
+                        break;
+                    }
+                    bytesRead += result;
+                }
+                Log.d(TAG, (canceled ? "Canceled prefetch at " : "Prefetched ") + bytesRead
+                        + " bytes of " + dataSpec.uri);
+            } catch (IOException e) {
+                // The player loads the stream itself, so a failed prefetch only loses time.
+                Log.w(TAG, "Prefetch of " + dataSpec.uri + " failed", e);
+            } finally {
+                // Closing the data source commits what was read so far to the cache.
+                Util.closeQuietly(dataSource);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.streaming_media_platform_qoe_kotlin
+
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersDataBenchmark
+import com.example.streaming_media_platform_qoe_kotlin.exoplayer.CustomLoadControlBenchmark
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.profile.GCProfiler
+import org.openjdk.jmh.results.format.ResultFormatType
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.OptionsBuilder
+import org.openjdk.jmh.runner.options.TimeValue
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs the JMH benchmarks of the hot paths of the playback thread, reporting the throughput and,
+ * through the GC profiler, the bytes allocated per operation.
+ *
+ * The benchmarks take minutes, so they are skipped unless Gradle is given the `benchmark`
+ * property:
+ *
+ * ```
+ * ./gradlew :app:testDebugUnitTest --tests '*HotPathBenchmarkTest' -Pbenchmark
+ * ```
+ *
+ * The results are also written as JSON to `app/build/reports/benchmarks/results.json`, which can
+ * be compared between builds to catch regressions.
+ */
+class HotPathBenchmarkTest {
+
+    @Test
+    fun runBenchmarks() {
+        val resultsPath = System.getProperty(RESULTS_PROPERTY)
+        assumeTrue("Run with -Pbenchmark to benchmark the hot paths", resultsPath != null)
+        File(resultsPath!!).parentFile?.mkdirs()
+
+        val options = OptionsBuilder()
+            .include(CustomLoadControlBenchmark::class.java.name)
+            .include(DecoderCountersDataBenchmark::class.java.name)
+            .mode(Mode.Throughput)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .forks(1)
+            .addProfiler(GCProfiler::class.java)
+            .resultFormat(ResultFormatType.JSON)
+            .result(resultsPath)
+            .build()
+        val results = Runner(options).run()
+
+        assertTrue(results.isNotEmpty())
+    }
+
+    companion object {
+        /** The system property Gradle sets to the path of the results with `-Pbenchmark`. */
+        private const val RESULTS_PROPERTY = "qoe.benchmark.results"
+    }
+}
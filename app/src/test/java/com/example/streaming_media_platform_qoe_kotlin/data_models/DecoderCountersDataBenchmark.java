@@ -0,0 +1,80 @@
+package com.example.streaming_media_platform_qoe_kotlin.data_models;
+
+import com.google.android.exoplayer2.decoder.DecoderCounters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the decoder counter snapshots taken on every sample and log line.
+ *
+ * <p>{@link Utils} needs a player to read the counters from, so the snapshot benchmarks perform
+ * what its two overloads do once they have the {@link DecoderCounters}: creating a new {@link
+ * DecoderCountersData}, or copying into a reused one.
+ */
+@State(Scope.Thread)
+public class DecoderCountersDataBenchmark {
+
+    private DecoderCounters counters;
+    private DecoderCountersData snapshot;
+    private DecoderCountersData previous;
+    private DecoderCountersData deltas;
+
+    @Setup
+    public void setUp() {
+        counters = new DecoderCounters();
+        counters.decoderInitCount = 1;
+        counters.inputBufferCount = 18_000;
+        counters.renderedOutputBufferCount = 17_950;
+        counters.skippedOutputBufferCount = 20;
+        counters.droppedBufferCount = 30;
+        counters.maxConsecutiveDroppedBufferCount = 4;
+        counters.totalVideoFrameProcessingOffsetUs = 9_000_000;
+        counters.videoFrameProcessingOffsetCount = 17_950;
+        snapshot = new DecoderCountersData();
+        snapshot.set(counters);
+        previous = new DecoderCountersData();
+        deltas = new DecoderCountersData();
+    }
+
+    @Benchmark
+    public String toStringOfSnapshot() {
+        return snapshot.toString();
+    }
+
+    @Benchmark
+    public DecoderCountersData newSnapshot() {
+        counters.ensureUpdated();
+        return new DecoderCountersData(
+                counters.decoderInitCount,
+                counters.decoderReleaseCount,
+                counters.inputBufferCount,
+                counters.skippedInputBufferCount,
+                counters.renderedOutputBufferCount,
+                counters.skippedOutputBufferCount,
+                counters.droppedBufferCount,
+                counters.maxConsecutiveDroppedBufferCount,
+                counters.droppedToKeyframeCount,
+                counters.totalVideoFrameProcessingOffsetUs,
+                counters.videoFrameProcessingOffsetCount);
+    }
+
+    @Benchmark
+    public DecoderCountersData reusedSnapshot() {
+        snapshot.set(counters);
+        return snapshot;
+    }
+
+    @Benchmark
+    public DecoderCountersData snapshotDelta() {
+        previous.set(snapshot);
+        counters.inputBufferCount += 30;
+        counters.renderedOutputBufferCount += 29;
+        counters.droppedBufferCount += 1;
+        snapshot.set(counters);
+        deltas.setDelta(snapshot, previous);
+        return deltas;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.streaming_media_platform_qoe_kotlin.data_models
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/** Scores synthetic sessions with [QoeScore]. */
+class QoeScoreTest {
+
+    /** Plays [seconds] seconds at 30 fps and [bitrate], dropping [droppedPerSecond] frames. */
+    private fun QoeScore.play(seconds: Int, bitrate: Int, droppedPerSecond: Int = 0) {
+        repeat(seconds) { onMediaInterval(1_000, bitrate, 30 - droppedPerSecond, droppedPerSecond) }
+    }
+
+    @Test
+    fun emptySession_scoresHighest() {
+        assertEquals(QoeScore.MAX_SCORE, QoeScore().getScore(), 0.0)
+    }
+
+    @Test
+    fun bitrate_mapsOnLogScale() {
+        val weights = QoeScore.Weights(minQualityBitrate = 250_000, maxQualityBitrate = 4_000_000)
+        val lowest = QoeScore(weights).apply { play(10, 250_000) }
+        val middle = QoeScore(weights).apply { play(10, 1_000_000) }
+        val highest = QoeScore(weights).apply { play(10, 8_000_000) }
+
+        assertEquals(1.0, lowest.getVideoQuality(), 1e-9)
+        assertEquals(3.0, middle.getVideoQuality(), 1e-9)
+        assertEquals(5.0, highest.getVideoQuality(), 1e-9)
+    }
+
+    @Test
+    fun badIntervals_weighMoreThanTheirDuration() {
+        val score = QoeScore()
+        score.play(10, bitrate = 8_000_000)
+        score.play(10, bitrate = 300_000)
+
+        assertTrue(score.getVideoQuality() < 3.0)
+        assertEquals(20_000L, score.mediaDurationMs)
+    }
+
+    @Test
+    fun droppedFrames_lowerQuality() {
+        val clean = QoeScore().apply { play(10, 8_000_000) }
+        val dropping = QoeScore().apply { play(10, 8_000_000, droppedPerSecond = 3) }
+
+        assertEquals(5.0, clean.getVideoQuality(), 1e-9)
+        assertEquals(5.0 - 0.8, dropping.getVideoQuality(), 1e-9)
+    }
+
+    @Test
+    fun startupAndStalls_lowerScore() {
+        val score = QoeScore()
+        score.play(60, 8_000_000)
+        score.setStartupDelay(2_000)
+        val afterStartup = score.getScore()
+        score.setStalls(1, 5_000)
+        val afterStall = score.getScore()
+        score.setStalls(3, 15_000)
+        val afterMoreStalls = score.getScore()
+
+        assertEquals(4.58, afterStartup, 0.01)
+        assertEquals(3.30, afterStall, 0.01)
+        assertTrue(afterMoreStalls < afterStall)
+        assertTrue(afterMoreStalls >= QoeScore.MIN_SCORE)
+    }
+
+    @Test
+    fun weights_areConfigurable() {
+        val lenient = QoeScore(QoeScore.Weights(stallCountWeight = 0.0, stallDurationWeight = 0.0))
+        lenient.play(10, 8_000_000)
+        lenient.setStalls(5, 30_000)
+
+        assertEquals(QoeScore.MAX_SCORE, lenient.getScore(), 1e-9)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun invalidBitrateRange_throws() {
+        QoeScore.Weights(minQualityBitrate = 1_000_000, maxQualityBitrate = 500_000)
+    }
+}
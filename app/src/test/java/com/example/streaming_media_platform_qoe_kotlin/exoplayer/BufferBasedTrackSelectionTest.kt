@@ -0,0 +1,102 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.google.android.exoplayer2.Format
+import com.google.android.exoplayer2.source.TrackGroup
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/** Drives [BufferBasedTrackSelection] with synthetic buffer levels and throughput estimates. */
+class BufferBasedTrackSelectionTest {
+
+    companion object {
+        private const val MIN_BUFFER_MS = 15_000
+        private const val MAX_BUFFER_MS = 50_000
+        private val BITRATES = intArrayOf(500_000, 1_000_000, 2_000_000, 4_000_000)
+    }
+
+    private val bandwidthMeter = FakeBandwidthMeter()
+    private val abrStats = BufferBasedTrackSelection.AbrStats()
+
+    private fun buildSelection(): BufferBasedTrackSelection {
+        val loadControl = CustomLoadControl.Builder()
+            .setBufferDurationsMs(MIN_BUFFER_MS, MAX_BUFFER_MS, 2_500, 5_000)
+            .build()
+        loadControl.onPrepared()
+        val formats = BITRATES.map { Format.Builder().setPeakBitrate(it).build() }
+        return BufferBasedTrackSelection(
+            TrackGroup(*formats.toTypedArray()),
+            BITRATES.indices.toList().toIntArray(),
+            bandwidthMeter,
+            loadControl,
+            BufferBasedTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+            abrStats
+        )
+    }
+
+    private fun BufferBasedTrackSelection.update(bufferedDurationMs: Long) {
+        updateSelectedTrack(
+            0, bufferedDurationMs * 1000, 0, emptyList(), arrayOf<MediaChunkIterator>()
+        )
+    }
+
+    @Test
+    fun initialSelection_usesThroughput() {
+        bandwidthMeter.bitrateEstimate = 3_000_000
+
+        val selection = buildSelection()
+
+        assertEquals(2_000_000, selection.selectedFormat.bitrate)
+    }
+
+    @Test
+    fun belowLowWatermark_usesThroughput() {
+        bandwidthMeter.bitrateEstimate = 10_000_000
+        val selection = buildSelection()
+        bandwidthMeter.bitrateEstimate = 600_000
+
+        selection.update(bufferedDurationMs = 5_000)
+
+        assertEquals(500_000, selection.selectedFormat.bitrate)
+    }
+
+    @Test
+    fun atLowWatermark_selectsLowestBitrate() {
+        bandwidthMeter.bitrateEstimate = 10_000_000
+        val selection = buildSelection()
+
+        selection.update(bufferedDurationMs = MIN_BUFFER_MS.toLong())
+
+        assertEquals(500_000, selection.selectedFormat.bitrate)
+        assertEquals(1, abrStats.getDownSwitchCount())
+    }
+
+    @Test
+    fun rampingBuffer_switchesUpToHighestBitrateAtHighWatermark() {
+        bandwidthMeter.bitrateEstimate = 10_000_000
+        val selection = buildSelection()
+        var previousBitrate = 0
+
+        for (bufferedDurationMs in MIN_BUFFER_MS..MAX_BUFFER_MS step 1_000) {
+            selection.update(bufferedDurationMs.toLong())
+            val bitrate = selection.selectedFormat.bitrate
+            assertTrue("buffer $bufferedDurationMs", bitrate >= previousBitrate)
+            previousBitrate = bitrate
+        }
+
+        assertEquals(4_000_000, previousBitrate)
+        assertEquals(3, abrStats.getUpSwitchCount())
+    }
+
+    @Test
+    fun fullBuffer_doesNotSwitchAboveSustainableThroughput() {
+        bandwidthMeter.bitrateEstimate = 1_200_000
+        val selection = buildSelection()
+
+        selection.update(bufferedDurationMs = MAX_BUFFER_MS.toLong())
+
+        assertEquals(500_000, selection.selectedFormat.bitrate)
+        assertEquals(0, abrStats.getUpSwitchCount())
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/** Checks how [BufferMemoryBudget] splits its bytes between registrations. */
+class BufferMemoryBudgetTest {
+
+    private val budget = BufferMemoryBudget(TOTAL_BYTES, FLOOR_BYTES)
+
+    /** Records the grants a registration is notified of. */
+    private class RecordingListener : BufferMemoryBudget.Listener {
+        val grants = ArrayList<Int>()
+        val lastGrant: Int
+            get() = grants.last()
+
+        override fun onGrantChanged(grantedBytes: Int) {
+            grants.add(grantedBytes)
+        }
+    }
+
+    @Test
+    fun register_notifiesInitialGrant_evenIfZero() {
+        val listener = RecordingListener()
+
+        budget.register(/* priority= */ 0, /* requestedBytes= */ 0, listener)
+
+        assertEquals(listOf(0), listener.grants)
+    }
+
+    @Test
+    fun singleRegistration_isGrantedItsRequest() {
+        val listener = RecordingListener()
+
+        val registration = budget.register(/* priority= */ 0, 250, listener)
+
+        assertEquals(250, listener.lastGrant)
+        assertEquals(250, budget.getGrantedBytes(registration))
+    }
+
+    @Test
+    fun floorIsGrantedToEveryRegistration_beforePriority() {
+        val high = RecordingListener()
+        val low = RecordingListener()
+
+        budget.register(/* priority= */ 1, TOTAL_BYTES, high)
+        budget.register(/* priority= */ 0, TOTAL_BYTES, low)
+
+        assertEquals(TOTAL_BYTES - FLOOR_BYTES, high.lastGrant)
+        assertEquals(FLOOR_BYTES, low.lastGrant)
+    }
+
+    @Test
+    fun floor_isCappedByTheRequest() {
+        val high = RecordingListener()
+        val low = RecordingListener()
+
+        budget.register(/* priority= */ 1, TOTAL_BYTES, high)
+        budget.register(/* priority= */ 0, FLOOR_BYTES / 2, low)
+
+        assertEquals(TOTAL_BYTES - FLOOR_BYTES / 2, high.lastGrant)
+        assertEquals(FLOOR_BYTES / 2, low.lastGrant)
+    }
+
+    @Test
+    fun remainder_isServedInPriorityOrder() {
+        val low = RecordingListener()
+        val high = RecordingListener()
+        val middle = RecordingListener()
+
+        budget.register(/* priority= */ 0, 400, low)
+        budget.register(/* priority= */ 2, 400, high)
+        budget.register(/* priority= */ 1, 400, middle)
+
+        // Each gets the floor of 100, leaving 700: 300 to the highest, 300 to the middle one, and
+        // the last 100 to the lowest.
+        assertEquals(400, high.lastGrant)
+        assertEquals(400, middle.lastGrant)
+        assertEquals(200, low.lastGrant)
+    }
+
+    @Test
+    fun equalPriorities_areServedInRegistrationOrder() {
+        val first = RecordingListener()
+        val second = RecordingListener()
+
+        budget.register(/* priority= */ 0, 800, first)
+        budget.register(/* priority= */ 0, 800, second)
+
+        assertEquals(800, first.lastGrant)
+        assertEquals(200, second.lastGrant)
+    }
+
+    @Test
+    fun grants_neverExceedTheTotal() {
+        val listeners = List(15) { RecordingListener() }
+
+        listeners.forEachIndexed { index, listener ->
+            budget.register(/* priority= */ index % 3, TOTAL_BYTES, listener)
+        }
+
+        assertEquals(TOTAL_BYTES, listeners.sumOf { it.lastGrant })
+        assertEquals(TOTAL_BYTES, budget.getGrantedBytes())
+        // Only ten floors fit, so the last registrations of the lowest priority get nothing.
+        assertEquals(10, listeners.count { it.lastGrant > 0 })
+    }
+
+    @Test
+    fun unregister_handsTheShareBack() {
+        val high = RecordingListener()
+        val low = RecordingListener()
+        val registration = budget.register(/* priority= */ 1, TOTAL_BYTES, high)
+        budget.register(/* priority= */ 0, TOTAL_BYTES, low)
+
+        budget.unregister(registration)
+
+        assertEquals(TOTAL_BYTES, low.lastGrant)
+        assertEquals(1, budget.getRegistrationCount())
+        assertEquals(TOTAL_BYTES, budget.getGrantedBytes())
+    }
+
+    @Test
+    fun unregister_twice_isIgnored() {
+        val listener = RecordingListener()
+        val registration = budget.register(/* priority= */ 0, 300, listener)
+
+        budget.unregister(registration)
+        budget.unregister(registration)
+
+        assertEquals(0, budget.getRegistrationCount())
+        assertEquals(listOf(300), listener.grants)
+    }
+
+    @Test
+    fun updateRequest_rebalances_andOnlyNotifiesChangedGrants() {
+        val high = RecordingListener()
+        val low = RecordingListener()
+        val registration = budget.register(/* priority= */ 1, 300, high)
+        budget.register(/* priority= */ 0, 300, low)
+        val lowGrantCount = low.grants.size
+
+        budget.updateRequest(registration, 800)
+
+        assertEquals(800, high.lastGrant)
+        assertEquals(200, low.lastGrant)
+
+        budget.updateRequest(registration, 700)
+
+        assertEquals(700, high.lastGrant)
+        assertEquals(300, low.lastGrant)
+        assertEquals(lowGrantCount + 2, low.grants.size)
+    }
+
+    @Test
+    fun listeners_areNotifiedWithoutTheLock() {
+        var heldLock = false
+        budget.register(/* priority= */ 0, TOTAL_BYTES) {
+            heldLock = heldLock || Thread.holdsLock(budget)
+        }
+
+        budget.register(/* priority= */ 1, TOTAL_BYTES) {
+            heldLock = heldLock || Thread.holdsLock(budget)
+        }
+
+        assertFalse(heldLock)
+    }
+
+    @Test
+    fun listener_mayCallBackIntoTheBudget() {
+        val other = RecordingListener()
+        lateinit var registration: BufferMemoryBudget.Registration
+        var reentered = false
+        registration = budget.register(/* priority= */ 0, TOTAL_BYTES) { grantedBytes ->
+            // Shrinks its own request once squeezed, as a load control under memory pressure
+            // would.
+            if (grantedBytes < TOTAL_BYTES && !reentered) {
+                reentered = true
+                budget.updateRequest(registration, grantedBytes / 2)
+            }
+        }
+
+        budget.register(/* priority= */ 1, TOTAL_BYTES, other)
+
+        assertTrue(reentered)
+        assertEquals(TOTAL_BYTES - FLOOR_BYTES, other.lastGrant)
+        assertEquals(FLOOR_BYTES / 2, budget.getGrantedBytes(registration))
+    }
+
+    private companion object {
+        const val TOTAL_BYTES = 1000
+        const val FLOOR_BYTES = 100
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/** Checks the batching and overflow of [BufferedDurationSampleBuffer]. */
+class BufferedDurationSampleBufferTest {
+
+    companion object {
+        private const val CAPACITY = 8
+        private const val BATCH_SIZE = 3
+    }
+
+    private val buffer = BufferedDurationSampleBuffer(CAPACITY, BATCH_SIZE)
+    private val timestampsMs = LongArray(CAPACITY)
+    private val bufferedDurationsUs = LongArray(CAPACITY)
+
+    /** Adds a sample whose buffered duration is a thousand times its timestamp. */
+    private fun add(timestampMs: Long): Boolean = buffer.add(timestampMs, timestampMs * 1000)
+
+    private fun drain(): List<Long> {
+        val count = buffer.drainTo(timestampsMs, bufferedDurationsUs)
+        for (i in 0 until count) {
+            assertEquals(timestampsMs[i] * 1000, bufferedDurationsUs[i])
+        }
+        return timestampsMs.take(count)
+    }
+
+    @Test
+    fun add_requestsDrainOnceBatchIsPending() {
+        assertFalse(add(1))
+        assertFalse(add(2))
+        assertTrue(add(3))
+
+        assertEquals(listOf(1L, 2L, 3L), drain())
+    }
+
+    @Test
+    fun add_whileDrainPending_doesNotRequestAnother() {
+        add(1)
+        add(2)
+        assertTrue(add(3))
+
+        // The drain scheduled for the full batch has not run yet.
+        assertFalse(add(4))
+        assertFalse(add(5))
+        assertFalse(add(6))
+
+        assertEquals(listOf(1L, 2L, 3L, 4L, 5L, 6L), drain())
+    }
+
+    @Test
+    fun add_afterDrain_requestsNextBatch() {
+        add(1)
+        add(2)
+        add(3)
+        drain()
+
+        assertFalse(add(4))
+        assertFalse(add(5))
+        assertTrue(add(6))
+        assertEquals(listOf(4L, 5L, 6L), drain())
+    }
+
+    @Test
+    fun add_wrapsAroundTheRing() {
+        for (round in 0 until 5) {
+            val first = round * 6L
+            for (timestampMs in first until first + 6) {
+                add(timestampMs)
+            }
+
+            assertEquals((first until first + 6).toList(), drain())
+        }
+        assertEquals(0L, buffer.droppedSampleCount)
+    }
+
+    @Test
+    fun add_whenFull_dropsNewSamples() {
+        for (timestampMs in 0L until CAPACITY + 3L) {
+            add(timestampMs)
+        }
+
+        assertEquals(3L, buffer.droppedSampleCount)
+        assertEquals((0L until CAPACITY).toList(), drain())
+        // Draining makes room again.
+        add(100)
+        assertEquals(listOf(100L), drain())
+        assertEquals(3L, buffer.droppedSampleCount)
+    }
+
+    @Test
+    fun drainTo_copiesAtMostTheArrayLength() {
+        for (timestampMs in 0L until 5L) {
+            add(timestampMs)
+        }
+        val shortTimestampsMs = LongArray(2)
+        val shortBufferedDurationsUs = LongArray(2)
+
+        assertEquals(2, buffer.drainTo(shortTimestampsMs, shortBufferedDurationsUs))
+        assertArrayEquals(longArrayOf(0, 1), shortTimestampsMs)
+        assertEquals(listOf(2L, 3L, 4L), drain())
+    }
+
+    @Test
+    fun flush_requestsDrainOfPartialBatch() {
+        add(1)
+        add(2)
+
+        assertTrue(buffer.flush())
+        assertEquals(listOf(1L, 2L), drain())
+    }
+
+    @Test
+    fun flush_withoutPendingSamples_requestsNothing() {
+        assertFalse(buffer.flush())
+
+        add(1)
+        drain()
+
+        assertFalse(buffer.flush())
+    }
+
+    @Test
+    fun flush_whileDrainPending_requestsNothing() {
+        add(1)
+        add(2)
+        assertTrue(add(3))
+
+        assertFalse(buffer.flush())
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.google.android.exoplayer2.ParserException
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.Random
+
+/** Round-trips traces through [ColumnarTraceWriter] and [ColumnarTraceReader]. */
+class ColumnarTraceTest {
+
+    companion object {
+        private val COLUMNS = arrayOf("timestampMs", "state", "counter", "offsetUs")
+        private const val ROW_COUNT = 10_000
+        private const val ROWS_PER_BLOCK = 256
+        private const val REGION_SIZE = 4 * 1024
+    }
+
+    private lateinit var directory: File
+    private lateinit var file: File
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("trace").toFile()
+        file = File(directory, "session.trace")
+    }
+
+    @After
+    fun tearDown() {
+        directory.deleteRecursively()
+    }
+
+    /** Returns a session-like time series: a clock, a small state, a counter and a signed sum. */
+    private fun createRows(): Array<LongArray> {
+        val random = Random(0)
+        var timestampMs = 1_600_000_000_000L
+        var counter = 0L
+        var offsetUs = 0L
+        return Array(ROW_COUNT) {
+            timestampMs += 1_000 + random.nextInt(10)
+            counter += random.nextInt(30)
+            offsetUs += random.nextInt(20_000) - 15_000
+            longArrayOf(timestampMs, (1 + random.nextInt(4)).toLong(), counter, offsetUs)
+        }
+    }
+
+    private fun writeRows(rows: Array<LongArray>): ColumnarTraceWriter {
+        val writer = ColumnarTraceWriter(file, COLUMNS, ROWS_PER_BLOCK, REGION_SIZE)
+        rows.forEach { writer.append(*it) }
+        return writer
+    }
+
+    @Test
+    fun closedTrace_readsEveryColumn() {
+        val rows = createRows()
+        writeRows(rows).close()
+
+        val reader = ColumnarTraceReader(file)
+
+        assertArrayEquals(COLUMNS, reader.columnNames)
+        assertEquals(ROW_COUNT.toLong(), reader.rowCount)
+        assertEquals((ROW_COUNT + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK, reader.blockCount)
+        for (column in COLUMNS.indices) {
+            assertArrayEquals(rows.map { it[column] }.toLongArray(), reader.readColumn(column))
+        }
+    }
+
+    @Test
+    fun closedTrace_isCompact() {
+        writeRows(createRows()).close()
+
+        // Raw longs would take 32 bytes per row.
+        val bytesPerRow = file.length().toDouble() / ROW_COUNT
+        assertTrue("$bytesPerRow bytes per row", bytesPerRow < 10)
+    }
+
+    @Test
+    fun extremeValues_roundTrip() {
+        val values = longArrayOf(Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MIN_VALUE, 1)
+        val writer = ColumnarTraceWriter(file, arrayOf("value"), 4, REGION_SIZE)
+        values.forEach { writer.append(it) }
+        writer.close()
+
+        assertArrayEquals(values, ColumnarTraceReader(file).readColumn("value"))
+    }
+
+    @Test
+    fun unclosedTrace_readsCompleteBlocks() {
+        val rows = createRows()
+        val writer = writeRows(rows)
+
+        // Without close() the file ends with the unused tail of the mapped region, and the rows of
+        // the last partial block are not in the file yet.
+        val reader = ColumnarTraceReader(file)
+
+        val completeRowCount = ROW_COUNT / ROWS_PER_BLOCK * ROWS_PER_BLOCK
+        assertEquals(completeRowCount.toLong(), writer.writtenRowCount)
+        assertEquals(completeRowCount.toLong(), reader.rowCount)
+        assertArrayEquals(
+            rows.take(completeRowCount).map { it[2] }.toLongArray(),
+            reader.readColumn("counter")
+        )
+        writer.close()
+    }
+
+    @Test(expected = ParserException::class)
+    fun otherFile_throws() {
+        file.writeText("timestamp,event\n")
+
+        ColumnarTraceReader(file)
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer;
+
+import com.google.android.exoplayer2.BaseRenderer;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link CustomLoadControl} methods the playback thread calls on every loader check,
+ * and the target buffer calculation it runs on every track selection.
+ *
+ * <p>The buffered duration cycles through values below, between and above the watermarks, so that
+ * the benchmarks go through every buffer state instead of a single predicted branch.
+ */
+@State(Scope.Thread)
+public class CustomLoadControlBenchmark {
+
+    private static final long[] BUFFERED_DURATIONS_US = {
+            0, 2_000_000, 8_000_000, 16_000_000, 32_000_000, 52_000_000, 40_000_000, 12_000_000
+    };
+
+    private CustomLoadControl loadControl;
+    private Renderer[] renderers;
+    private TrackSelectionArray trackSelectionArray;
+    private int sampleIndex;
+
+    @Setup
+    public void setUp() {
+        loadControl = new CustomLoadControl.Builder()
+                .setBufferDurationsMs(15_000, 50_000, 2_500, 5_000)
+                .build();
+        loadControl.onPrepared();
+        renderers = new Renderer[] {
+                new FakeRenderer(C.TRACK_TYPE_VIDEO), new FakeRenderer(C.TRACK_TYPE_AUDIO)
+        };
+        ExoTrackSelection[] trackSelections = {
+                new FixedTrackSelection(new TrackGroup(createFormat(2_500_000)), 0),
+                new FixedTrackSelection(new TrackGroup(createFormat(128_000)), 0)
+        };
+        loadControl.onTracksSelected(renderers, TrackGroupArray.EMPTY, trackSelections);
+        trackSelectionArray = new TrackSelectionArray(trackSelections);
+    }
+
+    @Benchmark
+    public boolean shouldContinueLoading() {
+        return loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, nextBufferedDurationUs(), /* playbackSpeed= */ 1f);
+    }
+
+    @Benchmark
+    public boolean shouldContinueLoadingAtFasterSpeed() {
+        return loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, nextBufferedDurationUs(), /* playbackSpeed= */ 1.5f);
+    }
+
+    @Benchmark
+    public boolean shouldStartPlayback() {
+        return loadControl.shouldStartPlayback(
+                nextBufferedDurationUs(), /* playbackSpeed= */ 1f, /* rebuffering= */ false,
+                /* targetLiveOffsetUs= */ C.TIME_UNSET);
+    }
+
+    @Benchmark
+    public int calculateTargetBufferBytes() {
+        return loadControl.calculateTargetBufferBytes(renderers, trackSelectionArray);
+    }
+
+    private long nextBufferedDurationUs() {
+        sampleIndex = (sampleIndex + 1) % BUFFERED_DURATIONS_US.length;
+        return BUFFERED_DURATIONS_US[sampleIndex];
+    }
+
+    private static Format createFormat(int bitrate) {
+        return new Format.Builder().setPeakBitrate(bitrate).build();
+    }
+
+    private static final class FakeRenderer extends BaseRenderer {
+
+        public FakeRenderer(int trackType) {
+            super(trackType);
+        }
+
+        @Override
+        public String getName() {
+            return "FakeRenderer";
+        }
+
+        @Override
+        public void render(long positionUs, long elapsedRealtimeUs) {}
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public boolean isEnded() {
+            return false;
+        }
+
+        @Override
+        public int supportsFormat(Format format) {
+            return RendererCapabilities.create(C.FORMAT_HANDLED);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.content.ComponentCallbacks2
+import com.google.android.exoplayer2.BaseRenderer
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.Format
+import com.google.android.exoplayer2.Renderer
+import com.google.android.exoplayer2.RendererCapabilities
+import com.google.android.exoplayer2.source.TrackGroup
+import com.google.android.exoplayer2.source.TrackGroupArray
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection
+import com.google.android.exoplayer2.util.PriorityTaskManager
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/** Drives [CustomLoadControl] with synthetic buffer levels, playback speeds and live offsets. */
+class CustomLoadControlTest {
+
+    companion object {
+        private const val MIN_BUFFER_MS = 15_000
+        private const val MAX_BUFFER_MS = 50_000
+        private const val BUFFER_FOR_PLAYBACK_MS = 2_500
+        private const val BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 5_000
+    }
+
+    private fun buildLoadControl(
+        targetBufferBytes: Int = C.LENGTH_UNSET,
+        builder: CustomLoadControl.Builder = CustomLoadControl.Builder()
+    ): CustomLoadControl {
+        val loadControl = builder
+            .setBufferDurationsMs(
+                MIN_BUFFER_MS,
+                MAX_BUFFER_MS,
+                BUFFER_FOR_PLAYBACK_MS,
+                BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS
+            )
+            .setTargetBufferBytes(targetBufferBytes)
+            .build()
+        loadControl.onPrepared()
+        return loadControl
+    }
+
+    @Test
+    fun shouldContinueLoading_lowWatermarkScalesWithPlaybackSpeed() {
+        // A zero byte target is always reached, so loading only continues below the low watermark.
+        val loadControl = buildLoadControl(targetBufferBytes = 0)
+        val speeds = floatArrayOf(1f, 1.5f, 2f, 1f)
+        val expected = booleanArrayOf(false, true, true, false)
+
+        for (i in speeds.indices) {
+            assertEquals(
+                "speed ${speeds[i]}",
+                expected[i],
+                loadControl.shouldContinueLoading(0, 20_000_000, speeds[i])
+            )
+        }
+    }
+
+    @Test
+    fun shouldContinueLoading_highWatermarkScalesWithPlaybackSpeed() {
+        val loadControl = buildLoadControl()
+        val speeds = floatArrayOf(1f, 1.5f, 1f, 2f)
+        val expected = booleanArrayOf(false, true, false, true)
+
+        for (i in speeds.indices) {
+            assertEquals(
+                "speed ${speeds[i]}",
+                expected[i],
+                loadControl.shouldContinueLoading(0, 60_000_000, speeds[i])
+            )
+        }
+    }
+
+    @Test
+    fun shouldStartPlayback_usesPlayoutDurationAtPlaybackSpeed() {
+        val loadControl = buildLoadControl()
+        val speeds = floatArrayOf(1f, 2f, 1.5f, 0.5f)
+        val expected = booleanArrayOf(true, false, true, true)
+
+        for (i in speeds.indices) {
+            assertEquals(
+                "speed ${speeds[i]}",
+                expected[i],
+                loadControl.shouldStartPlayback(
+                    4_000_000, speeds[i], /* rebuffering= */ false, C.TIME_UNSET
+                )
+            )
+        }
+    }
+
+    @Test
+    fun shouldStartPlayback_respectsTargetLiveOffset() {
+        val loadControl = buildLoadControl()
+        val targetLiveOffsetsUs = longArrayOf(C.TIME_UNSET, 3_000_000, 6_000_000, 2_000_000)
+        val expected = booleanArrayOf(false, true, false, true)
+
+        for (i in targetLiveOffsetsUs.indices) {
+            assertEquals(
+                "target live offset ${targetLiveOffsetsUs[i]}",
+                expected[i],
+                loadControl.shouldStartPlayback(
+                    1_500_000, 1f, /* rebuffering= */ false, targetLiveOffsetsUs[i]
+                )
+            )
+        }
+    }
+
+    @Test
+    fun shouldStartPlayback_afterRebuffer_respectsTargetLiveOffset() {
+        val loadControl = buildLoadControl()
+        val targetLiveOffsetsUs = longArrayOf(C.TIME_UNSET, 8_000_000, 6_000_000)
+        val expected = booleanArrayOf(false, false, true)
+
+        for (i in targetLiveOffsetsUs.indices) {
+            assertEquals(
+                "target live offset ${targetLiveOffsetsUs[i]}",
+                expected[i],
+                loadControl.shouldStartPlayback(
+                    3_000_000, 1f, /* rebuffering= */ true, targetLiveOffsetsUs[i]
+                )
+            )
+        }
+    }
+
+    @Test
+    fun shouldStartPlayback_combinesSpeedAndTargetLiveOffset() {
+        val loadControl = buildLoadControl()
+
+        // 3 s of media last 1.5 s at 2x, which covers half of a 3 s live offset but not 2.5 s.
+        assertEquals(
+            true,
+            loadControl.shouldStartPlayback(3_000_000, 2f, /* rebuffering= */ false, 3_000_000)
+        )
+        assertEquals(
+            false,
+            loadControl.shouldStartPlayback(3_000_000, 2f, /* rebuffering= */ false, C.TIME_UNSET)
+        )
+    }
+
+    @Test
+    fun onMemoryPressure_shrinksTargetBufferAndRecordsTrims() {
+        val loadControl = buildLoadControl()
+        val fullTargetBufferBytes = loadControl.targetBufferBytes
+
+        loadControl.onMemoryPressure(CustomLoadControl.MEMORY_PRESSURE_MODERATE)
+        loadControl.onMemoryPressure(CustomLoadControl.MEMORY_PRESSURE_CRITICAL)
+        // A lower level does not relax the pressure before the recovery interval.
+        loadControl.onMemoryPressure(CustomLoadControl.MEMORY_PRESSURE_LOW)
+
+        assertEquals(CustomLoadControl.MEMORY_PRESSURE_CRITICAL, loadControl.memoryPressure)
+        assertEquals(fullTargetBufferBytes / 8, loadControl.targetBufferBytes)
+        val trimEvents = loadControl.memoryTrimEvents
+        assertEquals(2, trimEvents.size)
+        assertEquals(fullTargetBufferBytes, trimEvents[0].previousTargetBufferBytes)
+        assertEquals(fullTargetBufferBytes / 2, trimEvents[0].targetBufferBytes)
+        assertEquals(fullTargetBufferBytes / 8, trimEvents[1].targetBufferBytes)
+    }
+
+    @Test
+    fun onMemoryPressure_uiHidden_keepsTargetBuffer() {
+        val loadControl = buildLoadControl()
+        val fullTargetBufferBytes = loadControl.targetBufferBytes
+
+        loadControl.onMemoryPressure(
+            CustomLoadControl.getMemoryPressureForTrimLevel(
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+            )
+        )
+
+        assertEquals(CustomLoadControl.MEMORY_PRESSURE_NONE, loadControl.memoryPressure)
+        assertEquals(fullTargetBufferBytes, loadControl.targetBufferBytes)
+        assertTrue(loadControl.memoryTrimEvents.isEmpty())
+    }
+
+    @Test
+    fun getMemoryPressureForTrimLevel_mapsTrimLevels() {
+        val trimLevels = intArrayOf(
+            ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+            ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+            ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+            ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN,
+            ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+            ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+            ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+        )
+        val expected = intArrayOf(
+            CustomLoadControl.MEMORY_PRESSURE_MODERATE,
+            CustomLoadControl.MEMORY_PRESSURE_LOW,
+            CustomLoadControl.MEMORY_PRESSURE_CRITICAL,
+            // Moving the UI to the background is not memory pressure.
+            CustomLoadControl.MEMORY_PRESSURE_NONE,
+            CustomLoadControl.MEMORY_PRESSURE_LOW,
+            CustomLoadControl.MEMORY_PRESSURE_CRITICAL,
+            CustomLoadControl.MEMORY_PRESSURE_CRITICAL
+        )
+
+        for (i in trimLevels.indices) {
+            assertEquals(
+                "trim level ${trimLevels[i]}",
+                expected[i],
+                CustomLoadControl.getMemoryPressureForTrimLevel(trimLevels[i])
+            )
+        }
+    }
+
+    @Test
+    fun onTracksSelected_derivesTargetBufferBytesFromBitrate() {
+        val loadControl = buildLoadControl()
+
+        selectTracks(loadControl, videoBitrate = 1_000_000, audioBitrate = 128_000)
+
+        // 50 s at 1 Mbps plus 50 s at 128 kbps.
+        assertEquals(6_250_000 + 800_000, loadControl.targetBufferBytes)
+    }
+
+    @Test
+    fun onTracksSelected_clampsTargetBufferBytesToTrackTypeLimits() {
+        val loadControl = buildLoadControl(
+            builder = CustomLoadControl.Builder()
+                .setTrackTypeBufferBytesLimits(C.TRACK_TYPE_VIDEO, 0, 4_000_000)
+                .setTrackTypeBufferBytesLimits(C.TRACK_TYPE_AUDIO, 1_000_000, C.LENGTH_UNSET)
+        )
+
+        selectTracks(loadControl, videoBitrate = 1_000_000, audioBitrate = 128_000)
+
+        assertEquals(4_000_000 + 1_000_000, loadControl.targetBufferBytes)
+    }
+
+    @Test
+    fun onTracksSelected_unknownBitrate_usesDefaultBufferSize() {
+        val loadControl = buildLoadControl()
+
+        selectTracks(loadControl, videoBitrate = Format.NO_VALUE, audioBitrate = 128_000)
+
+        assertEquals(CustomLoadControl.DEFAULT_VIDEO_BUFFER_SIZE + 800_000, loadControl.targetBufferBytes)
+    }
+
+    private fun buildPrioritizedLoadControl(
+        priorityTaskManager: PriorityTaskManager,
+        loadingPriority: Int
+    ): CustomLoadControl {
+        // The byte target is never reached, so only the watermarks and the priority gate loading.
+        return buildLoadControl(
+            targetBufferBytes = 10_000_000,
+            builder = CustomLoadControl.Builder()
+                .setPriorityTaskManager(priorityTaskManager, loadingPriority)
+        )
+    }
+
+    @Test
+    fun priority_backgroundYieldsWhileForegroundIsBelowLowWatermark() {
+        val priorityTaskManager = PriorityTaskManager()
+        val foreground = buildPrioritizedLoadControl(
+            priorityTaskManager, CustomLoadControl.PRIORITY_FOREGROUND_PLAYBACK
+        )
+        val background = buildPrioritizedLoadControl(
+            priorityTaskManager, CustomLoadControl.PRIORITY_BACKGROUND_PRELOAD
+        )
+
+        assertTrue(background.shouldContinueLoading(0, 20_000_000, 1f))
+        assertTrue(foreground.shouldContinueLoading(0, 10_000_000, 1f))
+
+        assertFalse(background.shouldContinueLoading(0, 20_000_000, 1f))
+        assertEquals(1L, background.decisionCounters.priorityDeferredCount)
+        assertEquals(0L, foreground.decisionCounters.priorityDeferredCount)
+
+        // Above its low watermark, the foreground player gives up its precedence.
+        assertTrue(foreground.shouldContinueLoading(0, 20_000_000, 1f))
+        assertTrue(background.shouldContinueLoading(0, 20_000_000, 1f))
+    }
+
+    @Test
+    fun priority_foregroundBetweenWatermarks_doesNotBlockBackground() {
+        val priorityTaskManager = PriorityTaskManager()
+        val foreground = buildPrioritizedLoadControl(
+            priorityTaskManager, CustomLoadControl.PRIORITY_FOREGROUND_PLAYBACK
+        )
+        val background = buildPrioritizedLoadControl(
+            priorityTaskManager, CustomLoadControl.PRIORITY_BACKGROUND_PRELOAD
+        )
+
+        assertTrue(foreground.shouldContinueLoading(0, 20_000_000, 1f))
+        assertTrue(background.shouldContinueLoading(0, 20_000_000, 1f))
+        assertEquals(0L, background.decisionCounters.priorityDeferredCount)
+    }
+
+    @Test
+    fun priority_isReleasedOnResetStopAndRelease() {
+        val resets = listOf<Pair<String, (CustomLoadControl) -> Unit>>(
+            "onPrepared" to { it.onPrepared() },
+            "onStopped" to { it.onStopped() },
+            "onReleased" to { it.onReleased() }
+        )
+
+        for ((name, reset) in resets) {
+            val priorityTaskManager = PriorityTaskManager()
+            val foreground = buildPrioritizedLoadControl(
+                priorityTaskManager, CustomLoadControl.PRIORITY_FOREGROUND_PLAYBACK
+            )
+            val background = buildPrioritizedLoadControl(
+                priorityTaskManager, CustomLoadControl.PRIORITY_BACKGROUND_PRELOAD
+            )
+            foreground.shouldContinueLoading(0, 10_000_000, 1f)
+            assertFalse(name, background.shouldContinueLoading(0, 20_000_000, 1f))
+
+            reset(foreground)
+
+            assertTrue(name, background.shouldContinueLoading(0, 20_000_000, 1f))
+        }
+    }
+
+    @Test
+    fun adaptiveWatermarks_scaleBetweenMinAndMaxWithThroughput() {
+        val bandwidthMeter = FakeBandwidthMeter()
+        val loadControl = buildLoadControl(
+            builder = CustomLoadControl.Builder()
+                .setAdaptiveWatermarks(bandwidthMeter, /* minScale= */ 0.5f, /* maxScale= */ 2f)
+        )
+        selectTracks(loadControl, videoBitrate = 1_000_000, audioBitrate = Format.NO_VALUE)
+        // Throughput estimates against the 1 Mbps media bitrate, and the expected scale: close to
+        // the bitrate, far above it, halfway between the two ratios, and no estimate yet.
+        val estimates = longArrayOf(1_200_000, 10_000_000, 3_750_000, 0)
+        val scales = floatArrayOf(2f, 0.5f, 1.25f, 1f)
+
+        for (i in estimates.indices) {
+            bandwidthMeter.bitrateEstimate = estimates[i]
+            loadControl.shouldContinueLoading(0, 0, 1f)
+
+            assertEquals(
+                "estimate ${estimates[i]}",
+                (MIN_BUFFER_MS * 1000L * scales[i]).toLong(),
+                loadControl.lowWatermarkUs
+            )
+            assertEquals(
+                "estimate ${estimates[i]}",
+                (MAX_BUFFER_MS * 1000L * scales[i]).toLong(),
+                loadControl.highWatermarkUs
+            )
+        }
+    }
+
+    @Test
+    fun adaptiveWatermarks_lowWatermarkKeepsBufferForPlayback() {
+        val bandwidthMeter = FakeBandwidthMeter(bitrateEstimate = 10_000_000)
+        val loadControl = buildLoadControl(
+            builder = CustomLoadControl.Builder()
+                .setAdaptiveWatermarks(bandwidthMeter, /* minScale= */ 0.2f, /* maxScale= */ 2f)
+        )
+        selectTracks(loadControl, videoBitrate = 1_000_000, audioBitrate = Format.NO_VALUE)
+
+        loadControl.shouldContinueLoading(0, 0, 1f)
+
+        // 0.2 times the 15 s minimum buffer would be less than the buffer needed after a rebuffer.
+        assertEquals(BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS * 1000L, loadControl.lowWatermarkUs)
+        assertEquals(10_000_000L, loadControl.highWatermarkUs)
+    }
+
+    @Test
+    fun adaptiveWatermarks_resetOnPrepared() {
+        val bandwidthMeter = FakeBandwidthMeter(bitrateEstimate = 1_200_000)
+        val loadControl = buildLoadControl(
+            builder = CustomLoadControl.Builder().setAdaptiveWatermarks(bandwidthMeter)
+        )
+        selectTracks(loadControl, videoBitrate = 1_000_000, audioBitrate = Format.NO_VALUE)
+        loadControl.shouldContinueLoading(0, 0, 1f)
+        assertEquals(2 * MAX_BUFFER_MS * 1000L, loadControl.highWatermarkUs)
+
+        loadControl.onPrepared()
+
+        assertEquals(MIN_BUFFER_MS * 1000L, loadControl.lowWatermarkUs)
+        assertEquals(MAX_BUFFER_MS * 1000L, loadControl.highWatermarkUs)
+        // Without selected tracks the media bitrate is unknown, so the same estimate no longer
+        // scales the watermarks.
+        loadControl.shouldContinueLoading(0, 0, 1f)
+        assertEquals(MAX_BUFFER_MS * 1000L, loadControl.highWatermarkUs)
+    }
+
+    @Test
+    fun occupancyHistogram_attributesTimeToOneSecondBuckets() {
+        val clock = FakeClock()
+        val loadControl = buildLoadControl(builder = CustomLoadControl.Builder().setClock(clock))
+
+        loadControl.shouldContinueLoading(0, 2_500_000, 1f)
+        clock.advance(1_500)
+        loadControl.shouldContinueLoading(0, 500_000, 1f)
+        clock.advance(700)
+        // Above the largest high watermark, so counted in the overflow bucket.
+        loadControl.shouldContinueLoading(0, 70_000_000, 1f)
+        clock.advance(300)
+        loadControl.shouldContinueLoading(0, 0, 1f)
+
+        val histogramMs = loadControl.occupancyHistogramMs
+        // One bucket per second up to the 50 s maximum buffer, plus the overflow bucket.
+        assertEquals(
+            MAX_BUFFER_MS / CustomLoadControl.OCCUPANCY_HISTOGRAM_BUCKET_WIDTH_MS + 2,
+            histogramMs.size
+        )
+        assertEquals(700L, histogramMs[0])
+        assertEquals(1_500L, histogramMs[2])
+        assertEquals(300L, histogramMs[histogramMs.size - 1])
+        assertEquals(2_500L, histogramMs.sum())
+
+        loadControl.onPrepared()
+
+        assertEquals(0L, loadControl.occupancyHistogramMs.sum())
+    }
+
+    private fun selectTracks(loadControl: CustomLoadControl, videoBitrate: Int, audioBitrate: Int) {
+        val renderers: Array<Renderer> =
+            arrayOf(FakeRenderer(C.TRACK_TYPE_VIDEO), FakeRenderer(C.TRACK_TYPE_AUDIO))
+        val trackSelections: Array<ExoTrackSelection?> = arrayOf(
+            FixedTrackSelection(TrackGroup(Format.Builder().setPeakBitrate(videoBitrate).build()), 0),
+            FixedTrackSelection(TrackGroup(Format.Builder().setPeakBitrate(audioBitrate).build()), 0)
+        )
+        loadControl.onTracksSelected(renderers, TrackGroupArray.EMPTY, trackSelections)
+    }
+
+    private class FakeRenderer(trackType: Int) : BaseRenderer(trackType) {
+        override fun getName() = "FakeRenderer"
+        override fun render(positionUs: Long, elapsedRealtimeUs: Long) {}
+        override fun isReady() = true
+        override fun isEnded() = false
+        override fun supportsFormat(format: Format) = RendererCapabilities.create(C.FORMAT_HANDLED)
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.net.Uri
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.source.LoadEventInfo
+import com.google.android.exoplayer2.source.MediaLoadData
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.HttpDataSource
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.util.Random
+
+/** Feeds synthetic load errors to [CustomLoadErrorHandlingPolicy]. */
+class CustomLoadErrorHandlingPolicyTest {
+
+    private val dataSpec = DataSpec(Uri.parse("http://127.0.0.1/fixture.mp4"))
+
+    private fun errorInfo(
+        exception: IOException,
+        errorCount: Int,
+        loadTaskId: Long = 1
+    ): LoadErrorHandlingPolicy.LoadErrorInfo {
+        return LoadErrorHandlingPolicy.LoadErrorInfo(
+            LoadEventInfo(loadTaskId, dataSpec, /* elapsedRealtimeMs= */ 0),
+            MediaLoadData(C.DATA_TYPE_MEDIA),
+            exception,
+            errorCount
+        )
+    }
+
+    private fun responseCodeException(
+        responseCode: Int,
+        headers: Map<String, List<String>> = emptyMap()
+    ): IOException {
+        return HttpDataSource.InvalidResponseCodeException(
+            responseCode, null, headers, dataSpec, ByteArray(0)
+        )
+    }
+
+    private fun timeoutException(): IOException {
+        return HttpDataSource.HttpDataSourceException(
+            SocketTimeoutException(), dataSpec, HttpDataSource.HttpDataSourceException.TYPE_READ
+        )
+    }
+
+    @Test
+    fun timeout_isRetriedSoonerThanServerError() {
+        val policy = CustomLoadErrorHandlingPolicy(maxRetriesPerSession = 10, random = Random(0))
+
+        val timeoutDelayMs = policy.getRetryDelayMsFor(errorInfo(timeoutException(), 1))
+        val serverErrorDelayMs = policy.getRetryDelayMsFor(errorInfo(responseCodeException(503), 1))
+
+        assertTrue(timeoutDelayMs in 250L..500L)
+        assertTrue(serverErrorDelayMs in 1_000L..2_000L)
+        assertEquals(1, policy.getTimeoutRetryCount())
+        assertEquals(1, policy.getServerErrorRetryCount())
+    }
+
+    @Test
+    fun delay_doublesWithEachError() {
+        val policy = CustomLoadErrorHandlingPolicy(maxRetriesPerSession = 10, random = Random(0))
+
+        val delayMs = policy.getRetryDelayMsFor(errorInfo(responseCodeException(500), 3))
+
+        assertTrue(delayMs in 4_000L..8_000L)
+    }
+
+    @Test
+    fun clientError_isNotRetried() {
+        val policy = CustomLoadErrorHandlingPolicy()
+
+        assertEquals(
+            C.TIME_UNSET, policy.getRetryDelayMsFor(errorInfo(responseCodeException(404), 1))
+        )
+        assertEquals(1, policy.getGiveUpCount())
+        assertEquals(0, policy.getRetryCount())
+    }
+
+    @Test
+    fun retryAfter_extendsTheDelay() {
+        val policy = CustomLoadErrorHandlingPolicy()
+        val exception = responseCodeException(503, mapOf("Retry-After" to listOf("10")))
+
+        assertTrue(policy.getRetryDelayMsFor(errorInfo(exception, 1)) >= 10_000L)
+    }
+
+    @Test
+    fun exhaustedBudget_givesUp() {
+        val policy = CustomLoadErrorHandlingPolicy(maxRetriesPerSession = 2)
+
+        policy.getRetryDelayMsFor(errorInfo(timeoutException(), 1, loadTaskId = 1))
+        policy.getRetryDelayMsFor(errorInfo(timeoutException(), 1, loadTaskId = 2))
+
+        assertEquals(
+            C.TIME_UNSET,
+            policy.getRetryDelayMsFor(errorInfo(timeoutException(), 1, loadTaskId = 3))
+        )
+        assertEquals(2, policy.getRetryCount())
+        assertEquals(1, policy.getGiveUpCount())
+    }
+
+    @Test
+    fun bufferNotCoveringTheDelay_givesUpAfterStalledRetryLimit() {
+        val policy = CustomLoadErrorHandlingPolicy({ 100_000L })
+        val limit = CustomLoadErrorHandlingPolicy.STALLED_RETRY_LIMIT
+
+        assertTrue(policy.getRetryDelayMsFor(errorInfo(responseCodeException(503), limit)) > 0)
+        assertEquals(
+            C.TIME_UNSET,
+            policy.getRetryDelayMsFor(errorInfo(responseCodeException(503), limit + 1))
+        )
+    }
+
+    @Test
+    fun bufferCoveringTheDelay_keepsRetrying() {
+        val policy = CustomLoadErrorHandlingPolicy({ C.msToUs(60_000) })
+        val errorCount = CustomLoadErrorHandlingPolicy.STALLED_RETRY_LIMIT + 1
+
+        assertTrue(policy.getRetryDelayMsFor(errorInfo(timeoutException(), errorCount)) > 0)
+    }
+
+    @Test
+    fun concludedLoad_isCountedAsRecovered() {
+        val policy = CustomLoadErrorHandlingPolicy()
+
+        policy.getRetryDelayMsFor(errorInfo(timeoutException(), 1, loadTaskId = 7))
+        policy.getRetryDelayMsFor(errorInfo(timeoutException(), 2, loadTaskId = 7))
+        policy.onLoadTaskConcluded(7)
+        policy.onLoadTaskConcluded(8)
+
+        assertEquals(2, policy.getRetryCount())
+        assertEquals(1, policy.getRecoveredLoadCount())
+    }
+}
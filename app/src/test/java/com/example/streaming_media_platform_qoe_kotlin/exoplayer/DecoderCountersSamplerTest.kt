@@ -0,0 +1,94 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
+import com.google.android.exoplayer2.decoder.DecoderCounters
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+/** Feeds [DecoderCountersSampler] with synthetic decoder counters. */
+class DecoderCountersSamplerTest {
+
+    private val sampler = DecoderCountersSampler()
+    private val video = DecoderCounters()
+    private val audio = DecoderCounters()
+    private val intervals = ArrayList<Pair<Long, Int>>()
+    private var lastVideoDeltas: DecoderCountersData? = null
+
+    init {
+        sampler.setListener { durationMs, videoDeltas, _ ->
+            intervals.add(durationMs to videoDeltas.droppedBufferCount)
+            lastVideoDeltas = videoDeltas
+        }
+    }
+
+    /** Plays one second at 30 fps, dropping [dropped] of the frames. */
+    private fun playSecond(nowMs: Long, dropped: Int) {
+        video.renderedOutputBufferCount += 30 - dropped
+        video.droppedBufferCount += dropped
+        audio.renderedOutputBufferCount += 50
+        sampler.sample(nowMs, video, audio)
+    }
+
+    @Test
+    fun firstSample_onlySetsBaseline() {
+        video.droppedBufferCount = 100
+
+        sampler.sample(0, video, audio)
+
+        assertEquals(0, sampler.getIntervalCount())
+        assertEquals(0, intervals.size)
+    }
+
+    @Test
+    fun intervals_publishDeltasAndRates() {
+        sampler.sample(0, video, audio)
+
+        playSecond(1_000, dropped = 0)
+        playSecond(2_000, dropped = 6)
+        playSecond(2_500, dropped = 3)
+
+        assertEquals(listOf(1_000L to 0, 1_000L to 6, 500L to 3), intervals)
+        assertEquals(6f, sampler.getPeakDroppedFramesPerSecond(), 0f)
+        assertEquals(6f, sampler.getDroppedFramesPerSecond(), 0f)
+        assertEquals(54f, sampler.getRenderedFramesPerSecond(), 0f)
+    }
+
+    @Test
+    fun consecutiveDropIntervals_countAsOneBurst() {
+        sampler.sample(0, video, audio)
+
+        playSecond(1_000, dropped = 10)
+        playSecond(2_000, dropped = 8)
+        playSecond(3_000, dropped = 0)
+        playSecond(4_000, dropped = 2)
+        playSecond(5_000, dropped = 12)
+
+        assertEquals(2, sampler.getBurstCount())
+        assertEquals(12f, sampler.getPeakDroppedFramesPerSecond(), 0f)
+    }
+
+    @Test
+    fun rendererReenabled_countsFromZero() {
+        sampler.sample(0, video, audio)
+        playSecond(1_000, dropped = 5)
+        val reenabled = DecoderCounters()
+        reenabled.droppedBufferCount = 2
+
+        sampler.sample(2_000, null, audio)
+        sampler.sample(3_000, reenabled, audio)
+
+        assertEquals(listOf(1_000L to 5, 1_000L to 0, 1_000L to 2), intervals)
+    }
+
+    @Test
+    fun deltas_areReused() {
+        sampler.sample(0, video, audio)
+        playSecond(1_000, dropped = 1)
+        val firstDeltas = lastVideoDeltas
+
+        playSecond(2_000, dropped = 2)
+
+        assertSame(firstDeltas, lastVideoDeltas)
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.google.android.exoplayer2.upstream.DefaultAllocator
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/** Drives [DripFeedScheduler] through bursts and idle windows on a [FakeClock]. */
+class DripFeedSchedulerTest {
+
+    companion object {
+        private const val BURST_BYTES = 1_000
+        private const val IDLE_INTERVAL_MS = 5_000L
+    }
+
+    private val clock = FakeClock()
+    private val scheduler = DripFeedScheduler(BURST_BYTES, IDLE_INTERVAL_MS)
+
+    private fun shouldLoad(loadedBytes: Long) = scheduler.shouldLoad(clock.timeMs, loadedBytes)
+
+    @Test
+    fun shouldLoad_stopsOnceBurstBytesAreLoaded() {
+        assertTrue(shouldLoad(500))
+        clock.advance(100)
+        assertTrue(shouldLoad(500 + BURST_BYTES - 1L))
+        clock.advance(100)
+        assertFalse(shouldLoad(500 + BURST_BYTES.toLong()))
+    }
+
+    @Test
+    fun shouldLoad_staysIdleForTheIdleInterval() {
+        shouldLoad(0)
+        assertFalse(shouldLoad(BURST_BYTES.toLong()))
+
+        clock.advance(IDLE_INTERVAL_MS - 1)
+        assertFalse(shouldLoad(BURST_BYTES.toLong()))
+
+        clock.advance(1)
+        assertTrue(shouldLoad(BURST_BYTES.toLong()))
+        // The next burst counts from the bytes loaded when it started.
+        assertTrue(shouldLoad(2L * BURST_BYTES - 1))
+        assertFalse(shouldLoad(2L * BURST_BYTES))
+    }
+
+    @Test
+    fun zeroIdleInterval_startsNextBurstImmediately() {
+        val scheduler = DripFeedScheduler(BURST_BYTES, /* idleIntervalMs= */ 0)
+
+        scheduler.shouldLoad(clock.timeMs, 0)
+        assertFalse(scheduler.shouldLoad(clock.timeMs, BURST_BYTES.toLong()))
+        assertTrue(scheduler.shouldLoad(clock.timeMs, BURST_BYTES.toLong()))
+    }
+
+    @Test
+    fun onLoadingStopped_duringBurst_startsIdle() {
+        shouldLoad(0)
+        clock.advance(100)
+
+        scheduler.onLoadingStopped(clock.timeMs)
+
+        clock.advance(IDLE_INTERVAL_MS - 1)
+        assertFalse(shouldLoad(10))
+        clock.advance(1)
+        assertTrue(shouldLoad(10))
+    }
+
+    @Test
+    fun onLoadingStopped_whileIdle_doesNotExtendIdle() {
+        shouldLoad(0)
+        shouldLoad(BURST_BYTES.toLong())
+        clock.advance(IDLE_INTERVAL_MS - 1)
+
+        scheduler.onLoadingStopped(clock.timeMs)
+
+        clock.advance(1)
+        assertTrue(shouldLoad(BURST_BYTES.toLong()))
+    }
+
+    @Test
+    fun onForcedLoading_whileIdle_startsBurst() {
+        shouldLoad(0)
+        shouldLoad(BURST_BYTES.toLong())
+        clock.advance(100)
+
+        scheduler.onForcedLoading(BURST_BYTES + 200L)
+
+        // The forced burst continues between the watermarks until it has loaded its bytes.
+        assertTrue(shouldLoad(2L * BURST_BYTES + 199))
+        assertFalse(shouldLoad(2L * BURST_BYTES + 200))
+    }
+
+    @Test
+    fun reset_endsIdle() {
+        shouldLoad(0)
+        shouldLoad(BURST_BYTES.toLong())
+        clock.advance(100)
+
+        scheduler.reset()
+
+        assertTrue(shouldLoad(0))
+    }
+
+    @Test
+    fun loadControl_lowWatermarkForcesLoadingWhileIdle() {
+        val allocator =
+            DefaultAllocator(/* trimOnReset= */ true, /* individualAllocationSize= */ 500)
+        val loadControl = CustomLoadControl.Builder()
+            .setBufferDurationsMs(15_000, 50_000, 2_500, 5_000)
+            .setTargetBufferBytes(10_000_000)
+            .setAllocator(allocator)
+            .setDripFeed(BURST_BYTES, IDLE_INTERVAL_MS.toInt())
+            .setClock(clock)
+            .build()
+        loadControl.onPrepared()
+
+        assertTrue(loadControl.shouldContinueLoading(0, 20_000_000, 1f))
+        allocator.allocate()
+        allocator.allocate()
+        // The burst is loaded, so the load control goes idle between the watermarks.
+        assertFalse(loadControl.shouldContinueLoading(0, 20_000_000, 1f))
+        clock.advance(1_000)
+        assertFalse(loadControl.shouldContinueLoading(0, 20_000_000, 1f))
+
+        // Below the low watermark, loading is never delayed.
+        assertTrue(loadControl.shouldContinueLoading(0, 10_000_000, 1f))
+        // Back between the watermarks, the forced burst goes on until it has loaded its bytes.
+        assertTrue(loadControl.shouldContinueLoading(0, 20_000_000, 1f))
+        allocator.allocate()
+        allocator.allocate()
+        assertFalse(loadControl.shouldContinueLoading(0, 20_000_000, 1f))
+
+        // A new session does not wait for the idle window of the previous one.
+        loadControl.onPrepared()
+        assertTrue(loadControl.shouldContinueLoading(0, 20_000_000, 1f))
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.os.Handler
+import com.google.android.exoplayer2.upstream.BandwidthMeter
+import com.google.android.exoplayer2.upstream.TransferListener
+
+/** A [BandwidthMeter] whose estimate is set by the test. */
+class FakeBandwidthMeter(var bitrateEstimate: Long = 0) : BandwidthMeter {
+
+    override fun getBitrateEstimate() = bitrateEstimate
+    override fun getTransferListener(): TransferListener? = null
+    override fun addEventListener(
+        eventHandler: Handler,
+        eventListener: BandwidthMeter.EventListener
+    ) {}
+    override fun removeEventListener(eventListener: BandwidthMeter.EventListener) {}
+}
@@ -0,0 +1,19 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.google.android.exoplayer2.util.Clock
+
+/**
+ * A [Clock] whose time only moves when a test advances it. The methods other than the time are
+ * those of [Clock.DEFAULT].
+ */
+class FakeClock(var timeMs: Long = 0) : Clock by Clock.DEFAULT {
+
+    /** Moves the time forward by [durationMs] milliseconds. */
+    fun advance(durationMs: Long) {
+        timeMs += durationMs
+    }
+
+    override fun elapsedRealtime(): Long = timeMs
+
+    override fun uptimeMillis(): Long = timeMs
+}
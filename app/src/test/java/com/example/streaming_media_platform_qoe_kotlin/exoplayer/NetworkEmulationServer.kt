@@ -0,0 +1,318 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import java.io.BufferedInputStream
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * An HTTP/1.1 server on the loopback interface that serves media under emulated network
+ * conditions, so that loading behaviour can be reproduced on any machine, without a network.
+ *
+ * It serves fixed bodies by path, honours single `Range: bytes=` requests and keeps connections
+ * alive, like [LocalHttpServer]. Every response is shaped by a [NetworkTrace], whose clock starts
+ * with the server or at the latest [setTrace]:
+ *
+ * - The response head is sent one round-trip time after the request is read.
+ * - The body is sent in packets of [PACKET_SIZE] bytes, paced to the bandwidth of the step in
+ *   which each packet is sent. Each connection gets the full bandwidth, as a server limiting the
+ *   bandwidth per stream would give. No packet is sent during an outage.
+ * - Each packet is lost with the loss rate of its step, which delays it by a retransmission
+ *   timeout, as TCP would. The losses are drawn from a generator seeded per connection, so a run
+ *   with the same seed loses the same packets.
+ *
+ * [Fault]s queued with [enqueueFault] replace or break the next responses to a path.
+ *
+ * @param trace The network conditions.
+ * @param seed The seed of the packet losses.
+ */
+class NetworkEmulationServer @JvmOverloads constructor(
+    trace: NetworkTrace,
+    private val seed: Long = 0
+) : Closeable {
+
+    /** A failure injected into a response. */
+    sealed class Fault {
+
+        /**
+         * Responds with [responseCode] and an empty body instead of the content.
+         *
+         * @param retryAfterSeconds The value of the `Retry-After` header, or a negative value to
+         *     leave it out.
+         */
+        data class ResponseCode @JvmOverloads constructor(
+            val responseCode: Int,
+            val retryAfterSeconds: Int = -1
+        ) : Fault()
+
+        /** Resets the connection once [bodyBytes] bytes of the body have been sent. */
+        data class ResetAfter(val bodyBytes: Int) : Fault()
+
+        /** Stops sending for [durationMs] milliseconds once [bodyBytes] bytes have been sent. */
+        data class StallAfter(val bodyBytes: Int, val durationMs: Long) : Fault()
+    }
+
+    private val serverSocket = ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+    private val executor: ExecutorService = Executors.newCachedThreadPool()
+    private val bodies = ConcurrentHashMap<String, ByteArray>()
+    private val faults = ConcurrentHashMap<String, ConcurrentLinkedQueue<Fault>>()
+    private val connectionCount = AtomicInteger()
+    private val requestCount = AtomicInteger()
+    private val injectedFaultCount = AtomicInteger()
+    private val servedBytes = AtomicLong()
+    @Volatile private var trace = trace
+    @Volatile private var traceStartTimeNs = System.nanoTime()
+
+    init {
+        executor.execute { acceptLoop() }
+    }
+
+    /** Serves [body] at [path]. */
+    fun setBody(path: String, body: ByteArray) {
+        bodies[path] = body
+    }
+
+    /** Replaces the network conditions, and restarts the trace clock. */
+    fun setTrace(trace: NetworkTrace) {
+        this.trace = trace
+        traceStartTimeNs = System.nanoTime()
+    }
+
+    /** Injects [fault] into the next response to [path] that has no fault yet. */
+    fun enqueueFault(path: String, fault: Fault) {
+        faults.getOrPut(path) { ConcurrentLinkedQueue() }.add(fault)
+    }
+
+    /** Returns the URL of [path] on this server. */
+    fun url(path: String): String = "http://127.0.0.1:${serverSocket.localPort}$path"
+
+    /** Returns the number of requests served. */
+    fun getRequestCount(): Int = requestCount.get()
+
+    /** Returns the number of faults injected. */
+    fun getInjectedFaultCount(): Int = injectedFaultCount.get()
+
+    /** Returns the number of body bytes served. */
+    fun getServedBytes(): Long = servedBytes.get()
+
+    override fun close() {
+        serverSocket.close()
+        executor.shutdownNow()
+    }
+
+    private fun acceptLoop() {
+        while (!serverSocket.isClosed) {
+            val socket = try {
+                serverSocket.accept()
+            } catch (e: IOException) {
+                return
+            }
+            val random = Random(seed + connectionCount.getAndIncrement())
+            executor.execute { serve(socket, random) }
+        }
+    }
+
+    private fun serve(socket: Socket, random: Random) {
+        socket.use {
+            val input = BufferedInputStream(it.getInputStream())
+            try {
+                while (true) {
+                    val requestLine = readLine(input) ?: return
+                    val headers = HashMap<String, String>()
+                    while (true) {
+                        val line = readLine(input) ?: return
+                        if (line.isEmpty()) break
+                        val separator = line.indexOf(':')
+                        if (separator > 0) {
+                            headers[line.substring(0, separator).trim().lowercase()] =
+                                line.substring(separator + 1).trim()
+                        }
+                    }
+                    requestCount.incrementAndGet()
+                    if (!respond(requestLine, headers, socket, random)) return
+                    if (headers["connection"].equals("close", ignoreCase = true)) return
+                }
+            } catch (e: IOException) {
+                // The client went away.
+            }
+        }
+    }
+
+    /** Responds to a request, and returns whether the connection can be kept alive. */
+    private fun respond(
+        requestLine: String,
+        headers: Map<String, String>,
+        socket: Socket,
+        random: Random
+    ): Boolean {
+        val output = socket.getOutputStream()
+        sleepMs(trace.getStepAt(getTraceTimeMs()).rttMs.toLong())
+        val parts = requestLine.split(' ')
+        val path = if (parts.size >= 2) parts[1] else ""
+        val body = bodies[path]
+        if (body == null) {
+            writeHead(output, "404 Not Found", emptyList(), 0)
+            return true
+        }
+        val fault = faults[path]?.poll()
+        if (fault != null) {
+            injectedFaultCount.incrementAndGet()
+        }
+        if (fault is Fault.ResponseCode) {
+            val extraHeaders =
+                if (fault.retryAfterSeconds >= 0) {
+                    listOf("Retry-After: ${fault.retryAfterSeconds}")
+                } else {
+                    emptyList()
+                }
+            writeHead(output, "${fault.responseCode} Injected Fault", extraHeaders, 0)
+            return true
+        }
+
+        var offset = 0
+        var length = body.size
+        val range = headers["range"]?.let { parseRange(it, body.size) }
+        if (range == null) {
+            writeHead(output, "200 OK", listOf("Accept-Ranges: bytes"), length)
+        } else if (range.first >= body.size || range.isEmpty()) {
+            // Past the end of the body, or inverted like bytes=5-3.
+            writeHead(
+                output,
+                "416 Range Not Satisfiable",
+                listOf("Content-Range: bytes */${body.size}"),
+                0
+            )
+            return true
+        } else {
+            offset = range.first
+            length = range.last - range.first + 1
+            writeHead(
+                output,
+                "206 Partial Content",
+                listOf(
+                    "Accept-Ranges: bytes",
+                    "Content-Range: bytes ${range.first}-${range.last}/${body.size}"
+                ),
+                length
+            )
+        }
+
+        val faultBytes = when (fault) {
+            is Fault.ResetAfter -> minOf(fault.bodyBytes, length)
+            is Fault.StallAfter -> minOf(fault.bodyBytes, length)
+            else -> length
+        }
+        writeBody(output, body, offset, faultBytes, random)
+        if (fault is Fault.ResetAfter) {
+            // A zero linger time makes close send a reset rather than a normal end of stream.
+            socket.setSoLinger(true, 0)
+            return false
+        }
+        if (fault is Fault.StallAfter) {
+            sleepMs(fault.durationMs)
+            writeBody(output, body, offset + faultBytes, length - faultBytes, random)
+        }
+        return true
+    }
+
+    private fun writeHead(
+        output: OutputStream,
+        status: String,
+        extraHeaders: List<String>,
+        contentLength: Int
+    ) {
+        val head = StringBuilder()
+            .append("HTTP/1.1 ").append(status).append("\r\n")
+            .append("Content-Type: video/mp4\r\n")
+            .append("Content-Length: ").append(contentLength).append("\r\n")
+        for (header in extraHeaders) {
+            head.append(header).append("\r\n")
+        }
+        head.append("\r\n")
+        output.write(head.toString().toByteArray(Charsets.US_ASCII))
+        output.flush()
+    }
+
+    private fun writeBody(
+        output: OutputStream,
+        body: ByteArray,
+        offset: Int,
+        length: Int,
+        random: Random
+    ) {
+        var written = 0
+        var nextSendTimeNs = System.nanoTime()
+        while (written < length) {
+            val traceTimeMs = getTraceTimeMs()
+            val step = trace.getStepAt(traceTimeMs)
+            if (step.bandwidthKbps == 0) {
+                sleepMs(trace.getStepEndTimeMs(traceTimeMs) - traceTimeMs)
+                nextSendTimeNs = System.nanoTime()
+                continue
+            }
+            val count = minOf(PACKET_SIZE, length - written)
+            // Kilobits per second are bits per millisecond.
+            nextSendTimeNs += count * 8L * 1_000_000 / step.bandwidthKbps
+            if (step.lossRate > 0 && random.nextFloat() < step.lossRate) {
+                nextSendTimeNs += (MIN_RETRANSMISSION_TIMEOUT_MS + step.rttMs) * 1_000_000
+            }
+            sleepMs((nextSendTimeNs - System.nanoTime()) / 1_000_000)
+            output.write(body, offset + written, count)
+            output.flush()
+            written += count
+            servedBytes.addAndGet(count.toLong())
+        }
+    }
+
+    private fun getTraceTimeMs(): Long = (System.nanoTime() - traceStartTimeNs) / 1_000_000
+
+    private fun sleepMs(durationMs: Long) {
+        if (durationMs <= 0) {
+            return
+        }
+        try {
+            Thread.sleep(durationMs)
+        } catch (e: InterruptedException) {
+            throw IOException(e)
+        }
+    }
+
+    private fun parseRange(value: String, bodyLength: Int): IntRange? {
+        if (!value.startsWith("bytes=") || value.contains(',')) return null
+        val bounds = value.substring("bytes=".length).split('-')
+        if (bounds.size != 2 || bounds[0].isEmpty()) return null
+        val start = bounds[0].toIntOrNull() ?: return null
+        val end = if (bounds[1].isEmpty()) bodyLength - 1 else bounds[1].toIntOrNull() ?: return null
+        return start..minOf(end, bodyLength - 1)
+    }
+
+    private fun readLine(input: InputStream): String? {
+        val line = StringBuilder()
+        while (true) {
+            val byte = input.read()
+            if (byte == -1) return if (line.isEmpty()) null else line.toString()
+            if (byte == '\n'.code) return line.toString().trimEnd('\r')
+            line.append(byte.toChar())
+        }
+    }
+
+    companion object {
+
+        /** The size of the packets the body is paced in, in bytes, that of a typical TCP segment. */
+        const val PACKET_SIZE = 1460
+
+        /** The minimum retransmission timeout of TCP, in milliseconds, as in Linux. */
+        const val MIN_RETRANSMISSION_TIMEOUT_MS = 200L
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.net.Uri
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.source.LoadEventInfo
+import com.google.android.exoplayer2.source.MediaLoadData
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.HttpDataSource
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.IOException
+import java.io.StringReader
+import java.net.SocketTimeoutException
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Loads from a [NetworkEmulationServer] with OkHttp, and feeds the failures it injects to
+ * [CustomLoadErrorHandlingPolicy] as the OkHttp data source would report them.
+ */
+class NetworkEmulationServerTest {
+
+    private val body = ByteArray(64 * 1024) { (it * 31).toByte() }
+    private val dataSpec = DataSpec(Uri.parse("http://127.0.0.1/fixture.mp4"))
+    private val client = OkHttpClient.Builder().readTimeout(2, TimeUnit.SECONDS).build()
+    private var server: NetworkEmulationServer? = null
+
+    private fun startServer(trace: NetworkTrace): NetworkEmulationServer {
+        val newServer = NetworkEmulationServer(trace)
+        newServer.setBody(PATH, body)
+        server = newServer
+        return newServer
+    }
+
+    private fun get(url: String, range: String? = null): Response {
+        val request = Request.Builder().url(url)
+        if (range != null) {
+            request.header("Range", range)
+        }
+        return client.newCall(request.build()).execute()
+    }
+
+    private fun timeMs(block: () -> Unit): Long {
+        val startTimeNs = System.nanoTime()
+        block()
+        return (System.nanoTime() - startTimeNs) / 1_000_000
+    }
+
+    private fun errorInfo(exception: IOException): LoadErrorHandlingPolicy.LoadErrorInfo {
+        return LoadErrorHandlingPolicy.LoadErrorInfo(
+            LoadEventInfo(/* loadTaskId= */ 1, dataSpec, /* elapsedRealtimeMs= */ 0),
+            MediaLoadData(C.DATA_TYPE_MEDIA),
+            exception,
+            /* errorCount= */ 1
+        )
+    }
+
+    @After
+    fun tearDown() {
+        server?.close()
+    }
+
+    @Test
+    fun trace_parsesAndLoops() {
+        val trace = NetworkTrace.parse(
+            StringReader(
+                """
+                # duration_ms bandwidth_kbps rtt_ms loss
+                1000 4000 50 0.01
+                500, 0, 50      # an outage
+
+                1500 800 150
+                """.trimIndent()
+            )
+        )
+
+        assertEquals(3000L, trace.durationMs)
+        assertEquals(4000, trace.getStepAt(999).bandwidthKbps)
+        assertEquals(0, trace.getStepAt(1000).bandwidthKbps)
+        assertEquals(1500L, trace.getStepEndTimeMs(1200))
+        assertEquals(800, trace.getStepAt(2999).bandwidthKbps)
+        assertEquals(0.01f, trace.getStepAt(3000).lossRate, 0f)
+        assertEquals(4500L, trace.getStepEndTimeMs(4000))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun trace_withInvalidLine_throws() {
+        NetworkTrace.parse(StringReader("1000 fast 50"))
+    }
+
+    @Test
+    fun rangeRequest_isServed() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000))
+
+        val response = get(server.url(PATH), range = "bytes=1000-1999")
+
+        assertEquals(206, response.code())
+        assertArrayEquals(body.copyOfRange(1000, 2000), response.body()!!.bytes())
+        assertEquals(1000L, server.getServedBytes())
+    }
+
+    @Test
+    fun unsatisfiableRange_isRejected() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000))
+
+        for (range in listOf("bytes=5-3", "bytes=${body.size}-")) {
+            val response = get(server.url(PATH), range)
+
+            assertEquals(range, 416, response.code())
+            assertEquals(range, "bytes */${body.size}", response.header("Content-Range"))
+            response.close()
+        }
+        assertEquals(0L, server.getServedBytes())
+    }
+
+    @Test
+    fun bandwidthAndRtt_shapeTransfer() {
+        // 64 KiB at 2048 kbps take 256 ms, after a round trip of 100 ms.
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 2048, rttMs = 100))
+
+        val elapsedMs = timeMs { get(server.url(PATH)).body()!!.bytes() }
+
+        assertTrue("took $elapsedMs ms", elapsedMs >= 340)
+    }
+
+    @Test
+    fun outage_holdsBackBody() {
+        val server = startServer(
+            NetworkTrace(
+                listOf(
+                    NetworkTrace.Step(durationMs = 300, bandwidthKbps = 0),
+                    NetworkTrace.Step(durationMs = 10_000, bandwidthKbps = 100_000)
+                )
+            )
+        )
+
+        val elapsedMs = timeMs { get(server.url(PATH)).body()!!.bytes() }
+
+        assertTrue("took $elapsedMs ms", elapsedMs >= 250)
+    }
+
+    @Test
+    fun loss_delaysLostPackets() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000, lossRate = 1f))
+
+        val elapsedMs = timeMs {
+            get(server.url(PATH), range = "bytes=0-${2 * NetworkEmulationServer.PACKET_SIZE - 1}")
+                .body()!!.bytes()
+        }
+
+        assertTrue(
+            "took $elapsedMs ms",
+            elapsedMs >= 2 * NetworkEmulationServer.MIN_RETRANSMISSION_TIMEOUT_MS
+        )
+    }
+
+    @Test
+    fun serverErrorFault_isRetriedAfterRetryAfter() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000))
+        server.enqueueFault(PATH, NetworkEmulationServer.Fault.ResponseCode(503, 3))
+        val policy = CustomLoadErrorHandlingPolicy(random = Random(0))
+
+        val response = get(server.url(PATH))
+        val exception = HttpDataSource.InvalidResponseCodeException(
+            response.code(), response.message(), response.headers().toMultimap(), dataSpec,
+            response.body()!!.bytes()
+        )
+
+        assertEquals(503, response.code())
+        assertEquals(3_000L, policy.getRetryDelayMsFor(errorInfo(exception)))
+        assertEquals(1, policy.getServerErrorRetryCount())
+        assertEquals(200, get(server.url(PATH)).code())
+        assertEquals(1, server.getInjectedFaultCount())
+    }
+
+    @Test
+    fun resetFault_failsMidBodyAndIsRetried() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000))
+        server.enqueueFault(PATH, NetworkEmulationServer.Fault.ResetAfter(bodyBytes = 4096))
+        val policy = CustomLoadErrorHandlingPolicy(random = Random(0))
+
+        val exception = try {
+            get(server.url(PATH)).body()!!.bytes()
+            fail("The body was read in full")
+            return
+        } catch (e: IOException) {
+            HttpDataSource.HttpDataSourceException(
+                e, dataSpec, HttpDataSource.HttpDataSourceException.TYPE_READ
+            )
+        }
+
+        assertTrue(policy.getRetryDelayMsFor(errorInfo(exception)) in 500L..1_000L)
+        assertEquals(0, policy.getTimeoutRetryCount())
+        assertArrayEquals(body, get(server.url(PATH)).body()!!.bytes())
+    }
+
+    @Test
+    fun stallFault_timesOutReadAndIsRetriedSooner() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000))
+        server.enqueueFault(
+            PATH, NetworkEmulationServer.Fault.StallAfter(bodyBytes = 4096, durationMs = 1_000)
+        )
+        val impatientClient = client.newBuilder().readTimeout(200, TimeUnit.MILLISECONDS).build()
+        val policy = CustomLoadErrorHandlingPolicy(random = Random(0))
+
+        val exception = try {
+            impatientClient.newCall(Request.Builder().url(server.url(PATH)).build()).execute()
+                .body()!!.bytes()
+            fail("The read did not time out")
+            return
+        } catch (e: SocketTimeoutException) {
+            HttpDataSource.HttpDataSourceException(
+                e, dataSpec, HttpDataSource.HttpDataSourceException.TYPE_READ
+            )
+        }
+
+        assertTrue(policy.getRetryDelayMsFor(errorInfo(exception)) in 250L..500L)
+        assertEquals(1, policy.getTimeoutRetryCount())
+    }
+
+    @Test
+    fun stallFault_resumesBody() {
+        val server = startServer(NetworkTrace.constant(bandwidthKbps = 100_000))
+        server.enqueueFault(
+            PATH, NetworkEmulationServer.Fault.StallAfter(bodyBytes = 4096, durationMs = 300)
+        )
+
+        var received = ByteArray(0)
+        val elapsedMs = timeMs { received = get(server.url(PATH)).body()!!.bytes() }
+
+        assertArrayEquals(body, received)
+        assertTrue("took $elapsedMs ms", elapsedMs >= 250)
+    }
+
+    companion object {
+        private const val PATH = "/fixture.mp4"
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import java.io.BufferedReader
+import java.io.File
+import java.io.Reader
+
+/**
+ * A sequence of network conditions, each holding for a duration, that loops once it is over.
+ *
+ * A trace file has one step per line, as its duration in milliseconds, its bandwidth in kilobits
+ * per second, its round-trip time in milliseconds and its packet loss rate from 0 to 1, separated
+ * by commas or whitespace. The loss rate can be left out. Blank lines and lines starting with `#`
+ * are ignored:
+ *
+ * ```
+ * # duration_ms bandwidth_kbps rtt_ms loss
+ * 5000 4000 60 0.001
+ * 2000 0 60      # an outage
+ * 5000 800 150 0.02
+ * ```
+ *
+ * Recorded traces, such as the public 3G/HSDPA and LTE throughput logs, convert to this format by
+ * turning each throughput sample into a step.
+ */
+class NetworkTrace(steps: List<Step>) {
+
+    /**
+     * The network conditions of a step.
+     *
+     * @param durationMs How long the conditions hold, in milliseconds.
+     * @param bandwidthKbps The bandwidth, in kilobits per second, or 0 for an outage.
+     * @param rttMs The round-trip time, in milliseconds.
+     * @param lossRate The fraction of packets lost, from 0 to 1.
+     */
+    data class Step(
+        val durationMs: Long,
+        val bandwidthKbps: Int,
+        val rttMs: Int = 0,
+        val lossRate: Float = 0f
+    ) {
+        init {
+            require(durationMs > 0) { "durationMs must be positive" }
+            require(bandwidthKbps >= 0) { "bandwidthKbps cannot be negative" }
+            require(rttMs >= 0) { "rttMs cannot be negative" }
+            require(lossRate in 0f..1f) { "lossRate must be between 0 and 1" }
+        }
+    }
+
+    /** The steps of the trace. */
+    val steps: List<Step> = steps.toList()
+
+    /** The duration of one pass over the trace, in milliseconds. */
+    val durationMs: Long
+
+    private val stepStartTimesMs: LongArray
+
+    init {
+        require(steps.isNotEmpty()) { "A trace needs at least one step" }
+        require(steps.any { it.bandwidthKbps > 0 }) { "A trace cannot be a permanent outage" }
+        stepStartTimesMs = LongArray(steps.size)
+        var timeMs = 0L
+        for (i in steps.indices) {
+            stepStartTimesMs[i] = timeMs
+            timeMs += steps[i].durationMs
+        }
+        durationMs = timeMs
+    }
+
+    /** Returns the step holding at [timeMs] milliseconds from the start of the trace. */
+    fun getStepAt(timeMs: Long): Step = steps[getStepIndex(timeMs)]
+
+    /**
+     * Returns the time, in milliseconds from the start of the trace, at which the step holding at
+     * [timeMs] ends.
+     */
+    fun getStepEndTimeMs(timeMs: Long): Long {
+        val index = getStepIndex(timeMs)
+        val passStartMs = timeMs - Math.floorMod(timeMs, durationMs)
+        return passStartMs + stepStartTimesMs[index] + steps[index].durationMs
+    }
+
+    private fun getStepIndex(timeMs: Long): Int {
+        val positionMs = Math.floorMod(timeMs, durationMs)
+        val index = stepStartTimesMs.binarySearch(positionMs)
+        // A miss returns the negated insertion point, after the step holding the position.
+        return if (index >= 0) index else -index - 2
+    }
+
+    companion object {
+
+        /** Returns a trace with constant conditions. */
+        @JvmStatic
+        @JvmOverloads
+        fun constant(bandwidthKbps: Int, rttMs: Int = 0, lossRate: Float = 0f): NetworkTrace {
+            return NetworkTrace(listOf(Step(Long.MAX_VALUE / 2, bandwidthKbps, rttMs, lossRate)))
+        }
+
+        /** Parses a trace file. */
+        @JvmStatic
+        fun parse(file: File): NetworkTrace = file.reader().use { parse(it) }
+
+        /** Parses a trace in the format of trace files. */
+        @JvmStatic
+        fun parse(reader: Reader): NetworkTrace {
+            val steps = ArrayList<Step>()
+            BufferedReader(reader).lineSequence().forEachIndexed { index, rawLine ->
+                val line = rawLine.substringBefore('#').trim()
+                if (line.isEmpty()) {
+                    return@forEachIndexed
+                }
+                val fields = line.split(FIELD_SEPARATOR)
+                try {
+                    require(fields.size in 3..4) { "Expected 3 or 4 fields" }
+                    steps.add(
+                        Step(
+                            fields[0].toLong(),
+                            fields[1].toInt(),
+                            fields[2].toInt(),
+                            if (fields.size == 4) fields[3].toFloat() else 0f
+                        )
+                    )
+                } catch (e: IllegalArgumentException) {
+                    throw IllegalArgumentException("Invalid trace line ${index + 1}: $rawLine", e)
+                }
+            }
+            return NetworkTrace(steps)
+        }
+
+        private val FIELD_SEPARATOR = Regex("[,\\s]+")
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/** Logs to a [PlayerEventLogger] at high rates and checks the files it writes. */
+class PlayerEventLoggerTest {
+
+    companion object {
+        private const val PRODUCER_COUNT = 4
+        private const val RECORDS_PER_PRODUCER = 50_000
+        private const val MAX_FILE_BYTES = 64 * 1024L
+        private const val TERMINATION_TIMEOUT_MS = 10_000L
+        private val COLUMNS = listOf("producer", "index", "state")
+        private const val HEADER = "timestamp_ms,event,producer,index,state"
+
+        // Generous bounds, so that a loaded machine does not fail the test. A call that waited on
+        // the disk would take milliseconds per record.
+        private const val MAX_MEAN_LOG_NS = 20_000L
+        private const val MAX_LOG_NS = 50_000_000L
+    }
+
+    private lateinit var directory: File
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("session_logs").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun highEventRate_writesEveryRecordOnce() {
+        val logger = PlayerEventLogger(
+            directory,
+            "session",
+            COLUMNS,
+            MAX_FILE_BYTES,
+            /* maxFileCount= */ 1_000,
+            /* flushIntervalMs= */ 10,
+            /* maxPendingRecords= */ PRODUCER_COUNT * RECORDS_PER_PRODUCER
+        )
+        val totalLogNs = AtomicLong()
+        val maxLogNs = AtomicLong()
+        val start = CountDownLatch(1)
+        val producers = (0 until PRODUCER_COUNT).map { producer ->
+            Thread {
+                start.await()
+                for (i in 0 until RECORDS_PER_PRODUCER) {
+                    val startNs = System.nanoTime()
+                    logger.log("event", producer, i, "playing")
+                    val elapsedNs = System.nanoTime() - startNs
+                    totalLogNs.addAndGet(elapsedNs)
+                    maxLogNs.accumulateAndGet(elapsedNs) { a, b -> maxOf(a, b) }
+                }
+            }
+        }
+        producers.forEach { it.start() }
+        start.countDown()
+        producers.forEach { it.join(TimeUnit.SECONDS.toMillis(30)) }
+        logger.close()
+        assertTrue(logger.awaitTermination(TERMINATION_TIMEOUT_MS))
+
+        val recordCount = PRODUCER_COUNT * RECORDS_PER_PRODUCER
+        assertEquals(0L, logger.getDroppedRecordCount())
+        assertEquals(recordCount.toLong(), logger.getLoggedRecordCount())
+        assertEquals(recordCount.toLong(), logger.getWrittenRecordCount())
+        assertTrue(logger.getRotationCount() > 0)
+
+        val seen = Array(PRODUCER_COUNT) { BooleanArray(RECORDS_PER_PRODUCER) }
+        var lineCount = 0
+        for (file in logger.getFiles()) {
+            assertTrue(file.name, file.length() <= MAX_FILE_BYTES)
+            val lines = file.readLines()
+            assertEquals(HEADER, lines.first())
+            for (line in lines.drop(1)) {
+                val fields = line.split(',')
+                assertEquals(line, 5, fields.size)
+                assertEquals("event", fields[1])
+                val producer = fields[2].toInt()
+                val i = fields[3].toInt()
+                assertTrue("duplicate $line", !seen[producer][i])
+                seen[producer][i] = true
+                lineCount++
+            }
+        }
+        assertEquals(recordCount, lineCount)
+
+        val meanLogNs = totalLogNs.get() / recordCount
+        assertTrue("mean ${meanLogNs}ns", meanLogNs < MAX_MEAN_LOG_NS)
+        assertTrue("max ${maxLogNs.get()}ns", maxLogNs.get() < MAX_LOG_NS)
+    }
+
+    @Test
+    fun rotation_keepsMaxFileCount() {
+        val logger = PlayerEventLogger(
+            directory, "session", COLUMNS, /* maxFileBytes= */ 1_024, /* maxFileCount= */ 3
+        )
+        repeat(1_000) { logger.log("event", it) }
+        logger.close()
+        assertTrue(logger.awaitTermination(TERMINATION_TIMEOUT_MS))
+
+        val files = logger.getFiles()
+        assertEquals(listOf("session.csv", "session.1.csv", "session.2.csv"), files.map { it.name })
+        assertEquals(3, directory.listFiles()!!.size)
+        // The newest file holds the last record.
+        assertTrue(files[0].readLines().last().endsWith(",event,999,,"))
+    }
+
+    @Test
+    fun fullQueue_dropsRecordsWithoutBlocking() {
+        val logger = PlayerEventLogger(
+            directory,
+            "session",
+            COLUMNS,
+            PlayerEventLogger.DEFAULT_MAX_FILE_BYTES,
+            PlayerEventLogger.DEFAULT_MAX_FILE_COUNT,
+            /* flushIntervalMs= */ 60_000,
+            /* maxPendingRecords= */ 100
+        )
+        // Below the batch size the writer only runs on the flush interval, so the queue fills up.
+        repeat(200) { logger.log("event", it) }
+
+        assertEquals(100L, logger.getLoggedRecordCount())
+        assertEquals(100L, logger.getDroppedRecordCount())
+        logger.close()
+        assertTrue(logger.awaitTermination(TERMINATION_TIMEOUT_MS))
+        assertEquals(100L, logger.getWrittenRecordCount())
+        assertFalse(logger.log("event", "after close"))
+    }
+
+    @Test
+    fun records_haveFixedColumnsAfterHeader() {
+        val logger = PlayerEventLogger(directory, "session", COLUMNS)
+        logger.log("event", 1, 2, "playing")
+        logger.log("event", 1)
+        logger.log("event", null, 2, null)
+        logger.close()
+        assertTrue(logger.awaitTermination(TERMINATION_TIMEOUT_MS))
+
+        val lines = logger.getFiles().single().readLines()
+        assertEquals(HEADER, lines[0])
+        assertEquals(
+            listOf("event,1,2,playing", "event,1,,", "event,,2,"),
+            lines.drop(1).map { it.substringAfter(',') }
+        )
+        for (line in lines) {
+            assertEquals(line, 5, line.split(',').size)
+        }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun moreFieldsThanColumns_throws() {
+        val logger = PlayerEventLogger(directory, "session", COLUMNS)
+        try {
+            logger.log("event", 1, 2, "playing", "extra")
+        } finally {
+            logger.close()
+        }
+    }
+
+    @Test
+    fun playerStateColumns_includeEveryDecoderCounter() {
+        assertEquals(15, PlayerEventLogger.PLAYER_STATE_COLUMNS.size)
+        assertEquals(
+            PlayerEventLogger.PLAYER_STATE_COLUMNS.size,
+            PlayerEventLogger.PLAYER_STATE_COLUMNS.toSet().size
+        )
+    }
+
+    @Test
+    fun closeWhileLogging_countsEveryRecordOnce() {
+        val logger = PlayerEventLogger(
+            directory,
+            "session",
+            COLUMNS,
+            PlayerEventLogger.DEFAULT_MAX_FILE_BYTES,
+            PlayerEventLogger.DEFAULT_MAX_FILE_COUNT,
+            /* flushIntervalMs= */ 1
+        )
+        val acceptedCount = AtomicLong()
+        val start = CountDownLatch(1)
+        val producers = (0 until PRODUCER_COUNT).map { producer ->
+            Thread {
+                start.await()
+                for (i in 0 until RECORDS_PER_PRODUCER) {
+                    if (logger.log("event", producer, i, "playing")) {
+                        acceptedCount.incrementAndGet()
+                    }
+                }
+            }
+        }
+        producers.forEach { it.start() }
+        start.countDown()
+        // Close while the producers are still logging.
+        Thread.sleep(5)
+        logger.close()
+        producers.forEach { it.join(TimeUnit.SECONDS.toMillis(30)) }
+        assertTrue(logger.awaitTermination(TERMINATION_TIMEOUT_MS))
+
+        val recordCount = (PRODUCER_COUNT * RECORDS_PER_PRODUCER).toLong()
+        assertEquals(acceptedCount.get(), logger.getLoggedRecordCount())
+        assertEquals(acceptedCount.get(), logger.getWrittenRecordCount())
+        assertEquals(recordCount, logger.getLoggedRecordCount() + logger.getDroppedRecordCount())
+        val writtenLines = logger.getFiles().sumOf { it.readLines().size - 1 }
+        assertEquals(acceptedCount.get(), writtenLines.toLong())
+    }
+
+    @Test
+    fun writeFailure_dropsLaterRecords() {
+        // A directory in place of the log file makes opening it fail.
+        File(directory, "session.csv").mkdirs()
+        val logger = PlayerEventLogger(
+            directory,
+            "session",
+            COLUMNS,
+            PlayerEventLogger.DEFAULT_MAX_FILE_BYTES,
+            PlayerEventLogger.DEFAULT_MAX_FILE_COUNT,
+            /* flushIntervalMs= */ 1
+        )
+        logger.log("event", 0)
+
+        val deadlineMs = System.currentTimeMillis() + TERMINATION_TIMEOUT_MS
+        while (logger.log("event", 1) && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(1)
+        }
+
+        assertFalse(logger.log("event", 2))
+        assertEquals(0L, logger.getWrittenRecordCount())
+        assertTrue(logger.getDroppedRecordCount() >= 2)
+        logger.close()
+        assertTrue(logger.awaitTermination(TERMINATION_TIMEOUT_MS))
+    }
+}
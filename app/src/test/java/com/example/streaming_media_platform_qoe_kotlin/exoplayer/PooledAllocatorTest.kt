@@ -0,0 +1,61 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.google.android.exoplayer2.upstream.Allocation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+/** Exercises [PooledAllocator] and its [SegmentPool] across player restarts. */
+class PooledAllocatorTest {
+
+    companion object {
+        private const val SEGMENT_SIZE = 1024
+        private const val MAX_POOLED_BYTES = 8 * SEGMENT_SIZE
+    }
+
+    @Test
+    fun segmentsReleasedByOnePlayerAreReusedByTheNext() {
+        val pool = SegmentPool(SEGMENT_SIZE, MAX_POOLED_BYTES)
+        val firstAllocator = PooledAllocator(pool)
+        val allocations = Array<Allocation>(4) { firstAllocator.allocate() }
+        firstAllocator.release(allocations)
+        firstAllocator.reset()
+
+        val secondAllocator = PooledAllocator(pool)
+        val reused = secondAllocator.allocate()
+
+        assertSame(allocations[3], reused)
+        assertEquals(5L, pool.allocationCount)
+        assertEquals(1L, pool.reuseCount)
+        assertEquals(4 * SEGMENT_SIZE, pool.highWaterBytes)
+        assertEquals(3 * SEGMENT_SIZE, pool.pooledBytes)
+        assertEquals(SEGMENT_SIZE, secondAllocator.totalBytesAllocated)
+    }
+
+    @Test
+    fun release_keepsAtMostMaxPooledBytes() {
+        val pool = SegmentPool(SEGMENT_SIZE, MAX_POOLED_BYTES)
+        val allocator = PooledAllocator(pool)
+
+        allocator.release(Array<Allocation>(12) { allocator.allocate() })
+
+        assertEquals(MAX_POOLED_BYTES, pool.pooledBytes)
+        assertEquals(0, pool.outstandingBytes)
+    }
+
+    @Test
+    fun setTargetBufferSize_trimsPoolBeyondTarget() {
+        val pool = SegmentPool(SEGMENT_SIZE, MAX_POOLED_BYTES)
+        val allocator = PooledAllocator(pool)
+        allocator.setTargetBufferSize(MAX_POOLED_BYTES)
+        allocator.release(Array<Allocation>(6) { allocator.allocate() })
+        val inUse = allocator.allocate()
+
+        // One segment is in use, so one more can stay pooled under a 2-segment target.
+        val freedBytes = allocator.setTargetBufferSize(2 * SEGMENT_SIZE)
+
+        assertEquals(4 * SEGMENT_SIZE, freedBytes)
+        assertEquals(SEGMENT_SIZE, pool.pooledBytes)
+        allocator.release(inUse)
+    }
+}
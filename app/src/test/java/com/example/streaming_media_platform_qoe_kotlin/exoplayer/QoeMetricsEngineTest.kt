@@ -0,0 +1,137 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import com.example.streaming_media_platform_qoe_kotlin.data_models.DecoderCountersData
+import com.google.android.exoplayer2.Player
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/** Drives [QoeMetricsEngine] with a synthetic session. */
+class QoeMetricsEngineTest {
+
+    private val engine = QoeMetricsEngine()
+    private var nowMs = 100_000L
+
+    private fun advance(durationMs: Long) {
+        nowMs += durationMs
+        engine.update(nowMs)
+    }
+
+    private fun setState(playbackState: Int, playWhenReady: Boolean = true) {
+        engine.onPlayerStateChanged(nowMs, playbackState, playWhenReady)
+    }
+
+    /** Plays [seconds] seconds at 30 fps, one decoder interval per second. */
+    private fun play(seconds: Int, droppedPerSecond: Int = 0) {
+        val deltas = DecoderCountersData()
+        repeat(seconds) {
+            nowMs += 1_000
+            deltas.inputBufferCount = 30
+            deltas.renderedOutputBufferCount = 30 - droppedPerSecond
+            deltas.droppedBufferCount = droppedPerSecond
+            engine.onDecoderCounters(nowMs, deltas)
+        }
+    }
+
+    private fun startPlaying() {
+        engine.update(nowMs)
+        setState(Player.STATE_BUFFERING)
+        advance(2_000)
+        setState(Player.STATE_READY)
+    }
+
+    @Test
+    fun startup_isNotRebuffering() {
+        startPlaying()
+        play(seconds = 5)
+
+        val session = engine.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+        assertEquals(0, session.rebufferCount)
+        assertEquals(0f, session.rebufferRatio, 0f)
+        assertEquals(5_000L, session.playTimeMs)
+        assertEquals(7_000L, session.durationMs)
+    }
+
+    @Test
+    fun rebuffer_leavesShortWindowOnceOver() {
+        startPlaying()
+        play(seconds = 20)
+        setState(Player.STATE_BUFFERING)
+        advance(5_000)
+        setState(Player.STATE_READY)
+        play(seconds = 5)
+
+        var last10s = engine.getMetrics(QoeMetricsEngine.WINDOW_10_S)
+        assertEquals(1, last10s.rebufferCount)
+        assertEquals(5_000L, last10s.rebufferTimeMs)
+        assertEquals(0.5f, last10s.rebufferRatio, 0f)
+
+        play(seconds = 10)
+
+        last10s = engine.getMetrics(QoeMetricsEngine.WINDOW_10_S)
+        assertEquals(0, last10s.rebufferCount)
+        assertEquals(0f, last10s.rebufferRatio, 0f)
+        val last1min = engine.getMetrics(QoeMetricsEngine.WINDOW_1_MIN)
+        assertEquals(1, last1min.rebufferCount)
+        assertEquals(5_000f / 40_000f, last1min.rebufferRatio, 1e-6f)
+        val session = engine.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+        assertEquals(1, session.rebufferCount)
+        assertEquals(5_000L, session.rebufferTimeMs)
+    }
+
+    @Test
+    fun seek_isNotRebuffering() {
+        startPlaying()
+        play(seconds = 5)
+        engine.onSeek(nowMs)
+        setState(Player.STATE_BUFFERING)
+        advance(1_000)
+        setState(Player.STATE_READY)
+
+        val session = engine.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+        assertEquals(0, session.rebufferCount)
+        assertEquals(0L, session.rebufferTimeMs)
+    }
+
+    @Test
+    fun pausedBuffering_isNotRebuffering() {
+        startPlaying()
+        play(seconds = 5)
+        setState(Player.STATE_READY, playWhenReady = false)
+        setState(Player.STATE_BUFFERING, playWhenReady = false)
+        advance(3_000)
+
+        val session = engine.getMetrics(QoeMetricsEngine.WINDOW_SESSION)
+        assertEquals(0, session.rebufferCount)
+        assertEquals(5_000L, session.playTimeMs)
+    }
+
+    @Test
+    fun drops_showInShortWindowAndContinuity() {
+        startPlaying()
+        play(seconds = 50)
+        play(seconds = 10, droppedPerSecond = 6)
+
+        val last10s = engine.getMetrics(QoeMetricsEngine.WINDOW_10_S)
+        assertEquals(6f, last10s.droppedFramesPerSecond, 1e-3f)
+        assertEquals(30f, last10s.inputBuffersPerSecond, 1e-3f)
+        assertEquals(24f / 30f, last10s.continuityRate, 1e-6f)
+        val last1min = engine.getMetrics(QoeMetricsEngine.WINDOW_1_MIN)
+        assertEquals(1f, last1min.droppedFramesPerSecond, 1e-3f)
+    }
+
+    @Test
+    fun longGap_onlyCountsTowardsSession() {
+        startPlaying()
+        advance(3_600_000)
+
+        assertEquals(
+            10_000L, engine.getMetrics(QoeMetricsEngine.WINDOW_10_S).playTimeMs
+        )
+        assertEquals(
+            60_000L, engine.getMetrics(QoeMetricsEngine.WINDOW_1_MIN).playTimeMs
+        )
+        assertEquals(
+            3_600_000L, engine.getMetrics(QoeMetricsEngine.WINDOW_SESSION).playTimeMs
+        )
+    }
+}
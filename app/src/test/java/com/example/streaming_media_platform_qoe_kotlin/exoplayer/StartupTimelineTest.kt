@@ -0,0 +1,277 @@
+package com.example.streaming_media_platform_qoe_kotlin.exoplayer
+
+import android.net.Uri
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.Format
+import com.google.android.exoplayer2.Player
+import com.google.android.exoplayer2.Timeline
+import com.google.android.exoplayer2.analytics.AnalyticsListener
+import com.google.android.exoplayer2.source.LoadEventInfo
+import com.google.android.exoplayer2.source.MediaLoadData
+import com.google.android.exoplayer2.source.TrackGroup
+import com.google.android.exoplayer2.source.TrackGroupArray
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.util.MimeTypes
+import okhttp3.Call
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.net.Proxy
+
+/** Drives [StartupTimeline] with network and analytics events at controlled times. */
+class StartupTimelineTest {
+
+    private val clock = FakeClock()
+    private val completedTimelines = ArrayList<StartupTimeline>()
+    private val timeline = StartupTimeline({ completedTimelines.add(it) }, clock)
+    private val network = timeline.networkEventListener
+    private val client = OkHttpClient()
+
+    private fun newCall(): Call =
+        client.newCall(Request.Builder().url("https://127.0.0.1/fixture.mp4").build())
+
+    /** Returns an event time at [realtimeMs], as the player timestamps analytics events. */
+    private fun at(realtimeMs: Long): AnalyticsListener.EventTime {
+        return AnalyticsListener.EventTime(
+            realtimeMs,
+            Timeline.EMPTY,
+            /* windowIndex= */ 0,
+            /* mediaPeriodId= */ null,
+            /* eventPlaybackPositionMs= */ 0,
+            Timeline.EMPTY,
+            /* currentWindowIndex= */ 0,
+            /* currentMediaPeriodId= */ null,
+            /* currentPlaybackPositionMs= */ 0,
+            /* totalBufferedDurationMs= */ 0
+        )
+    }
+
+    private fun loadStarted(realtimeMs: Long) {
+        timeline.onLoadStarted(
+            at(realtimeMs),
+            LoadEventInfo(
+                /* loadTaskId= */ 1,
+                DataSpec(Uri.parse("https://127.0.0.1/fixture.mp4")),
+                realtimeMs
+            ),
+            MediaLoadData(C.DATA_TYPE_MEDIA)
+        )
+    }
+
+    private fun tracksChanged(realtimeMs: Long, vararg sampleMimeTypes: String) {
+        val groups = sampleMimeTypes.map {
+            TrackGroup(Format.Builder().setSampleMimeType(it).build())
+        }
+        timeline.onTracksChanged(
+            at(realtimeMs), TrackGroupArray(*groups.toTypedArray()), TrackSelectionArray()
+        )
+    }
+
+    /** Runs a first call on a new connection with TLS, from the current time of the clock. */
+    private fun runCallWithNewConnection(call: Call) {
+        val address = InetSocketAddress.createUnresolved("127.0.0.1", 443)
+        network.callStart(call)
+        network.dnsStart(call, "127.0.0.1")
+        clock.advance(20)
+        network.dnsEnd(call, "127.0.0.1", emptyList())
+        network.connectStart(call, address, Proxy.NO_PROXY)
+        clock.advance(30)
+        network.secureConnectStart(call)
+        clock.advance(40)
+        network.secureConnectEnd(call, null)
+        network.connectEnd(call, address, Proxy.NO_PROXY, null)
+        clock.advance(5)
+        network.requestHeadersStart(call)
+        clock.advance(100)
+        network.responseHeadersStart(call)
+        clock.advance(5)
+        network.responseHeadersEnd(call, null)
+    }
+
+    @Test
+    fun eventsInOrder_timeEveryPhase() {
+        clock.timeMs = 1_000
+        timeline.start()
+        clock.advance(10)
+        loadStarted(clock.timeMs)
+        runCallWithNewConnection(newCall())
+        // The response headers ended at 1210.
+        tracksChanged(1_300, MimeTypes.VIDEO_H264, MimeTypes.AUDIO_AAC)
+        timeline.onVideoDecoderInitialized(at(1_320), "video", 1_320, 40)
+        timeline.onAudioDecoderInitialized(at(1_310), "audio", 1_310, 25)
+        timeline.onPlaybackStateChanged(at(1_500), Player.STATE_BUFFERING)
+        timeline.onPlaybackStateChanged(at(1_600), Player.STATE_READY)
+
+        assertFalse(timeline.isCompleted)
+        timeline.onRenderedFirstFrame(at(1_630), null)
+
+        assertTrue(timeline.isCompleted)
+        assertEquals(listOf(timeline), completedTimelines)
+        assertEquals(10L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_PREPARE))
+        assertEquals(20L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_DNS))
+        assertEquals(30L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_CONNECT))
+        assertEquals(40L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_TLS))
+        assertEquals(100L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_TIME_TO_FIRST_BYTE))
+        assertEquals(90L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_SNIFFING))
+        assertEquals(40L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_DECODER_INIT))
+        assertEquals(300L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_BUFFERING))
+        assertEquals(30L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_FIRST_FRAME))
+        assertEquals(630L, timeline.totalDurationMs)
+        assertEquals(
+            "startup 630ms: prepare 10, dns 20, connect 30, tls 40, ttfb 100, sniff 90, " +
+                "decoder 40, buffering 300, first frame 30",
+            timeline.summaryString
+        )
+    }
+
+    @Test
+    fun reusedConnection_leavesConnectionPhasesUnset() {
+        timeline.start()
+        loadStarted(5)
+        val call = newCall()
+        network.callStart(call)
+        clock.timeMs = 10
+        network.requestHeadersStart(call)
+        clock.timeMs = 60
+        network.responseHeadersStart(call)
+        network.responseHeadersEnd(call, null)
+        tracksChanged(100, MimeTypes.AUDIO_AAC)
+        timeline.onPlaybackStateChanged(at(150), Player.STATE_READY)
+
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_DNS))
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_CONNECT))
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_TLS))
+        assertEquals(50L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_TIME_TO_FIRST_BYTE))
+        assertEquals(40L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_SNIFFING))
+        assertTrue(timeline.summaryString.contains("dns -, connect -, tls -, ttfb 50"))
+    }
+
+    @Test
+    fun laterCalls_areIgnored() {
+        timeline.start()
+        val firstCall = newCall()
+        network.callStart(firstCall)
+        runCallWithNewConnection(newCall())
+
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_DNS))
+        assertEquals(
+            C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_TIME_TO_FIRST_BYTE)
+        )
+    }
+
+    @Test
+    fun eventsBeforeStart_areIgnored() {
+        runCallWithNewConnection(newCall())
+        loadStarted(clock.timeMs)
+        tracksChanged(clock.timeMs, MimeTypes.AUDIO_AAC)
+        timeline.onPlaybackStateChanged(at(clock.timeMs), Player.STATE_READY)
+
+        assertFalse(timeline.isCompleted)
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_DNS))
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_PREPARE))
+        assertTrue(completedTimelines.isEmpty())
+    }
+
+    @Test
+    fun firstFrameBeforeReady_completesWhenReady() {
+        timeline.start()
+        loadStarted(20)
+        tracksChanged(200, MimeTypes.VIDEO_H264)
+        timeline.onRenderedFirstFrame(at(380), null)
+
+        assertFalse(timeline.isCompleted)
+        timeline.onPlaybackStateChanged(at(400), Player.STATE_READY)
+
+        assertTrue(timeline.isCompleted)
+        // Without network events, sniffing is timed from the first load.
+        assertEquals(180L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_SNIFFING))
+        assertEquals(0L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_FIRST_FRAME))
+        assertEquals(380L, timeline.totalDurationMs)
+    }
+
+    @Test
+    fun tracksBeforeLoadStarted_leaveSniffingUnset() {
+        timeline.start()
+        tracksChanged(100, MimeTypes.AUDIO_AAC)
+        loadStarted(50)
+        timeline.onPlaybackStateChanged(at(150), Player.STATE_READY)
+
+        assertTrue(timeline.isCompleted)
+        assertEquals(50L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_PREPARE))
+        assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_SNIFFING))
+        assertEquals(50L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_BUFFERING))
+    }
+
+    @Test
+    fun missingFirstFrame_neverCompletes() {
+        timeline.start()
+        loadStarted(10)
+        tracksChanged(100, MimeTypes.VIDEO_H264)
+        timeline.onPlaybackStateChanged(at(300), Player.STATE_READY)
+        timeline.onPlaybackStateChanged(at(5_000), Player.STATE_ENDED)
+
+        assertFalse(timeline.isCompleted)
+        assertTrue(completedTimelines.isEmpty())
+        assertEquals(C.TIME_UNSET, timeline.totalDurationMs)
+        assertEquals(200L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_BUFFERING))
+        assertEquals(
+            C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_FIRST_FRAME)
+        )
+        assertTrue(timeline.summaryString.startsWith("startup -: prepare 10,"))
+        assertTrue(timeline.summaryString.endsWith("first frame -"))
+    }
+
+    @Test
+    fun audioOnly_completesWhenReady() {
+        timeline.start()
+        loadStarted(10)
+        tracksChanged(100, MimeTypes.AUDIO_AAC)
+        timeline.onPlaybackStateChanged(at(250), Player.STATE_READY)
+
+        assertTrue(timeline.isCompleted)
+        assertEquals(250L, timeline.totalDurationMs)
+        assertEquals(
+            C.TIME_UNSET, timeline.getPhaseDurationMs(StartupTimeline.PHASE_FIRST_FRAME)
+        )
+    }
+
+    @Test
+    fun restart_discardsPreviousSession() {
+        timeline.start()
+        val oldCall = newCall()
+        network.callStart(oldCall)
+        loadStarted(10)
+        tracksChanged(100, MimeTypes.AUDIO_AAC)
+        timeline.onPlaybackStateChanged(at(200), Player.STATE_READY)
+        assertTrue(timeline.isCompleted)
+
+        clock.timeMs = 10_000
+        timeline.start()
+        // A late event of the previous session's call is not taken for the new session.
+        network.requestHeadersStart(oldCall)
+        clock.advance(50)
+        network.responseHeadersStart(oldCall)
+
+        assertFalse(timeline.isCompleted)
+        assertEquals(C.TIME_UNSET, timeline.totalDurationMs)
+        for (phase in StartupTimeline.PHASE_PREPARE..StartupTimeline.PHASE_FIRST_FRAME) {
+            assertEquals(C.TIME_UNSET, timeline.getPhaseDurationMs(phase))
+        }
+
+        loadStarted(10_020)
+        runCallWithNewConnection(newCall())
+        tracksChanged(10_300, MimeTypes.AUDIO_AAC)
+        timeline.onPlaybackStateChanged(at(10_400), Player.STATE_READY)
+
+        assertTrue(timeline.isCompleted)
+        assertEquals(2, completedTimelines.size)
+        assertEquals(20L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_PREPARE))
+        assertEquals(20L, timeline.getPhaseDurationMs(StartupTimeline.PHASE_DNS))
+        assertEquals(400L, timeline.totalDurationMs)
+    }
+}